@@ -1,8 +1,14 @@
 package com.github.tranchis.xsd2thrift;
 
+import java.util.List;
 import java.util.Map;
 
-public class ConfigFile {
+/**
+ * Configuration of a conversion, read from a config file or the command line. The settings of the written definitions are inherited from {@link ModelOptions}.
+ */
+public class ConfigFile extends ModelOptions {
+	/** Output format of the main output, see {@link com.github.tranchis.xsd2thrift.marshal.MarshallerFactory} */
+	public String marshaller;
 	public String filename;
 	public String directory;
 	public String namespace;
@@ -10,9 +16,17 @@ public class ConfigFile {
 	public Map<String, String> customTypeMappings;
 	public Map<String, String> customNameMappings;
 	public Map<String, Object> options;
-	public boolean nestEnums;
-	public boolean typeInEnums = true;
-	public boolean includeMessageDocs = true;
-	public boolean includeFieldDocs = true;
 	public String xsd;
+	public int maxDefinitionsPerFile;
+	public long maxFileSize;
+	public int shards;
+	/** Link the generated output in memory and fail on invalid output before anything is written */
+	public boolean validate;
+	/** File in the output directory to write the import manifest of the main output to, see {@link OutputWriter#setImportManifest(String)} */
+	public String importManifest;
+	/** File in the output directory to write the collapsed list wrappers of the main output to, see {@link OutputWriter#setListWrapperManifest(String)} */
+	public String listWrapperManifest;
+	public List<OutputConfig> outputs;
+	public String cacheDirectory;
+	public String cacheUrl;
 }
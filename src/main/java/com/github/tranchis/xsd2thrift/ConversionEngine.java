@@ -0,0 +1,521 @@
+package com.github.tranchis.xsd2thrift;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.yaml.snakeyaml.Yaml;
+
+import com.github.tranchis.xsd2thrift.cache.DirectoryOutputCache;
+import com.github.tranchis.xsd2thrift.cache.HttpOutputCache;
+import com.github.tranchis.xsd2thrift.cache.OutputArchive;
+import com.github.tranchis.xsd2thrift.cache.OutputCache;
+import com.github.tranchis.xsd2thrift.marshal.IMarshaller;
+import com.github.tranchis.xsd2thrift.marshal.MarshallerFactory;
+
+/**
+ * Converts schemas with a fixed configuration. The configuration is read once when the engine is built, later changes to the {@link ConfigFile} have no effect.
+ *
+ * An engine can be shared by several threads. Every conversion parses and renders with its own parser, marshallers and writers, only the compiled mappings are
+ * shared.
+ *
+ * With an {@link OutputCache}, the generated files are looked up by a key covering all schema documents, the effective configuration and the tool version, and
+ * conversions only run on a miss. Cache failures are logged and never fail a conversion.
+ *
+ * With more than one shard, the output is rendered by that many worker processes, each rendering a contiguous slice of the definitions, and the slices are
+ * merged into the same files a single process writes. Each worker still parses and interprets the whole schema set, only rendering is parallelized, so sharding
+ * pays off for schemas whose rendering outweighs parsing.
+ *
+ * With validation, the generated .proto files are parsed back and linked in memory, and descriptor outputs are linked directly, before any file is written.
+ */
+public class ConversionEngine {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(ConversionEngine.class);
+
+	private static final Map<String, String> XSD_MAPPING;
+
+	static {
+		Map<String, String> map = new HashMap<>();
+		map.put("schema_._type", "binary");
+		map.put("EString", "string");
+		map.put("EBoolean", "boolean");
+		map.put("EInt", "integer");
+		map.put("EDate", "long");
+		map.put("EChar", "byte");
+		map.put("EFloat", "decimal");
+		map.put("EObject", "binary");
+		map.put("Extension", "binary");
+		XSD_MAPPING = Collections.unmodifiableMap(map);
+	}
+
+	private final ModelOptions options;
+	private final int shards;
+	private final boolean validate;
+	/** The configuration as given, passed on to shard workers */
+	private final String configYaml;
+	/** The main output followed by the additional outputs */
+	private final List<Target> targets;
+	private final OutputCache cache;
+	/** Canonical form of all settings that affect the output, part of the cache key */
+	private final String fingerprint;
+	private final LongAdder cacheHits = new LongAdder();
+	private final LongAdder cacheMisses = new LongAdder();
+
+	/**
+	 * Uses the cache configured by {@code cacheUrl} or {@code cacheDirectory}, if any.
+	 */
+	public ConversionEngine(ConfigFile config) {
+		this(config, createCache(config));
+	}
+
+	/**
+	 * @param cache the output cache, or null to always convert
+	 */
+	public ConversionEngine(ConfigFile config, OutputCache cache) {
+		this.cache = cache;
+		options = new ModelOptions(config);
+		shards = config.shards;
+		validate = config.validate;
+		configYaml = shards > 1 ? new Yaml().dump(config) : null;
+
+		Map<Pattern, String> customTypeMappings = compile(config.customTypeMappings);
+		Map<Pattern, String> customNameMappings = compile(config.customNameMappings);
+
+		List<Target> targets = new ArrayList<>();
+		Target main = new Target(config.marshaller, config.filename, config.directory, config.namespace, null, config.splitBySchema,
+				config.maxDefinitionsPerFile, config.maxFileSize, config.options, customTypeMappings, customNameMappings);
+		main.importManifest = config.importManifest;
+		main.listWrapperManifest = config.listWrapperManifest;
+		targets.add(main);
+		if (config.outputs != null) {
+			for (OutputConfig output : config.outputs) {
+				targets.add(new Target(output.marshaller, output.filename, output.directory, output.namespace != null ? output.namespace : config.namespace,
+						output.extension, output.splitBySchema, output.maxDefinitionsPerFile, output.maxFileSize,
+						output.options != null ? output.options : config.options, customTypeMappings, customNameMappings));
+			}
+		}
+		this.targets = Collections.unmodifiableList(targets);
+
+		StringBuilder fingerprint = new StringBuilder();
+		append(fingerprint, "validate", validate);
+		for (Entry<String, Object> option : options.values().entrySet()) {
+			append(fingerprint, option.getKey(), option.getValue());
+		}
+		for (Entry<Pattern, String> mapping : customTypeMappings.entrySet()) {
+			append(fingerprint, "typeMapping", mapping.getKey().pattern() + " " + mapping.getKey().flags() + " " + mapping.getValue());
+		}
+		for (Entry<Pattern, String> mapping : customNameMappings.entrySet()) {
+			append(fingerprint, "nameMapping", mapping.getKey().pattern() + " " + mapping.getKey().flags() + " " + mapping.getValue());
+		}
+		for (Target target : targets) {
+			target.appendTo(fingerprint);
+		}
+		this.fingerprint = fingerprint.toString();
+	}
+
+	private static OutputCache createCache(ConfigFile config) {
+		if (config.cacheUrl != null) {
+			return new HttpOutputCache(config.cacheUrl);
+		}
+		if (config.cacheDirectory != null) {
+			return new DirectoryOutputCache(Paths.get(config.cacheDirectory));
+		}
+		return null;
+	}
+
+	/**
+	 * Appends a setting with a length prefix, so different settings can never give the same fingerprint.
+	 */
+	private static void append(StringBuilder fingerprint, String name, Object value) {
+		String text = String.valueOf(value);
+		fingerprint.append(name).append('=').append(text.length()).append(':').append(text).append('\n');
+	}
+
+	/**
+	 * Reads the version when it is first needed, it is not used by conversions without a cache
+	 */
+	private static final class VersionHolder {
+		private static final String VERSION = readVersion();
+	}
+
+	private static String readVersion() {
+		Properties properties = new Properties();
+		try (InputStream in = ConversionEngine.class.getResourceAsStream("/xsd2proto.properties")) {
+			if (in != null) {
+				properties.load(in);
+			}
+		} catch (IOException e) {
+			LOGGER.warn("Unable to read tool version", e);
+		}
+		return properties.getProperty("version", "unknown");
+	}
+
+	public static String getVersion() {
+		return VersionHolder.VERSION;
+	}
+
+	/**
+	 * @return the key of the output of converting the schema with this engine: a hex encoded SHA-256 digest over the tool version, the configuration and all
+	 *         schema documents reachable from the source
+	 */
+	public String cacheKey(SchemaSource source) throws IOException {
+		MessageDigest digest = SchemaDigest.sha256();
+		digest.update(("xsd2proto " + VersionHolder.VERSION + "\n" + fingerprint).getBytes(StandardCharsets.UTF_8));
+		digest.update(SchemaDigest.digest(source));
+		StringBuilder key = new StringBuilder();
+		for (byte b : digest.digest()) {
+			key.append(String.format("%02x", b));
+		}
+		return key.toString();
+	}
+
+	/**
+	 * @return cache hit and miss counts of this engine, for reporting
+	 */
+	public String getCacheStatistics() {
+		return cacheHits.sum() + " hits, " + cacheMisses.sum() + " misses";
+	}
+
+	/**
+	 * Converts the schema and returns the generated files of all outputs by path, in path order. Nothing is written to disk.
+	 */
+	public Map<String, byte[]> convert(SchemaSource source) throws Exception {
+		if (cache == null) {
+			return generate(source);
+		}
+
+		String key = cacheKey(source);
+		Map<String, byte[]> files = null;
+		try {
+			files = cache.get(key);
+		} catch (IOException e) {
+			LOGGER.warn("Unable to read output cache entry " + key, e);
+		}
+		if (files != null) {
+			cacheHits.increment();
+			LOGGER.info("Output cache hit for {}", key);
+			return files;
+		}
+
+		cacheMisses.increment();
+		LOGGER.info("Output cache miss for {}", key);
+		files = generate(source);
+		try {
+			cache.put(key, files);
+		} catch (IOException e) {
+			LOGGER.warn("Unable to write output cache entry " + key, e);
+		}
+		return files;
+	}
+
+	private Map<String, byte[]> generate(SchemaSource source) throws Exception {
+		Map<String, byte[]> files = new TreeMap<>();
+		for (OutputWriter writer : generateTargets(source)) {
+			files.putAll(writer.getFiles());
+			files.putAll(writer.getManifests());
+		}
+		return files;
+	}
+
+	/**
+	 * @return the in memory writers of each target, holding the generated files, which are validated, and the manifests describing them
+	 */
+	private List<OutputWriter> generateTargets(SchemaSource source) throws Exception {
+		List<OutputWriter> writers;
+		if (shards > 1 && isShardable(source)) {
+			writers = generateSharded(source);
+		} else {
+			if (shards > 1) {
+				LOGGER.info("Streaming, optimized file layouts and entity resolvers are not supported by shard workers, converting in one process");
+			}
+			writers = run(source, true, 0, 1);
+		}
+
+		if (validate) {
+			for (int t = 0; t < targets.size(); t++) {
+				if (targets.get(t).marshaller.isBinary()) {
+					DescriptorValidator.validate(writers.get(t).getFiles());
+				} else {
+					DescriptorValidator.validateProto(writers.get(t).getFiles());
+				}
+			}
+		}
+		return writers;
+	}
+
+	private boolean isShardable(SchemaSource source) {
+		if (options.streaming || source.getEntityResolver() != null) {
+			return false;
+		}
+		for (Target target : targets) {
+			if (target.maxDefinitionsPerFile > 0 || target.maxFileSize > 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Renders the shards in worker processes and merges their output per target.
+	 *
+	 * @return the in memory writers of each target, holding the merged output
+	 */
+	private List<OutputWriter> generateSharded(SchemaSource source) throws Exception {
+		Path work = Files.createTempDirectory("xsd2proto-shards");
+		try {
+			Path configFile = work.resolve("config.yaml");
+			Files.write(configFile, configYaml.getBytes(StandardCharsets.UTF_8));
+			String contentFile = "-";
+			if (source.getContent() != null) {
+				contentFile = work.resolve("schema.xsd").toString();
+				Files.write(Paths.get(contentFile), source.getContent());
+			}
+
+			String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+			List<Process> processes = new ArrayList<>();
+			for (int i = 0; i < shards; i++) {
+				processes.add(new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), ShardWorker.class.getName(), configFile.toString(),
+						String.valueOf(source.getSystemId()), contentFile, String.valueOf(i), String.valueOf(shards),
+						work.resolve("shard-" + i + ".zip").toString()).inheritIO().start());
+			}
+			for (int i = 0; i < shards; i++) {
+				int exitCode = processes.get(i).waitFor();
+				if (exitCode != 0) {
+					throw new IOException("Shard worker " + i + " failed with exit code " + exitCode);
+				}
+			}
+
+			List<List<OutputWriter.ShardOutput>> outputs = new ArrayList<>();
+			for (int t = 0; t < targets.size(); t++) {
+				outputs.add(new ArrayList<>());
+			}
+			for (int i = 0; i < shards; i++) {
+				Map<String, byte[]> archive = OutputArchive.read(Files.readAllBytes(work.resolve("shard-" + i + ".zip")));
+				for (int t = 0; t < targets.size(); t++) {
+					outputs.get(t).add(readShard(archive, t + "/"));
+				}
+			}
+
+			List<OutputWriter> writers = new ArrayList<>();
+			for (int t = 0; t < targets.size(); t++) {
+				Target target = targets.get(t);
+				OutputWriter writer = target.newWriter(target.marshaller.copy(), true);
+				writer.mergeShards(outputs.get(t));
+				writers.add(writer);
+			}
+			return writers;
+		} finally {
+			try (Stream<Path> paths = Files.walk(work)) {
+				paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+			}
+		}
+	}
+
+	/**
+	 * Renders one shard of the conversion. The result is an archive with, for the n-th target, the files under {@code n/files/}, the header length of each file
+	 * under {@code n/headers/}, the imports of each file, one per line, under {@code n/includes/} and the item name of each collapsed list wrapper under
+	 * {@code n/listWrappers/}.
+	 */
+	byte[] renderShard(SchemaSource source, int index, int count) throws Exception {
+		Map<String, byte[]> archive = new TreeMap<>();
+		List<OutputWriter> writers = run(source, true, index, count);
+		for (int t = 0; t < writers.size(); t++) {
+			OutputWriter.ShardOutput output = writers.get(t).getShardOutput();
+			for (Entry<String, byte[]> file : output.getFiles().entrySet()) {
+				archive.put(t + "/files/" + file.getKey(), file.getValue());
+			}
+			for (Entry<String, Integer> header : output.getHeaderLengths().entrySet()) {
+				archive.put(t + "/headers/" + header.getKey(), String.valueOf(header.getValue()).getBytes(StandardCharsets.UTF_8));
+			}
+			for (Entry<String, Set<String>> include : output.getIncludes().entrySet()) {
+				archive.put(t + "/includes/" + include.getKey(), String.join("\n", include.getValue()).getBytes(StandardCharsets.UTF_8));
+			}
+			for (Entry<String, String> wrapper : output.getListWrappers().entrySet()) {
+				archive.put(t + "/listWrappers/" + wrapper.getKey(), wrapper.getValue().getBytes(StandardCharsets.UTF_8));
+			}
+		}
+		return OutputArchive.write(archive);
+	}
+
+	private static OutputWriter.ShardOutput readShard(Map<String, byte[]> archive, String prefix) {
+		OutputWriter.ShardOutput output = new OutputWriter.ShardOutput();
+		for (Entry<String, byte[]> entry : archive.entrySet()) {
+			if (!entry.getKey().startsWith(prefix)) {
+				continue;
+			}
+			String name = entry.getKey().substring(prefix.length());
+			if (name.startsWith("files/")) {
+				output.getFiles().put(name.substring("files/".length()), entry.getValue());
+			} else if (name.startsWith("headers/")) {
+				output.getHeaderLengths().put(name.substring("headers/".length()), Integer.valueOf(new String(entry.getValue(), StandardCharsets.UTF_8)));
+			} else if (name.startsWith("includes/")) {
+				String includes = new String(entry.getValue(), StandardCharsets.UTF_8);
+				output.getIncludes()
+						.put(name.substring("includes/".length()),
+								new TreeSet<>(includes.isEmpty() ? Collections.<String>emptyList() : Arrays.asList(includes.split("\n"))));
+			} else if (name.startsWith("listWrappers/")) {
+				output.getListWrappers().put(name.substring("listWrappers/".length()), new String(entry.getValue(), StandardCharsets.UTF_8));
+			}
+		}
+		return output;
+	}
+
+	/**
+	 * Converts the schema and writes the generated files to the configured locations. The main output goes to the console if neither a filename nor split
+	 * output is configured. Console output bypasses the cache; with validation it is converted in memory and printed once it is validated.
+	 */
+	public void convertToFiles(SchemaSource source) throws Exception {
+		Target main = targets.get(0);
+		boolean console = main.filename == null && !main.splitBySchema && main.maxDefinitionsPerFile <= 0 && main.maxFileSize <= 0;
+		if (console && validate) {
+			List<OutputWriter> writers = generateTargets(source);
+			for (byte[] content : writers.get(0).getFiles().values()) {
+				System.out.write(content);
+			}
+			System.out.flush();
+			write(writers.get(0).getManifests());
+			for (OutputWriter writer : writers.subList(1, writers.size())) {
+				write(writer.getFiles());
+				write(writer.getManifests());
+			}
+			return;
+		}
+		if (console || (cache == null && shards <= 1 && !validate)) {
+			run(source, false, 0, 1);
+			return;
+		}
+		write(convert(source));
+	}
+
+	private static void write(Map<String, byte[]> files) throws IOException {
+		for (Entry<String, byte[]> file : files.entrySet()) {
+			Files.write(Paths.get(file.getKey()), file.getValue());
+		}
+	}
+
+	/**
+	 * Runs one conversion. With more than one shard, only the given shard is rendered and the writers are in shard mode.
+	 */
+	private List<OutputWriter> run(SchemaSource source, boolean inMemory, int shardIndex, int shardCount) throws Exception {
+		XSDParser xp = new XSDParser(source, XSD_MAPPING);
+		xp.setOptions(options);
+		xp.setEnumOrderStart(0);
+		xp.setShard(shardIndex, shardCount);
+
+		List<OutputWriter> writers = new ArrayList<>();
+		for (Target target : targets) {
+			IMarshaller marshaller = target.marshaller.copy();
+			OutputWriter writer = target.newWriter(marshaller, inMemory);
+			if (shardCount > 1) {
+				writer.setShardMode(true);
+			}
+			if (writers.isEmpty()) {
+				xp.addMarshaller(marshaller);
+				xp.setWriter(writer);
+			} else {
+				xp.addTarget(marshaller, writer);
+			}
+			writers.add(writer);
+		}
+
+		xp.parse();
+		return writers;
+	}
+
+	private static Map<Pattern, String> compile(Map<String, String> mappings) {
+		Map<Pattern, String> compiled = new LinkedHashMap<>();
+		if (mappings != null) {
+			for (Entry<String, String> kv : mappings.entrySet()) {
+				compiled.put(Pattern.compile(kv.getKey()), kv.getValue());
+			}
+		}
+		return compiled;
+	}
+
+	private static final class Target {
+		private final IMarshaller marshaller;
+		private final String filename;
+		private final String directory;
+		private final String namespace;
+		private final String extension;
+		private final boolean splitBySchema;
+		private final int maxDefinitionsPerFile;
+		private final long maxFileSize;
+		private final Map<String, Object> options;
+		private String importManifest;
+		private String listWrapperManifest;
+
+		private Target(String marshallerName, String filename, String directory, String namespace, String extension, boolean splitBySchema,
+				int maxDefinitionsPerFile, long maxFileSize, Map<String, Object> options, Map<Pattern, String> customTypeMappings,
+				Map<Pattern, String> customNameMappings) {
+			this.filename = filename;
+			this.directory = directory;
+			this.namespace = namespace;
+			this.extension = extension != null ? extension : MarshallerFactory.extension(marshallerName);
+			this.splitBySchema = splitBySchema;
+			this.maxDefinitionsPerFile = maxDefinitionsPerFile;
+			this.maxFileSize = maxFileSize;
+
+			marshaller = MarshallerFactory.create(marshallerName);
+			marshaller.setCustomTypeMappings(customTypeMappings);
+			marshaller.setCustomNameMappings(customNameMappings);
+			this.options = options != null ? Collections.unmodifiableMap(new LinkedHashMap<>(options)) : null;
+			if (this.options != null) {
+				marshaller.setOptions(this.options);
+			}
+		}
+
+		private void appendTo(StringBuilder fingerprint) {
+			append(fingerprint, "target", marshaller.getClass().getName());
+			append(fingerprint, "filename", filename);
+			append(fingerprint, "directory", directory);
+			append(fingerprint, "namespace", namespace);
+			append(fingerprint, "extension", extension);
+			append(fingerprint, "splitBySchema", splitBySchema);
+			append(fingerprint, "maxDefinitionsPerFile", maxDefinitionsPerFile);
+			append(fingerprint, "maxFileSize", maxFileSize);
+			append(fingerprint, "options", options);
+			append(fingerprint, "importManifest", importManifest);
+			append(fingerprint, "listWrapperManifest", listWrapperManifest);
+		}
+
+		private OutputWriter newWriter(IMarshaller marshaller, boolean inMemory) {
+			OutputWriter writer = new OutputWriter();
+			writer.setInMemory(inMemory);
+			writer.setMarshaller(marshaller);
+			writer.setDefaultExtension(extension);
+			writer.setFilename(filename);
+			writer.setDirectory(directory);
+			writer.setDefaultNamespace(namespace);
+			writer.setSplitBySchema(splitBySchema);
+			writer.setMaxDefinitionsPerFile(maxDefinitionsPerFile);
+			writer.setMaxFileSize(maxFileSize);
+			writer.setImportManifest(importManifest);
+			writer.setListWrapperManifest(listWrapperManifest);
+			return writer;
+		}
+	}
+}
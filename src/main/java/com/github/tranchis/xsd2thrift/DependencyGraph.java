@@ -0,0 +1,174 @@
+package com.github.tranchis.xsd2thrift;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A directed graph where an edge from a node to another means "depends on". Nodes and edges are visited in insertion order, so all results are deterministic
+ * for a deterministic insertion order.
+ */
+public class DependencyGraph<T> {
+
+	private final Map<T, Set<T>> edges = new LinkedHashMap<>();
+
+	public void addNode(T node) {
+		edges.computeIfAbsent(node, n -> new LinkedHashSet<>());
+	}
+
+	public void addEdge(T from, T to) {
+		addNode(to);
+		edges.computeIfAbsent(from, n -> new LinkedHashSet<>()).add(to);
+	}
+
+	public Set<T> getNodes() {
+		return Collections.unmodifiableSet(edges.keySet());
+	}
+
+	public Set<T> getDependencies(T node) {
+		Set<T> dependencies = edges.get(node);
+		return dependencies == null ? Collections.<T>emptySet() : Collections.unmodifiableSet(dependencies);
+	}
+
+	/**
+	 * @return true if there is a path of one or more edges from one node to the other
+	 */
+	public boolean isReachable(T from, T to) {
+		Set<T> visited = new HashSet<T>();
+		Deque<T> stack = new ArrayDeque<>(getDependencies(from));
+		while (!stack.isEmpty()) {
+			T node = stack.pop();
+			if (node.equals(to)) {
+				return true;
+			}
+			if (visited.add(node)) {
+				stack.addAll(getDependencies(node));
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Strongly connected components, ordered so that every component comes after all components it depends on (Tarjan's algorithm).
+	 */
+	public List<List<T>> getStronglyConnectedComponents() {
+		Tarjan tarjan = new Tarjan();
+		for (T node : edges.keySet()) {
+			if (!tarjan.index.containsKey(node)) {
+				tarjan.visit(node);
+			}
+		}
+		return tarjan.components;
+	}
+
+	/**
+	 * @return the cycles of the graph: strongly connected components with more than one node, or a node that depends on itself. Ordered like
+	 *         {@link #getStronglyConnectedComponents()}.
+	 */
+	public List<List<T>> getCycles() {
+		List<List<T>> cycles = new ArrayList<>();
+		for (List<T> component : getStronglyConnectedComponents()) {
+			if (component.size() > 1 || getDependencies(component.get(0)).contains(component.get(0))) {
+				cycles.add(component);
+			}
+		}
+		return cycles;
+	}
+
+	/**
+	 * Groups the nodes into levels: level 0 holds the nodes without dependencies, every other node is one level above its highest dependency. Nodes of a cycle
+	 * share a level. The nodes of a level do not depend on each other unless they form a cycle, so they can be processed in parallel once all lower levels are
+	 * done.
+	 */
+	public List<List<T>> getTopologicalLevels() {
+		Map<T, Integer> levelOfNode = new HashMap<>();
+		List<List<T>> levels = new ArrayList<>();
+		for (List<T> component : getStronglyConnectedComponents()) {
+			int level = 0;
+			for (T node : component) {
+				for (T dependency : getDependencies(node)) {
+					Integer dependencyLevel = levelOfNode.get(dependency);
+					// Dependencies within the component are not assigned yet
+					if (dependencyLevel != null) {
+						level = Math.max(level, dependencyLevel + 1);
+					}
+				}
+			}
+			while (levels.size() <= level) {
+				levels.add(new ArrayList<>());
+			}
+			for (T node : component) {
+				levelOfNode.put(node, level);
+				levels.get(level).add(node);
+			}
+		}
+		return levels;
+	}
+
+	private class Tarjan {
+		private final Map<T, Integer> index = new HashMap<>();
+		private final Map<T, Integer> lowLink = new HashMap<>();
+		private final Deque<T> stack = new ArrayDeque<>();
+		private final Set<T> onStack = new HashSet<T>();
+		private final List<List<T>> components = new ArrayList<>();
+
+		/**
+		 * Depth first search with an explicit stack of the nodes being visited and their remaining dependencies, so long dependency chains do not overflow the
+		 * call stack.
+		 */
+		private void visit(T root) {
+			Deque<T> path = new ArrayDeque<>();
+			Deque<Iterator<T>> remaining = new ArrayDeque<>();
+			enter(root, path, remaining);
+			while (!path.isEmpty()) {
+				T node = path.peek();
+				Iterator<T> dependencies = remaining.peek();
+				if (dependencies.hasNext()) {
+					T dependency = dependencies.next();
+					if (!index.containsKey(dependency)) {
+						enter(dependency, path, remaining);
+					} else if (onStack.contains(dependency)) {
+						lowLink.put(node, Math.min(lowLink.get(node), index.get(dependency)));
+					}
+					continue;
+				}
+
+				path.pop();
+				remaining.pop();
+				if (!path.isEmpty()) {
+					T caller = path.peek();
+					lowLink.put(caller, Math.min(lowLink.get(caller), lowLink.get(node)));
+				}
+				if (lowLink.get(node).equals(index.get(node))) {
+					List<T> component = new ArrayList<>();
+					T member;
+					do {
+						member = stack.pop();
+						onStack.remove(member);
+						component.add(member);
+					} while (!member.equals(node));
+					Collections.reverse(component);
+					components.add(component);
+				}
+			}
+		}
+
+		private void enter(T node, Deque<T> path, Deque<Iterator<T>> remaining) {
+			index.put(node, index.size());
+			lowLink.put(node, index.get(node));
+			stack.push(node);
+			onStack.add(node);
+			path.push(node);
+			remaining.push(getDependencies(node).iterator());
+		}
+	}
+}
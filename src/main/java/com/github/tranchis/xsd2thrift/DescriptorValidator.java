@@ -0,0 +1,313 @@
+package com.github.tranchis.xsd2thrift;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import com.github.tranchis.xsd2thrift.marshal.DescriptorMarshaller;
+import com.google.common.base.CaseFormat;
+import com.google.protobuf.DescriptorProtos.DescriptorProto;
+import com.google.protobuf.DescriptorProtos.EnumDescriptorProto;
+import com.google.protobuf.DescriptorProtos.EnumValueDescriptorProto;
+import com.google.protobuf.DescriptorProtos.FieldDescriptorProto;
+import com.google.protobuf.DescriptorProtos.FieldOptions;
+import com.google.protobuf.DescriptorProtos.FileDescriptorProto;
+import com.google.protobuf.DescriptorProtos.FileDescriptorSet;
+import com.google.protobuf.DescriptorProtos.MessageOptions;
+import com.google.protobuf.DescriptorProtos.OneofDescriptorProto;
+import com.google.protobuf.Descriptors.DescriptorValidationException;
+import com.google.protobuf.Descriptors.FileDescriptor;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.squareup.wire.schema.Field.Label;
+import com.squareup.wire.schema.Location;
+import com.squareup.wire.schema.ProtoFile;
+import com.squareup.wire.schema.internal.parser.EnumConstantElement;
+import com.squareup.wire.schema.internal.parser.EnumElement;
+import com.squareup.wire.schema.internal.parser.FieldElement;
+import com.squareup.wire.schema.internal.parser.MessageElement;
+import com.squareup.wire.schema.internal.parser.OneOfElement;
+import com.squareup.wire.schema.internal.parser.OptionElement;
+import com.squareup.wire.schema.internal.parser.ProtoFileElement;
+import com.squareup.wire.schema.internal.parser.ProtoParser;
+import com.squareup.wire.schema.internal.parser.TypeElement;
+
+/**
+ * Links the descriptor sets of a conversion in memory, like protoc does when it reads the generated .proto files. Reports duplicate and unresolved names,
+ * missing and cyclic imports and invalid identifiers of all files at once.
+ *
+ * Generated .proto files are parsed and turned into descriptors first, so the text that is written is what gets checked. Only what affects linking is kept:
+ * file options and documentation are dropped.
+ */
+class DescriptorValidator {
+
+	private static final Map<String, FieldDescriptorProto.Type> SCALAR_TYPES = new HashMap<>();
+
+	static {
+		for (FieldDescriptorProto.Type type : FieldDescriptorProto.Type.values()) {
+			if (type != FieldDescriptorProto.Type.TYPE_GROUP && type != FieldDescriptorProto.Type.TYPE_MESSAGE && type != FieldDescriptorProto.Type.TYPE_ENUM) {
+				SCALAR_TYPES.put(type.name().substring("TYPE_".length()).toLowerCase(), type);
+			}
+		}
+	}
+
+	/** Generated files by descriptor name */
+	private final Map<String, FileDescriptorProto> generated = new TreeMap<>();
+	/** Output path of each generated file, by descriptor name */
+	private final Map<String, String> paths = new HashMap<>();
+	/** Imported files that are not generated, such as the well-known types */
+	private final Map<String, FileDescriptorProto> imported = new HashMap<>();
+	/** Linked files, null for files that failed */
+	private final Map<String, FileDescriptor> linked = new HashMap<>();
+	private final Set<String> linking = new LinkedHashSet<>();
+	private final List<String> problems = new ArrayList<>();
+
+	/**
+	 * @param descriptorSets output of a descriptor marshaller, by path
+	 * @throws InvalidXSDException listing all problems found, one per line
+	 */
+	static void validate(Map<String, byte[]> descriptorSets) throws InvalidXSDException {
+		DescriptorValidator validator = new DescriptorValidator();
+		for (Map.Entry<String, byte[]> set : descriptorSets.entrySet()) {
+			try {
+				List<FileDescriptorProto> files = FileDescriptorSet.parseFrom(set.getValue()).getFileList();
+				// The generated file comes last, after the well-known types it imports
+				FileDescriptorProto file = files.get(files.size() - 1);
+				validator.generated.put(file.getName(), file);
+				validator.paths.put(file.getName(), set.getKey());
+				for (FileDescriptorProto dependency : files.subList(0, files.size() - 1)) {
+					validator.imported.put(dependency.getName(), dependency);
+				}
+			} catch (InvalidProtocolBufferException e) {
+				throw new InvalidXSDException("Unable to read descriptors of " + set.getKey(), e);
+			}
+		}
+
+		validator.linkAll();
+	}
+
+	/**
+	 * @param protoFiles output of a .proto marshaller, by path. Files import each other by file name.
+	 * @throws InvalidXSDException listing all problems found, one per line
+	 */
+	static void validateProto(Map<String, byte[]> protoFiles) throws InvalidXSDException {
+		DescriptorValidator validator = new DescriptorValidator();
+		for (Map.Entry<String, byte[]> protoFile : protoFiles.entrySet()) {
+			String name = Paths.get(protoFile.getKey()).getFileName().toString();
+			FileDescriptorProto file;
+			try {
+				file = toDescriptor(name, ProtoParser.parse(Location.get(protoFile.getKey()), new String(protoFile.getValue(), StandardCharsets.UTF_8)));
+			} catch (RuntimeException e) {
+				validator.problems.add(e.getMessage());
+				continue;
+			}
+			validator.generated.put(name, file);
+			validator.paths.put(name, protoFile.getKey());
+			for (String dependency : file.getDependencyList()) {
+				FileDescriptor wellKnownType = DescriptorMarshaller.getWellKnownType(dependency);
+				if (wellKnownType != null) {
+					validator.imported.put(dependency, wellKnownType.toProto());
+				}
+			}
+		}
+		validator.linkAll();
+	}
+
+	private void linkAll() throws InvalidXSDException {
+		for (String name : generated.keySet()) {
+			link(name);
+		}
+		if (!problems.isEmpty()) {
+			throw new InvalidXSDException("Generated output is invalid:\n  " + String.join("\n  ", problems));
+		}
+	}
+
+	private static FileDescriptorProto toDescriptor(String name, ProtoFileElement element) {
+		FileDescriptorProto.Builder file = FileDescriptorProto.newBuilder();
+		file.setName(name);
+		file.setSyntax(element.syntax() == ProtoFile.Syntax.PROTO_3 ? "proto3" : "proto2");
+		if (element.packageName() != null) {
+			file.setPackage(element.packageName());
+		}
+		file.addAllDependency(element.imports());
+		file.addAllDependency(element.publicImports());
+		for (TypeElement type : element.types()) {
+			if (type instanceof MessageElement) {
+				file.addMessageType(toDescriptor((MessageElement) type));
+			} else {
+				file.addEnumType(toDescriptor((EnumElement) type));
+			}
+		}
+		return file.build();
+	}
+
+	private static DescriptorProto toDescriptor(MessageElement element) {
+		DescriptorProto.Builder message = DescriptorProto.newBuilder();
+		message.setName(element.name());
+		for (FieldElement field : element.fields()) {
+			addField(message, field, -1);
+		}
+		for (OneOfElement oneof : element.oneOfs()) {
+			int index = message.getOneofDeclCount();
+			message.addOneofDecl(OneofDescriptorProto.newBuilder().setName(oneof.name()));
+			for (FieldElement field : oneof.fields()) {
+				addField(message, field, index);
+			}
+		}
+		for (TypeElement type : element.nestedTypes()) {
+			if (type instanceof MessageElement) {
+				message.addNestedType(toDescriptor((MessageElement) type));
+			} else {
+				message.addEnumType(toDescriptor((EnumElement) type));
+			}
+		}
+		return message.build();
+	}
+
+	private static void addField(DescriptorProto.Builder message, FieldElement element, int oneofIndex) {
+		FieldDescriptorProto.Builder field = FieldDescriptorProto.newBuilder();
+		field.setName(element.name());
+		field.setNumber(element.tag());
+		if (oneofIndex >= 0) {
+			field.setOneofIndex(oneofIndex);
+		}
+		String type = element.type();
+		if (type.startsWith("map<")) {
+			// Declared like protoc does, as a repeated nested entry message
+			String[] keyValue = type.substring("map<".length(), type.length() - 1).split(",");
+			String entryName = CaseFormat.LOWER_UNDERSCORE.to(CaseFormat.UPPER_CAMEL, element.name()) + "Entry";
+			message.addNestedType(DescriptorProto.newBuilder()
+					.setName(entryName)
+					.setOptions(MessageOptions.newBuilder().setMapEntry(true))
+					.addField(typed(entryField("key", 1), keyValue[0].trim()))
+					.addField(typed(entryField("value", 2), keyValue[1].trim())));
+			field.setLabel(FieldDescriptorProto.Label.LABEL_REPEATED);
+			field.setTypeName(entryName);
+		} else {
+			field.setLabel(element.label() == Label.REPEATED ? FieldDescriptorProto.Label.LABEL_REPEATED
+					: element.label() == Label.REQUIRED ? FieldDescriptorProto.Label.LABEL_REQUIRED : FieldDescriptorProto.Label.LABEL_OPTIONAL);
+			typed(field, type);
+		}
+		for (OptionElement option : element.options()) {
+			if ("lazy".equals(option.name())) {
+				field.setOptions(FieldOptions.newBuilder().setLazy(Boolean.parseBoolean(String.valueOf(option.value()))));
+			}
+		}
+		message.addField(field);
+	}
+
+	private static FieldDescriptorProto.Builder entryField(String name, int number) {
+		return FieldDescriptorProto.newBuilder().setName(name).setNumber(number).setLabel(FieldDescriptorProto.Label.LABEL_OPTIONAL);
+	}
+
+	private static FieldDescriptorProto.Builder typed(FieldDescriptorProto.Builder field, String type) {
+		FieldDescriptorProto.Type scalarType = SCALAR_TYPES.get(type);
+		if (scalarType != null) {
+			field.setType(scalarType);
+		} else {
+			// Message or enum, decided when the descriptor is built
+			field.setTypeName(type);
+		}
+		return field;
+	}
+
+	private static EnumDescriptorProto toDescriptor(EnumElement element) {
+		EnumDescriptorProto.Builder enumType = EnumDescriptorProto.newBuilder();
+		enumType.setName(element.name());
+		for (EnumConstantElement constant : element.constants()) {
+			enumType.addValue(EnumValueDescriptorProto.newBuilder().setName(constant.name()).setNumber(constant.tag()));
+		}
+		return enumType.build();
+	}
+
+	/**
+	 * @return the linked file, or null if it or one of its imports is invalid
+	 */
+	private FileDescriptor link(String name) {
+		if (linked.containsKey(name)) {
+			return linked.get(name);
+		}
+		FileDescriptorProto proto = generated.containsKey(name) ? generated.get(name) : imported.get(name);
+		if (!linking.add(name)) {
+			List<String> cycle = new ArrayList<>(linking);
+			problems.add(paths.get(name) + ": import cycle " + String.join(" -> ", cycle.subList(cycle.indexOf(name), cycle.size())) + " -> " + name);
+			return null;
+		}
+
+		FileDescriptor file = null;
+		List<FileDescriptor> dependencies = new ArrayList<>();
+		for (String dependency : proto.getDependencyList()) {
+			if (!generated.containsKey(dependency) && !imported.containsKey(dependency)) {
+				problems.add(paths.get(name) + ": imports " + dependency + ", which is neither generated nor a well-known type");
+				dependencies = null;
+				break;
+			}
+			FileDescriptor linkedDependency = link(dependency);
+			if (linkedDependency == null) {
+				// Reported for the import
+				dependencies = null;
+				break;
+			}
+			dependencies.add(linkedDependency);
+		}
+
+		if (generated.containsKey(name)) {
+			checkEnumValues(paths.get(name), proto.getPackage(), proto.getMessageTypeList(), proto.getEnumTypeList(), Collections.<String>emptySet());
+		}
+		if (dependencies != null) {
+			try {
+				file = FileDescriptor.buildFrom(proto, dependencies.toArray(new FileDescriptor[0]));
+			} catch (DescriptorValidationException e) {
+				problems.add(paths.get(name) + ": " + e.getMessage());
+			}
+		}
+		linking.remove(name);
+		linked.put(name, file);
+		return file;
+	}
+
+	/**
+	 * Enum values are siblings of their enum, as in C++, so protoc rejects enums of one scope that share a value name or a value named like another member of
+	 * the scope. The descriptors of the Java runtime scope them within their enum and do not check this.
+	 *
+	 * @param members names in the scope other than its types, such as the fields of a message
+	 */
+	private void checkEnumValues(String path, String scope, List<DescriptorProto> messages, List<EnumDescriptorProto> enums, Set<String> members) {
+		Set<String> symbols = new HashSet<>(members);
+		for (DescriptorProto message : messages) {
+			symbols.add(message.getName());
+		}
+		for (EnumDescriptorProto enumType : enums) {
+			symbols.add(enumType.getName());
+		}
+		for (EnumDescriptorProto enumType : enums) {
+			for (EnumValueDescriptorProto value : enumType.getValueList()) {
+				if (!symbols.add(value.getName())) {
+					problems.add(path + ": " + qualify(scope, enumType.getName()) + "." + value.getName() + ": \"" + value.getName() + "\" is already defined"
+							+ (scope.isEmpty() ? "" : " in \"" + scope + "\"") + ", enum values are siblings of their enum");
+				}
+			}
+		}
+		for (DescriptorProto message : messages) {
+			Set<String> messageMembers = new HashSet<>();
+			for (FieldDescriptorProto field : message.getFieldList()) {
+				messageMembers.add(field.getName());
+			}
+			for (OneofDescriptorProto oneof : message.getOneofDeclList()) {
+				messageMembers.add(oneof.getName());
+			}
+			checkEnumValues(path, qualify(scope, message.getName()), message.getNestedTypeList(), message.getEnumTypeList(), messageMembers);
+		}
+	}
+
+	private static String qualify(String scope, String name) {
+		return scope.isEmpty() ? name : scope + "." + name;
+	}
+}
@@ -31,7 +31,7 @@ public class Field {
 	@Override
 	public String toString() {
 		return "Field [name=" + name + ", typeNamespace=" + typeNamespace + ", type=" + type + ", required=" + required + ", repeat=" + repeat + ", def=" + def
-				+ "]";
+				+ ", oneof=" + oneof + "]";
 	}
 
 	private String name;
@@ -41,6 +41,8 @@ public class Field {
 	private boolean required;
 	private boolean repeat;
 	private XmlString def;
+	/** Identifies the xs:choice the field is an alternative of, shared by all alternatives, or null */
+	private String oneof;
 
 	public Field(String name, String typeNamespace, String type, boolean repeat, XmlString def, String doc, boolean required) {
 		this.name = name;
@@ -96,6 +98,14 @@ public class Field {
 		this.repeat = repeat;
 	}
 
+	public String getOneof() {
+		return oneof;
+	}
+
+	public void setOneof(String oneof) {
+		this.oneof = oneof;
+	}
+
 	public XmlString getDef() {
 		return def;
 	}
@@ -123,11 +133,20 @@ public class Field {
 				.append(type, field.type)
 				.append(doc, field.doc)
 				.append(def, field.def)
+				.append(oneof, field.oneof)
 				.isEquals();
 	}
 
 	@Override
 	public int hashCode() {
-		return new HashCodeBuilder(17, 37).append(name).append(typeNamespace).append(type).append(doc).append(required).append(repeat).append(def).toHashCode();
+		return new HashCodeBuilder(17, 37).append(name)
+				.append(typeNamespace)
+				.append(type)
+				.append(doc)
+				.append(required)
+				.append(repeat)
+				.append(def)
+				.append(oneof)
+				.toHashCode();
 	}
 }
@@ -0,0 +1,156 @@
+package com.github.tranchis.xsd2thrift;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.sun.xml.xsom.XSFacet;
+import com.sun.xml.xsom.XSSimpleType;
+
+/**
+ * The values allowed by the range and digit facets of an integer simple type, combined with the range of its built-in base type. A null bound means the range
+ * is unbounded on that side. Decimals with a fixed number of fraction digits are represented by the range of their value times 10^scale.
+ */
+public class IntegerRange {
+
+	private static final Map<String, IntegerRange> BUILT_IN_RANGES;
+
+	static {
+		Map<String, IntegerRange> ranges = new HashMap<>();
+		ranges.put("decimal", new IntegerRange(null, null));
+		ranges.put("integer", new IntegerRange(null, null));
+		ranges.put("positiveInteger", new IntegerRange(BigInteger.ONE, null));
+		ranges.put("nonNegativeInteger", new IntegerRange(BigInteger.ZERO, null));
+		ranges.put("negativeInteger", new IntegerRange(null, BigInteger.ONE.negate()));
+		ranges.put("nonPositiveInteger", new IntegerRange(null, BigInteger.ZERO));
+		ranges.put("long", signed(64));
+		ranges.put("int", signed(32));
+		ranges.put("short", signed(16));
+		ranges.put("byte", signed(8));
+		ranges.put("unsignedLong", unsigned(64));
+		ranges.put("unsignedInt", unsigned(32));
+		ranges.put("unsignedShort", unsigned(16));
+		ranges.put("unsignedByte", unsigned(8));
+		BUILT_IN_RANGES = Collections.unmodifiableMap(ranges);
+	}
+
+	private final BigInteger min;
+	private final BigInteger max;
+
+	public IntegerRange(BigInteger min, BigInteger max) {
+		this.min = min;
+		this.max = max;
+	}
+
+	private static IntegerRange signed(int bits) {
+		return new IntegerRange(BigInteger.ONE.shiftLeft(bits - 1).negate(), BigInteger.ONE.shiftLeft(bits - 1).subtract(BigInteger.ONE));
+	}
+
+	private static IntegerRange unsigned(int bits) {
+		return new IntegerRange(BigInteger.ZERO, BigInteger.ONE.shiftLeft(bits).subtract(BigInteger.ONE));
+	}
+
+	/**
+	 * @param type        a simple type derived from an integer type
+	 * @param builtInType name of the built-in type the simple type is derived from
+	 * @return the range of the type, or null if the built-in type is not an integer type or the type has no range or digit facets
+	 */
+	static IntegerRange of(XSSimpleType type, String builtInType) {
+		return "decimal".equals(builtInType) ? null : of(type, builtInType, 0);
+	}
+
+	/**
+	 * @param type        a simple type derived from a decimal or integer type
+	 * @param builtInType name of the built-in type the simple type is derived from
+	 * @param scale       number of fraction digits kept, the range is that of the values times 10^scale
+	 * @return the range of the scaled values, or null if the built-in type is not a decimal or integer type or the type has no range or digit facets
+	 */
+	static IntegerRange of(XSSimpleType type, String builtInType, int scale) {
+		IntegerRange range = BUILT_IN_RANGES.get(builtInType);
+		if (range == null) {
+			return null;
+		}
+		if (scale > 0) {
+			range = new IntegerRange(range.min != null ? range.min.multiply(BigInteger.TEN.pow(scale)) : null,
+					range.max != null ? range.max.multiply(BigInteger.TEN.pow(scale)) : null);
+		}
+		boolean restricted = false;
+		BigDecimal value;
+		if ((value = facetValue(type, "minInclusive", scale)) != null) {
+			range = range.atLeast(value.setScale(0, RoundingMode.CEILING).toBigInteger());
+			restricted = true;
+		}
+		if ((value = facetValue(type, "minExclusive", scale)) != null) {
+			range = range.atLeast(value.setScale(0, RoundingMode.FLOOR).toBigInteger().add(BigInteger.ONE));
+			restricted = true;
+		}
+		if ((value = facetValue(type, "maxInclusive", scale)) != null) {
+			range = range.atMost(value.setScale(0, RoundingMode.FLOOR).toBigInteger());
+			restricted = true;
+		}
+		if ((value = facetValue(type, "maxExclusive", scale)) != null) {
+			range = range.atMost(value.setScale(0, RoundingMode.CEILING).toBigInteger().subtract(BigInteger.ONE));
+			restricted = true;
+		}
+		if ((value = facetValue(type, "totalDigits", 0)) != null) {
+			BigInteger largest = BigInteger.TEN.pow(value.intValue()).subtract(BigInteger.ONE);
+			range = range.atLeast(largest.negate()).atMost(largest);
+			restricted = true;
+		}
+		return restricted ? range : null;
+	}
+
+	/**
+	 * @return the number of fraction digits allowed by the type, or null if the type has no fractionDigits facet
+	 */
+	static Integer fractionDigits(XSSimpleType type) {
+		BigDecimal value = facetValue(type, "fractionDigits", 0);
+		return value != null ? value.intValue() : null;
+	}
+
+	/**
+	 * @return the value of the facet in effect for the type times 10^scale, or null if the facet is not set or not a number
+	 */
+	private static BigDecimal facetValue(XSSimpleType type, String name, int scale) {
+		XSFacet facet = type.getFacet(name);
+		if (facet == null || facet.getValue() == null) {
+			return null;
+		}
+		try {
+			return new BigDecimal(facet.getValue().value.trim()).scaleByPowerOfTen(scale);
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	private IntegerRange atLeast(BigInteger value) {
+		return new IntegerRange(min == null ? value : min.max(value), max);
+	}
+
+	private IntegerRange atMost(BigInteger value) {
+		return new IntegerRange(min, max == null ? value : max.min(value));
+	}
+
+	/**
+	 * @return whether the bounds that are set lie within the range of a signed 64 bit integer
+	 */
+	public boolean isWithinLong() {
+		return (min == null || min.bitLength() < 64) && (max == null || max.bitLength() < 64);
+	}
+
+	public BigInteger getMin() {
+		return min;
+	}
+
+	public BigInteger getMax() {
+		return max;
+	}
+
+	@Override
+	public String toString() {
+		return "IntegerRange [min=" + min + ", max=" + max + "]";
+	}
+}
@@ -0,0 +1,269 @@
+package com.github.tranchis.xsd2thrift;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Partitions rendered definitions (messages and top-level enums) into output files that stay within a size and definition count budget.
+ *
+ * Definitions that depend on each other in a cycle are always kept in the same file. Files are filled first-fit in dependency order, and a definition is never
+ * placed so that the resulting files would import each other in a cycle. A single cycle larger than the budget gets a file of its own. A cycle across
+ * namespaces can not be laid out, as each file has a single package and protobuf files must not import each other.
+ */
+public class LayoutOptimizer {
+
+	private final int maxDefinitionsPerFile;
+	private final long maxFileSize;
+
+	public LayoutOptimizer(int maxDefinitionsPerFile, long maxFileSize) {
+		this.maxDefinitionsPerFile = maxDefinitionsPerFile;
+		this.maxFileSize = maxFileSize;
+	}
+
+	/**
+	 * @param definitions all definitions in output order
+	 * @return output files, each with its definitions in output order and the other output files it depends on
+	 * @throws InvalidXSDException if definitions of different namespaces depend on each other in a cycle
+	 */
+	public List<OutputFile> layout(List<Definition> definitions) throws InvalidXSDException {
+		Map<String, Definition> byName = new HashMap<>();
+		for (Definition definition : definitions) {
+			byName.putIfAbsent(definition.getName(), definition);
+		}
+
+		DependencyGraph<Definition> graph = new DependencyGraph<>();
+		for (Definition definition : definitions) {
+			graph.addNode(definition);
+			for (String dependency : definition.getDependencies()) {
+				Definition target = byName.get(dependency);
+				if (target != null && target != definition) {
+					graph.addEdge(definition, target);
+				}
+			}
+		}
+
+		Map<String, List<OutputFile>> filesByNamespace = new LinkedHashMap<>();
+		Map<Definition, OutputFile> fileOfDefinition = new HashMap<>();
+		DependencyGraph<OutputFile> fileGraph = new DependencyGraph<>();
+
+		for (List<Definition> component : graph.getStronglyConnectedComponents()) {
+			Map<String, List<Definition>> byNamespace = new LinkedHashMap<>();
+			for (Definition definition : component) {
+				byNamespace.computeIfAbsent(definition.getNamespace(), ns -> new ArrayList<>()).add(definition);
+			}
+			if (byNamespace.size() > 1) {
+				throw new InvalidXSDException("Definitions " + component + " depend on each other across namespaces " + byNamespace.keySet()
+						+ ", their files would import each other. Convert without splitting by schema to write them to a single file.");
+			}
+
+			for (Part part : toParts(byNamespace)) {
+				List<OutputFile> candidates = filesByNamespace.computeIfAbsent(part.namespace, ns -> new ArrayList<>());
+				OutputFile file = null;
+				for (OutputFile candidate : candidates) {
+					if (fits(candidate, part.definitions) && !createsCycle(candidate, part.definitions, graph, fileOfDefinition, fileGraph)) {
+						file = candidate;
+						break;
+					}
+				}
+				if (file == null) {
+					file = new OutputFile(part.namespace);
+					candidates.add(file);
+					fileGraph.addNode(file);
+				}
+
+				for (Definition definition : part.definitions) {
+					file.add(definition);
+					fileOfDefinition.put(definition, file);
+				}
+				for (Definition definition : part.definitions) {
+					for (Definition dependency : graph.getDependencies(definition)) {
+						OutputFile dependencyFile = fileOfDefinition.get(dependency);
+						if (dependencyFile != null && dependencyFile != file) {
+							fileGraph.addEdge(file, dependencyFile);
+						}
+					}
+				}
+			}
+		}
+
+		// Dependencies on definitions placed later in the same cycle
+		for (Definition definition : definitions) {
+			for (Definition dependency : graph.getDependencies(definition)) {
+				OutputFile file = fileOfDefinition.get(definition);
+				OutputFile dependencyFile = fileOfDefinition.get(dependency);
+				if (file != dependencyFile) {
+					fileGraph.addEdge(file, dependencyFile);
+				}
+			}
+		}
+
+		List<OutputFile> files = new ArrayList<>();
+		for (List<OutputFile> namespaceFiles : filesByNamespace.values()) {
+			for (int i = 0; i < namespaceFiles.size(); i++) {
+				OutputFile file = namespaceFiles.get(i);
+				file.part = namespaceFiles.size() > 1 ? i + 1 : 0;
+				file.definitions.sort((a, b) -> Integer.compare(a.getIndex(), b.getIndex()));
+				file.dependencies.addAll(fileGraph.getDependencies(file));
+				files.add(file);
+			}
+		}
+		return files;
+	}
+
+	private List<Part> toParts(Map<String, List<Definition>> byNamespace) {
+		List<Part> parts = new ArrayList<>();
+		for (Map.Entry<String, List<Definition>> e : byNamespace.entrySet()) {
+			parts.add(new Part(e.getKey(), e.getValue()));
+		}
+		return parts;
+	}
+
+	private boolean fits(OutputFile file, List<Definition> definitions) {
+		if (maxDefinitionsPerFile > 0 && file.definitions.size() + definitions.size() > maxDefinitionsPerFile) {
+			return false;
+		}
+		if (maxFileSize > 0) {
+			long size = file.size;
+			for (Definition definition : definitions) {
+				size += definition.getSize();
+			}
+			if (size > maxFileSize) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private boolean createsCycle(OutputFile file, List<Definition> definitions, DependencyGraph<Definition> graph, Map<Definition, OutputFile> fileOfDefinition,
+			DependencyGraph<OutputFile> fileGraph) {
+		for (Definition definition : definitions) {
+			for (Definition dependency : graph.getDependencies(definition)) {
+				OutputFile dependencyFile = fileOfDefinition.get(dependency);
+				if (dependencyFile != null && dependencyFile != file && fileGraph.isReachable(dependencyFile, file)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	private static class Part {
+		private final String namespace;
+		private final List<Definition> definitions;
+
+		private Part(String namespace, List<Definition> definitions) {
+			this.namespace = namespace;
+			this.definitions = definitions;
+		}
+	}
+
+	/**
+	 * A message or top-level enum rendered to its own buffer.
+	 */
+	public static class Definition {
+		private final String namespace;
+		private final String name;
+		private final int index;
+		private final Set<String> dependencies;
+		private final Set<String> inclusions = new TreeSet<>();
+		private final ByteArrayOutputStream content = new ByteArrayOutputStream();
+
+		public Definition(String namespace, String name, int index, Collection<String> dependencies) {
+			this.namespace = namespace;
+			this.name = name;
+			this.index = index;
+			this.dependencies = new TreeSet<>(dependencies);
+		}
+
+		public String getNamespace() {
+			return namespace;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public int getIndex() {
+			return index;
+		}
+
+		public Set<String> getDependencies() {
+			return dependencies;
+		}
+
+		public Set<String> getInclusions() {
+			return inclusions;
+		}
+
+		public ByteArrayOutputStream getContent() {
+			return content;
+		}
+
+		public long getSize() {
+			return content.size();
+		}
+
+		@Override
+		public String toString() {
+			return name;
+		}
+	}
+
+	/**
+	 * A group of definitions sharing a namespace that are written to the same file.
+	 */
+	public static class OutputFile {
+		private final String namespace;
+		private final List<Definition> definitions = new ArrayList<>();
+		private final List<OutputFile> dependencies = new ArrayList<>();
+		private long size;
+		private int part;
+
+		private OutputFile(String namespace) {
+			this.namespace = namespace;
+		}
+
+		private void add(Definition definition) {
+			definitions.add(definition);
+			size += definition.getSize();
+		}
+
+		public String getNamespace() {
+			return namespace;
+		}
+
+		public List<Definition> getDefinitions() {
+			return definitions;
+		}
+
+		/**
+		 * @return other files containing definitions this file depends on
+		 */
+		public List<OutputFile> getDependencies() {
+			return dependencies;
+		}
+
+		public long getSize() {
+			return size;
+		}
+
+		/**
+		 * @return the part number of this file within its namespace, starting at 1, or 0 if the namespace fits in a single file
+		 */
+		public int getPart() {
+			return part;
+		}
+
+		@Override
+		public String toString() {
+			return namespace + (part > 0 ? "#" + part : "");
+		}
+	}
+}
@@ -27,35 +27,52 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Paths;
-import java.util.HashMap;
 import java.util.LinkedHashMap;
-import java.util.Map;
-import java.util.Map.Entry;
-import java.util.regex.Pattern;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.yaml.snakeyaml.Yaml;
 import org.yaml.snakeyaml.error.YAMLException;
 
-import com.github.tranchis.xsd2thrift.marshal.ProtobufMarshaller;
-
 public class Main {
 
 	private static final Logger LOGGER = LoggerFactory.getLogger(Main.class);
 
-	private static boolean correct;
 	private static String usage = "" + "Usage: java xsd2proto-<VERSION>.jar [--output=FILENAME]\n"
 			+ "                           [--package=NAME] filename.xsd\n" + "\n" + "  --configFile=FILENAME           : path to configuration file\n"
 			+ "\nOR\n" + "\n" + "  --filename=FILENAME             : store the result in FILENAME instead of standard output\n"
 			+ "  --package=NAME                  : set namespace/package of the output file\n"
+			+ "  --marshaller=protobuf|descriptor: output .proto text or binary FileDescriptorSets (.pb), defaults to protobuf\n"
 			+ "  --nestEnums=true|false          : nest enum declaration within messages that reference them, only supported by protobuf, defaults to true\n"
 			+ "  --splitBySchema=true|false      : split output into namespace-specific files, defaults to false\n"
 			+ "  --customTypeMappings=a:b,x:y    : represent schema types as specific output types\n"
 			+ "  --customNameMappings=cake:kake,...: translate message and field names\n"
 			+ "  --typeInEnums=true|false        : include type as a prefix in enums, defaults to true\n"
 			+ "  --includeMessageDocs=true|false : include documentation of messages in output, defaults to true\n"
-			+ "  --includeFieldDocs=true|false   : include documentation for fields in output, defaults to true\n" + "";
+			+ "  --includeFieldDocs=true|false   : include documentation for fields in output, defaults to true\n"
+			+ "  --streaming=true|false          : write and release each namespace as soon as it is interpreted, enums are not nested\n"
+			+ "  --maxDefinitionsPerFile=N       : split output so that no file holds more than N messages and enums\n"
+			+ "  --maxFileSize=BYTES             : split output so that no file is larger than BYTES where dependency cycles allow\n"
+			+ "  --importManifest=FILENAME       : write the imports between the generated files as JSON, with parallel build levels and cycles\n"
+			+ "  --validate=true|false           : check that the generated files link like protoc would before writing them, defaults to false\n"
+			+ "  --compactFieldNumbers=true|false: number hot, required and scalar fields first so they get one byte tags, defaults to false\n"
+			+ "  --hotFields=name,message.name,...: fields to number first with compact field numbers\n"
+			+ "  --rangeIntegerTypes=true|false  : pick integer types from range and digit facets, defaults to false\n"
+			+ "  --fixedPointDecimals=true|false : write decimals with fractionDigits as integers holding value * 10^fractionDigits, defaults to false\n"
+			+ "  --listsAsRepeated=true|false    : write xs:list types such as NMTOKENS as repeated fields of the item type, defaults to false\n"
+			+ "  --flattenSimpleContent=true|false: write simple content types without attributes as their value, defaults to false\n"
+			+ "  --collapseListWrappers=true|false: write container elements holding one repeated element as repeated fields, defaults to false\n"
+			+ "  --listWrapperManifest=FILENAME  : write the fields of collapsed list wrappers with their wrapper and item elements as JSON\n"
+			+ "  --choiceAsOneof=true|false      : write choices of single elements as oneofs, defaults to false\n"
+			+ "  --deduplicateTypes=true|false   : write identical anonymous types and attribute enums once, defaults to false\n"
+			+ "  --hoistSharedEnums=true|false   : with nested enums, write enums used by several messages once at the top level, defaults to false\n"
+			+ "  --lazyFields=regex,regex,...    : mark message fields matching a pattern, as field or message.field, as lazily parsed\n"
+			+ "  --lazySubtreeSize=N             : mark message fields lazy whose type reaches N fields including nested messages\n"
+			+ "  --keyValueMaps=true|false       : write repeated key/value elements as maps from key to value, defaults to false\n"
+			+ "  --compositionBases=name,...|*   : types extending these base types hold their base type in a field instead of copying its fields\n"
+			+ "  --shards=N                      : render the output in N worker processes and merge the results\n"
+			+ "  --cacheDirectory=DIRECTORY      : reuse output of identical earlier conversions stored in DIRECTORY\n"
+			+ "  --cacheUrl=URL                  : reuse output of identical earlier conversions from an HTTP output cache\n" + "";
 
 	private static void usage(String error) {
 		LOGGER.error(error);
@@ -64,7 +81,6 @@ public class Main {
 
 	private static void usage() {
 		LOGGER.info(usage);
-		correct = false;
 	}
 
 	/**
@@ -72,159 +88,131 @@ public class Main {
 	 * @throws Exception
 	 */
 	public static void main(String[] args) {
-		XSDParser xp;
-		HashMap<String, String> map;
-		String xsd, param;
-		int i;
-		ProtobufMarshaller pbm = null;
-
-		OutputWriter writer;
-		correct = true;
-
-		map = new HashMap<>();
-		map.put("schema_._type", "binary");
-		map.put("EString", "string");
-		map.put("EBoolean", "boolean");
-		map.put("EInt", "integer");
-		map.put("EDate", "long");
-		map.put("EChar", "byte");
-		map.put("EFloat", "decimal");
-		map.put("EObject", "binary");
-		map.put("Extension", "binary");
-
 		if (args.length == 0 || args[args.length - 1].startsWith("--")) {
 			usage();
-		} else {
-			xsd = args[args.length - 1];
-			xp = new XSDParser(xsd, map);
-			writer = new OutputWriter();
-			xp.setWriter(writer);
-
-			pbm = new ProtobufMarshaller();
-
-			xp.addMarshaller(pbm);
-			writer.setMarshaller(pbm);
-			writer.setDefaultExtension("proto");
+			return;
+		}
 
-			Map<Pattern, String> customTypeMappings = null;
-			Map<Pattern, String> customNameMappings = null;
-			Map<String, Object> options = null;
+		String xsd = args[args.length - 1];
+		ConfigFile config;
+		if (args.length == 2 && args[0].startsWith("--configFile=")) {
+			config = readConfigFile(args[0].split("=")[1]);
+		} else {
+			config = parseArguments(args);
+		}
 
-			if (args.length == 2 && args[0].startsWith("--configFile=")) {
-				Yaml yaml = new Yaml();
-				String configFile = args[0].split("=")[1];
-				try (InputStream in = Files.newInputStream(Paths.get(configFile))) {
-					LOGGER.info("Using configFile {}", configFile);
-					ConfigFile config = yaml.loadAs(in, ConfigFile.class);
+		if (config != null) {
+			try {
+				ConversionEngine engine = new ConversionEngine(config);
+				engine.convertToFiles(SchemaSource.of(Paths.get(xsd)));
+				if (config.cacheDirectory != null || config.cacheUrl != null) {
+					LOGGER.info("Output cache - {}", engine.getCacheStatistics());
+				}
+				LOGGER.info("Done");
+			} catch (InvalidXSDException e) {
+				LOGGER.error("Error converting xsd to proto: {}", e.getMessage());
+			} catch (IllegalArgumentException e) {
+				usage(e.getMessage());
+			} catch (Exception e) {
+				LOGGER.error("Error parsing xsd", e);
+			}
+		}
+	}
 
-					writer.setFilename(config.filename);
-					writer.setDirectory(config.directory);
-					writer.setDefaultNamespace(config.namespace);
-					writer.setSplitBySchema(config.splitBySchema);
+	/**
+	 * @return the configuration, or null if it can not be read
+	 */
+	private static ConfigFile readConfigFile(String configFile) {
+		Yaml yaml = new Yaml();
+		try (InputStream in = Files.newInputStream(Paths.get(configFile))) {
+			LOGGER.info("Using configFile {}", configFile);
+			return yaml.loadAs(in, ConfigFile.class);
+		} catch (IOException e) {
+			LOGGER.error("Unable to find config file " + configFile, e);
+		} catch (YAMLException e) {
+			LOGGER.error("Error parsing config file", e);
+		}
+		return null;
+	}
 
-					customTypeMappings = new LinkedHashMap<>();
-					if (config.customTypeMappings != null) {
-						for (Entry<String, String> kv : config.customTypeMappings.entrySet()) {
-							Pattern p = Pattern.compile(kv.getKey());
-							customTypeMappings.put(p, kv.getValue());
+	/**
+	 * @return the configuration given by the command line options, or null if they are not valid
+	 */
+	private static ConfigFile parseArguments(String[] args) {
+		ConfigFile config = new ConfigFile();
+		config.nestEnums = true;
+
+		for (int i = 0; i < args.length - 1; i++) {
+			try {
+				String param;
+				if (args[i].startsWith("--filename=")) {
+					config.filename = args[i].split("=")[1];
+				} else if (args[i].startsWith("--directory=")) {
+					config.directory = args[i].split("=")[1];
+				} else if (args[i].startsWith("--package=")) {
+					config.namespace = args[i].split("=")[1];
+				} else if (args[i].startsWith("--splitBySchema=")) {
+					config.splitBySchema = "true".equals(args[i].split("=")[1]);
+				} else if (args[i].startsWith("--marshaller=")) {
+					config.marshaller = args[i].split("=")[1];
+				} else if (args[i].startsWith("--importManifest=")) {
+					config.importManifest = args[i].split("=")[1];
+				} else if (args[i].startsWith("--validate=")) {
+					config.validate = Boolean.parseBoolean(args[i].split("=")[1]);
+				} else if (args[i].startsWith("--listWrapperManifest=")) {
+					config.listWrapperManifest = args[i].split("=")[1];
+				} else if (args[i].startsWith("--shards=")) {
+					config.shards = Integer.parseInt(args[i].split("=")[1]);
+				} else if (args[i].startsWith("--maxDefinitionsPerFile=")) {
+					config.maxDefinitionsPerFile = Integer.parseInt(args[i].split("=")[1]);
+				} else if (args[i].startsWith("--maxFileSize=")) {
+					config.maxFileSize = Long.parseLong(args[i].split("=")[1]);
+				} else if (args[i].startsWith("--cacheDirectory=")) {
+					config.cacheDirectory = args[i].split("=")[1];
+				} else if (args[i].startsWith("--cacheUrl=")) {
+					config.cacheUrl = args[i].substring("--cacheUrl=".length());
+				} else if (args[i].startsWith("--customTypeMappings=")) {
+					param = args[i].split("=")[1];
+					config.customTypeMappings = new LinkedHashMap<String, String>();
+					for (String mapping : param.split(",")) {
+						int colon = mapping.indexOf(':');
+						if (colon > -1) {
+							config.customTypeMappings.put(mapping.substring(0, colon), mapping.substring(colon + 1));
+						} else {
+							usage(mapping + " is not a valid custom tyope mapping - use schematype:outputtype");
+							return null;
 						}
 					}
-
-					customNameMappings = new LinkedHashMap<>();
-					if (config.customNameMappings != null) {
-						for (Entry<String, String> kv : config.customNameMappings.entrySet()) {
-							Pattern p = Pattern.compile(kv.getKey());
-							customNameMappings.put(p, kv.getValue());
+				} else if (args[i].startsWith("--customNameMappings=")) {
+					param = args[i].split("=")[1];
+					config.customNameMappings = new LinkedHashMap<String, String>();
+					for (String mapping : param.split(",")) {
+						int colon = mapping.indexOf(':');
+						if (colon > -1) {
+							config.customNameMappings.put(mapping.substring(0, colon), mapping.substring(colon + 1));
+						} else {
+							usage(mapping + " is not a valid custom name mapping - use originalname:newname");
+							return null;
 						}
 					}
-					options = config.options;
-					xp.setNestEnums(config.nestEnums);
-					xp.setEnumOrderStart(0);
-					xp.setTypeInEnums(config.typeInEnums);
-					xp.setIncludeMessageDocs(config.includeMessageDocs);
-					xp.setIncludeFieldDocs(config.includeFieldDocs);
-
-				} catch (IOException e) {
-					LOGGER.error("Unable to find config file " + configFile, e);
-				} catch (YAMLException e) {
-					LOGGER.error("Error parsing config file", e);
-
-				}
-			} else {
-				i = 0;
-				while (correct && i < args.length - 1) {
-					if (args[i].startsWith("--filename=")) {
-						param = args[i].split("=")[1];
-						writer.setFilename(param);
-					} else if (args[i].startsWith("--directory=")) {
-						param = args[i].split("=")[1];
-						writer.setDirectory(param);
-					} else if (args[i].startsWith("--package=")) {
-						param = args[i].split("=")[1];
-						writer.setDefaultNamespace(param);
-					} else if (args[i].startsWith("--splitBySchema=")) {
-						param = args[i].split("=")[1];
-						writer.setSplitBySchema("true".equals(param));
-					} else if (args[i].startsWith("--customTypeMappings=")) {
-						param = args[i].split("=")[1];
-						customTypeMappings = new HashMap<Pattern, String>();
-						for (String mapping : param.split(",")) {
-							int colon = mapping.indexOf(':');
-							if (colon > -1) {
-								customTypeMappings.put(Pattern.compile(mapping.substring(0, colon)), mapping.substring(colon + 1));
-							} else {
-								usage(mapping + " is not a valid custom tyope mapping - use schematype:outputtype");
-							}
-						}
-					} else if (args[i].startsWith("--customNameMappings=")) {
-						param = args[i].split("=")[1];
-						customNameMappings = new HashMap<Pattern, String>();
-						for (String mapping : param.split(",")) {
-							int colon = mapping.indexOf(':');
-							if (colon > -1) {
-								customNameMappings.put(Pattern.compile(mapping.substring(0, colon)), mapping.substring(colon + 1));
-							} else {
-								usage(mapping + " is not a valid custom name mapping - use originalname:newname");
-							}
-						}
-					} else if (args[i].startsWith("--nestEnums=")) {
-						param = args[i].split("=")[1];
-						boolean nestEnums = Boolean.valueOf(param);
-						xp.setNestEnums(nestEnums);
-					} else if (args[i].startsWith("--typeInEnums=")) {
-						xp.setTypeInEnums(Boolean.parseBoolean(args[i].split("=")[1]));
-					} else if (args[i].startsWith("--includeMessageDocs=")) {
-						xp.setIncludeMessageDocs(Boolean.parseBoolean(args[i].split("=")[1]));
-					} else if (args[i].startsWith("--includeFieldDocs=")) {
-						xp.setIncludeFieldDocs(Boolean.parseBoolean(args[i].split("=")[1]));
-					} else {
+				} else if (args[i].startsWith("--") && args[i].contains("=")) {
+					int equals = args[i].indexOf('=');
+					if (!config.set(args[i].substring(2, equals), args[i].substring(equals + 1))) {
 						usage();
+						return null;
 					}
-
-					i = i + 1;
-				}
-			}
-
-			if (customTypeMappings != null) {
-				pbm.setCustomTypeMappings(customTypeMappings);
-			}
-			if (customNameMappings != null) {
-				pbm.setCustomNameMappings(customNameMappings);
-			}
-			if (options != null) {
-				pbm.setOptions(options);
-			}
-
-			if (correct) {
-				try {
-					xp.parse();
-					LOGGER.info("Done");
-				} catch (InvalidXSDException e) {
-					LOGGER.error("Error converting xsd to proto: {}", e.getMessage());
-				} catch (Exception e) {
-					LOGGER.error("Error parsing xsd", e);
+				} else {
+					usage();
+					return null;
 				}
+			} catch (NumberFormatException e) {
+				usage(args[i] + " is not valid, the value is not a number");
+				return null;
+			} catch (IllegalArgumentException e) {
+				usage(args[i] + " is not valid, " + e.getMessage());
+				return null;
 			}
 		}
+		return config;
 	}
 }
@@ -44,10 +44,13 @@ public class Message implements Comparable<Message> {
 		orderedFields = new LinkedList<Field>();
 	}
 
-	void addFields(List<Field> fields, HashMap<String, String> xsdMapping) {
+	void addFields(List<Field> fields, Map<String, String> xsdMapping) {
 		for (Field field : fields) {
-			addField(field.getName(), field.getTypeNamespace(), field.getType(), field.isRequired(), field.isRepeat(), field.getDef(), field.getDoc(),
-					xsdMapping);
+			if (map.get(field.getName()) == null) {
+				addField(field.getName(), field.getTypeNamespace(), field.getType(), field.isRequired(), field.isRepeat(), field.getDef(), field.getDoc(),
+						xsdMapping);
+				map.get(field.getName()).setOneof(field.getOneof());
+			}
 		}
 	}
 
@@ -102,6 +105,20 @@ public class Message implements Comparable<Message> {
 		return types;
 	}
 
+	/**
+	 * Makes the fields of the type refer to the replacement instead.
+	 */
+	void replaceType(String type, String replacement) {
+		for (Field field : orderedFields) {
+			if (type.equals(field.getType())) {
+				field.setType(replacement);
+			}
+		}
+		if (types.remove(type) && !replacement.equals(name)) {
+			types.add(replacement);
+		}
+	}
+
 	public void setParent(String parent) {
 		this.parent = parent;
 	}
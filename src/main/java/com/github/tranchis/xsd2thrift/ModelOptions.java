@@ -0,0 +1,123 @@
+package com.github.tranchis.xsd2thrift;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Settings that shape the definitions written for a schema, shared by all outputs of a conversion. They are handed to the parser with
+ * {@link XSDParser#setOptions(ModelOptions)}, set from the command line by name with {@link #set(String, String)} and are all part of the cache key, so a new
+ * setting only needs a field here and its use in the parser.
+ *
+ * Settings are public fields of type boolean, int or a list of strings, read by name from config files.
+ */
+public class ModelOptions {
+	public boolean nestEnums;
+	public boolean typeInEnums = true;
+	public boolean includeMessageDocs = true;
+	public boolean includeFieldDocs = true;
+	public boolean streaming;
+	/** Give the field numbers 1 to 15, which have one byte tags, to hot, required and scalar fields first */
+	public boolean compactFieldNumbers;
+	/** Field names, plain or as message.field, numbered first with compact field numbers */
+	public List<String> hotFields;
+	/** Pick the type of integer fields with range or digit facets from their range rather than their base type */
+	public boolean rangeIntegerTypes;
+	/** Write decimals with a fractionDigits facet as scaled integers rather than doubles */
+	public boolean fixedPointDecimals;
+	/** Write fields of xs:list types as repeated fields of the item type rather than strings */
+	public boolean listsAsRepeated;
+	/** Replace messages that only wrap a single value by the value at every reference */
+	public boolean flattenSimpleContent;
+	/** Replace messages that only hold one repeated element by a repeated field of that element */
+	public boolean collapseListWrappers;
+	/** Write the alternatives of choices of single elements as oneof members */
+	public boolean choiceAsOneof;
+	/** Write identical anonymous types and attribute enums once */
+	public boolean deduplicateTypes;
+	/** With nested enums, write enums referenced by several messages once at the top level */
+	public boolean hoistSharedEnums;
+	/** Regular expressions for message fields, as field or message.field, to mark as lazily parsed */
+	public List<String> lazyFields;
+	/** Mark message fields lazy whose type reaches this many fields in total, 0 to disable */
+	public int lazySubtreeSize;
+	/** Write repeated fields of key/value types as maps */
+	public boolean keyValueMaps;
+	/** Base types whose descendants embed their base type as a field instead of copying its fields, * for all */
+	public List<String> compositionBases;
+
+	public ModelOptions() {
+	}
+
+	/**
+	 * Copies the settings of the given options, later changes to them have no effect on the copy.
+	 */
+	public ModelOptions(ModelOptions options) {
+		for (Field setting : settings()) {
+			try {
+				Object value = setting.get(options);
+				setting.set(this, value instanceof List ? Collections.unmodifiableList(new ArrayList<>((List<?>) value)) : value);
+			} catch (IllegalAccessException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+	}
+
+	/**
+	 * Sets a setting from its text form: true or false, a number, or a comma separated list.
+	 *
+	 * @return false if there is no setting of that name
+	 * @throws IllegalArgumentException if the value is not valid for the setting
+	 */
+	public boolean set(String name, String value) {
+		for (Field setting : settings()) {
+			if (setting.getName().equals(name)) {
+				try {
+					if (setting.getType() == boolean.class) {
+						setting.setBoolean(this, Boolean.parseBoolean(value));
+					} else if (setting.getType() == int.class) {
+						setting.setInt(this, Integer.parseInt(value));
+					} else {
+						setting.set(this, Arrays.asList(value.split(",")));
+					}
+				} catch (NumberFormatException e) {
+					throw new IllegalArgumentException(value + " is not a number", e);
+				} catch (IllegalAccessException e) {
+					throw new IllegalStateException(e);
+				}
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return all settings by name, in name order
+	 */
+	public Map<String, Object> values() {
+		Map<String, Object> values = new TreeMap<>();
+		for (Field setting : settings()) {
+			try {
+				values.put(setting.getName(), setting.get(this));
+			} catch (IllegalAccessException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+		return values;
+	}
+
+	private static List<Field> settings() {
+		List<Field> settings = new ArrayList<>();
+		for (Field field : ModelOptions.class.getDeclaredFields()) {
+			if (!Modifier.isStatic(field.getModifiers())) {
+				settings.add(field);
+			}
+		}
+		return settings;
+	}
+}
@@ -0,0 +1,19 @@
+package com.github.tranchis.xsd2thrift;
+
+import java.util.Map;
+
+/**
+ * An additional output of a conversion, configured in the {@code outputs} list of the config file. Unset options use the writer defaults, and the options of
+ * the main output if {@link #options} is not set.
+ */
+public class OutputConfig {
+	public String marshaller = "protobuf";
+	public String filename;
+	public String directory;
+	public String namespace;
+	public String extension;
+	public boolean splitBySchema = false;
+	public int maxDefinitionsPerFile;
+	public long maxFileSize;
+	public Map<String, Object> options;
+}
@@ -24,38 +24,84 @@
 package com.github.tranchis.xsd2thrift;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.*;
 
-import com.github.tranchis.xsd2thrift.marshal.ProtobufMarshaller;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.tranchis.xsd2thrift.LayoutOptimizer.Definition;
+import com.github.tranchis.xsd2thrift.LayoutOptimizer.OutputFile;
+import com.github.tranchis.xsd2thrift.marshal.IMarshaller;
 
 /**
  * @author p14n
  * 
  *         A class to handle the various forms of output - to console, to file, and to namespace-specific files
  *
+ *         All text output is UTF-8. Binary marshallers write an intermediate text that is encoded once each file is complete, see
+ *         {@link IMarshaller#isBinary()}. Namespace-specific files are processed in namespace order and imports are written in sorted order, so the output does
+ *         not depend on hash ordering.
+ *
+ *         When a file size or definition count budget is set, each message and top-level enum is rendered to its own buffer and the {@link LayoutOptimizer}
+ *         decides which file it ends up in.
+ *
+ *         In memory mode no files are written; the generated files are collected and returned by {@link #getFiles()}, and manifests describing them by
+ *         {@link #getManifests()}.
+ *
+ *         In shard mode the writer renders a slice of a conversion in memory and keeps the imports apart, see {@link #getShardOutput()} and
+ *         {@link #mergeShards(List)}.
  */
 public class OutputWriter {
 
+	private static final Logger LOGGER = LoggerFactory.getLogger(OutputWriter.class);
+
 	private String filename, directory;
 	private boolean splitBySchema;
 	private OutputStream os;
 	private Map<String, OutputStream> streams;
-	private ProtobufMarshaller marshaller;
+	private IMarshaller marshaller;
 	private String defaultNamespace;
 	private String defaultExtension;
+	private int maxDefinitionsPerFile;
+	private long maxFileSize;
+	private List<Definition> definitions;
+	private Definition currentDefinition;
 	Map<String, Set<String>> inclusions = null;
+	/** Generated files by path, when writing to memory */
+	private Map<String, ByteArrayOutputStream> memoryFiles;
+	private String singleFilePath;
+	private ShardOutput shardOutput;
+	/** Paths of all files written, in path order */
+	private Set<String> writtenFiles = new TreeSet<>();
+	/** Imports written to each file, by path */
+	private Map<String, Set<String>> fileImports = new TreeMap<>();
+	private String importManifest;
+	private String listWrapperManifest;
+	/** Manifests written in memory mode, by path, kept apart from the generated files */
+	private Map<String, byte[]> memoryManifests = new TreeMap<>();
+	/** Item element name of each field written for a collapsed list wrapper, by message and field name */
+	private Map<String, String> collapsedListWrappers = new TreeMap<>();
 
 	public void setDefaultExtension(String defaultExtension) {
 		this.defaultExtension = defaultExtension;
 	}
 
 	public OutputStream getStream(String ns) throws IOException {
+		if (isLayoutOptimized()) {
+			if (currentDefinition == null) {
+				throw new IllegalStateException("Output must be written within a definition when the file layout is optimized");
+			}
+			return currentDefinition.getContent();
+		}
 		if (os == null && streams == null) {
 			initializeOutputStream();
 		}
@@ -70,25 +116,74 @@ public class OutputWriter {
 		return getNamespaceSpecificStream(ns);
 	}
 
+	/**
+	 * Marks the start of a message or top-level enum. All output until {@link #endDefinition()} belongs to this definition.
+	 * 
+	 * @param dependencies names of the types the definition refers to
+	 */
+	public void startDefinition(String namespace, String name, Collection<String> dependencies) {
+		if (isLayoutOptimized()) {
+			if (definitions == null) {
+				definitions = new ArrayList<>();
+			}
+			currentDefinition = new Definition(fileNamespace(namespace), name, definitions.size(), dependencies);
+			definitions.add(currentDefinition);
+		}
+	}
+
+	public void endDefinition() {
+		currentDefinition = null;
+	}
+
+	/**
+	 * Flushes the output of a namespace whose schemas have all been written. Files stay open until the end of the conversion, as a later schema may still
+	 * declare types in the namespace, such as the enum of a global attribute, which are then appended.
+	 */
+	public void flushNamespace(String namespace) throws IOException {
+		if (isLayoutOptimized() || (os == null && streams == null)) {
+			return;
+		}
+		OutputStream o = os != null ? os : streams.get(fileNamespace(namespace));
+		if (o != null) {
+			o.flush();
+		}
+	}
+
+	private String fileNamespace(String ns) {
+		if (!splitBySchema) {
+			return defaultNamespace;
+		}
+		if (ns == null) {
+			ns = defaultNamespace;
+		}
+		return ns == null ? "default" : ns;
+	}
+
 	private OutputStream getNamespaceSpecificStream(String cleanedNamespace) throws IOException {
 		if (!streams.containsKey(cleanedNamespace)) {
-			OutputStream os = new FileOutputStream(directory() + cleanedNamespace.replace(".", "_") + "." + defaultExtension);
+			OutputStream os = openFileWithHeader(directory() + cleanedNamespace.replace(".", "_") + "." + defaultExtension, cleanedNamespace);
 			streams.put(cleanedNamespace, os);
-			os.write(marshaller.writeHeader(cleanedNamespace).getBytes());
 		}
 		return streams.get(cleanedNamespace);
 	}
 
 	private void initializeOutputStream() throws IOException {
 		if (splitBySchema) {
-			streams = new HashMap<String, OutputStream>();
+			streams = new TreeMap<String, OutputStream>();
 		} else {
-			if (filename == null) {
+			if (filename == null && memoryFiles == null) {
+				if (marshaller.isBinary()) {
+					throw new IllegalStateException("Binary output can not be written to the console, set a filename or directory");
+				}
 				os = System.out;
-				os.write(marshaller.writeHeader(defaultNamespace).getBytes());
+				os.write(marshaller.writeHeader(defaultNamespace).getBytes(StandardCharsets.UTF_8));
 			} else {
-				os = new FileOutputStream(directory() + filename);
-				os.write(marshaller.writeHeader(defaultNamespace).getBytes());
+				String name = filename;
+				if (name == null) {
+					name = (defaultNamespace != null ? defaultNamespace.replace(".", "_") : "default") + "." + defaultExtension;
+				}
+				singleFilePath = directory() + name;
+				os = openFileWithHeader(singleFilePath, defaultNamespace);
 			}
 		}
 	}
@@ -109,6 +204,18 @@ public class OutputWriter {
 		this.directory = directory;
 	}
 
+	public void setMaxDefinitionsPerFile(int maxDefinitionsPerFile) {
+		this.maxDefinitionsPerFile = maxDefinitionsPerFile;
+	}
+
+	public void setMaxFileSize(long maxFileSize) {
+		this.maxFileSize = maxFileSize;
+	}
+
+	public boolean isLayoutOptimized() {
+		return maxDefinitionsPerFile > 0 || maxFileSize > 0;
+	}
+
 	public void setSplitBySchema(boolean splitBySchema) {
 		this.splitBySchema = splitBySchema;
 	}
@@ -117,23 +224,29 @@ public class OutputWriter {
 		return splitBySchema;
 	}
 
-	public void setMarshaller(ProtobufMarshaller marshaller) {
+	public void setMarshaller(IMarshaller marshaller) {
 		this.marshaller = marshaller;
 	}
 
 	public void addInclusion(String namespace, String includeNamespace) {
 		if (inclusions == null)
-			inclusions = new HashMap<String, Set<String>>();
+			inclusions = new TreeMap<String, Set<String>>();
 
 		if (!inclusions.containsKey(namespace))
 			inclusions.put(namespace, new TreeSet<String>());
 
 		inclusions.get(namespace).add(includeNamespace);
+
+		if (currentDefinition != null) {
+			currentDefinition.getInclusions().add(includeNamespace);
+		}
 	}
 
-	public void postProcessNamespacedFilesForIncludes() throws IOException {
+	public void postProcessNamespacedFilesForIncludes() throws IOException, InvalidXSDException {
 
-		if (streams != null) {
+		if (isLayoutOptimized()) {
+			writeOptimizedLayout();
+		} else if (streams != null) {
 			Iterator<OutputStream> i = streams.values().iterator();
 			while (i.hasNext()) {
 				OutputStream o = i.next();
@@ -144,33 +257,400 @@ public class OutputWriter {
 				Iterator<String> namespaces = inclusions.keySet().iterator();
 				while (namespaces.hasNext()) {
 					String namespace = namespaces.next();
-					File f = new File(directory() + namespace.replace(".", "_") + "." + defaultExtension);
-					if (f.exists()) {
-						writeIncludes(f, inclusions.get(namespace));
+					String path = directory() + namespace.replace(".", "_") + "." + defaultExtension;
+					if (fileExists(path)) {
+						writeIncludes(path, inclusions.get(namespace));
 					}
 				}
 			}
 		} else {
-			if (inclusions != null && !marshaller.imports.isEmpty()) {
+			if (inclusions != null && !marshaller.getImports().isEmpty()) {
 				Iterator<String> namespaces = inclusions.keySet().iterator();
-				Set<String> requiredImports = new HashSet<>();
+				Set<String> requiredImports = new TreeSet<>();
 				while (namespaces.hasNext()) {
 					requiredImports.addAll(inclusions.get(namespaces.next()));
 
 				}
-				requiredImports.retainAll(marshaller.imports.values());
+				requiredImports.retainAll(marshaller.getImports().values());
 
-				File f = new File(filename);
-				if (f.exists()) {
-					writeIncludes(f, marshaller.imports.values());
+				if (singleFilePath != null && fileExists(singleFilePath)) {
+					writeIncludes(singleFilePath, new TreeSet<>(marshaller.getImports().values()));
 				}
 			}
 		}
+		encodeFiles();
+		writeImportManifest();
+		writeListWrapperManifest();
 	}
 
-	private void writeIncludes(File f, Collection<String> toInclude) throws IOException {
-		Iterator<String> i = toInclude.iterator();
-		BufferedReader reader = new BufferedReader(new FileReader(f));
+	/**
+	 * Writes a JSON manifest of the imports between the generated files to the given file in the output directory, see {@link #writeImportManifest()}.
+	 */
+	public void setImportManifest(String importManifest) {
+		this.importManifest = importManifest;
+	}
+
+	/**
+	 * Writes the import manifest: the generated files with the generated files and other files they import, the files grouped into topological levels, and the
+	 * import cycles. Files of a level only import files of lower levels, unless they are part of a cycle, so each level can be compiled in parallel once the
+	 * levels below it are done. Files are named as they are imported, relative to the output directory.
+	 */
+	private void writeImportManifest() throws IOException {
+		if (importManifest == null || shardOutput != null) {
+			return;
+		}
+		Map<String, String> generated = new TreeMap<>();
+		for (String path : writtenFiles) {
+			String name = new File(path).getName();
+			generated.put(name.substring(0, name.lastIndexOf('.')), name);
+		}
+
+		DependencyGraph<String> graph = new DependencyGraph<>();
+		Map<String, Set<String>> externalImports = new TreeMap<>();
+		for (String path : writtenFiles) {
+			String name = new File(path).getName();
+			graph.addNode(name);
+			externalImports.put(name, new TreeSet<>());
+			for (String imported : fileImports.getOrDefault(path, Collections.<String>emptySet())) {
+				if (generated.containsKey(imported)) {
+					graph.addEdge(name, generated.get(imported));
+				} else {
+					externalImports.get(name).add(imported + ".proto");
+				}
+			}
+		}
+
+		List<List<String>> levels = graph.getTopologicalLevels();
+		List<List<String>> cycles = graph.getCycles();
+		for (List<String> cycle : cycles) {
+			LOGGER.warn("Generated files import each other: {}", cycle);
+		}
+
+		StringBuilder json = new StringBuilder("{\n  \"files\": [");
+		String separator = "\n";
+		for (int level = 0; level < levels.size(); level++) {
+			for (String name : new TreeSet<>(levels.get(level))) {
+				json.append(separator).append("    {\"name\": ").append(jsonString(name)).append(", \"level\": ").append(level);
+				json.append(", \"imports\": ").append(jsonArray(new TreeSet<>(graph.getDependencies(name))));
+				json.append(", \"externalImports\": ").append(jsonArray(externalImports.get(name))).append("}");
+				separator = ",\n";
+			}
+		}
+		json.append("\n  ],\n  \"levels\": [");
+		separator = "\n";
+		for (List<String> level : levels) {
+			json.append(separator).append("    ").append(jsonArray(new TreeSet<>(level)));
+			separator = ",\n";
+		}
+		json.append("\n  ],\n  \"cycles\": [");
+		separator = "\n";
+		for (List<String> cycle : cycles) {
+			json.append(separator).append("    ").append(jsonArray(new TreeSet<>(cycle)));
+			separator = ",\n";
+		}
+		json.append("\n  ]\n}\n");
+		writeManifest(directory() + importManifest, json.toString());
+	}
+
+	/**
+	 * Writes a JSON manifest of the fields written for collapsed list wrappers to the given file in the output directory, see
+	 * {@link #addCollapsedListWrapper(String, String)}.
+	 */
+	public void setListWrapperManifest(String listWrapperManifest) {
+		this.listWrapperManifest = listWrapperManifest;
+	}
+
+	/**
+	 * Records a repeated field that stands for an XML list wrapper element, for the list wrapper manifest.
+	 *
+	 * @param field    message and field name, separated by a dot. The field is named like the wrapper element.
+	 * @param itemName name of the item elements within the wrapper
+	 */
+	public void addCollapsedListWrapper(String field, String itemName) {
+		collapsedListWrappers.put(field, itemName);
+	}
+
+	/**
+	 * Writes the list wrapper manifest: the fields that stand for a collapsed list wrapper, with the name of the wrapper and item elements, so that XML
+	 * mappings can restore the wrapper.
+	 */
+	private void writeListWrapperManifest() throws IOException {
+		if (listWrapperManifest == null || shardOutput != null) {
+			return;
+		}
+		StringBuilder json = new StringBuilder("{\n  \"listWrappers\": [");
+		String separator = "\n";
+		for (Map.Entry<String, String> wrapper : collapsedListWrappers.entrySet()) {
+			String field = wrapper.getKey();
+			json.append(separator).append("    {\"message\": ").append(jsonString(field.substring(0, field.lastIndexOf('.'))));
+			json.append(", \"wrapper\": ").append(jsonString(field.substring(field.lastIndexOf('.') + 1)));
+			json.append(", \"item\": ").append(jsonString(wrapper.getValue())).append("}");
+			separator = ",\n";
+		}
+		json.append("\n  ]\n}\n");
+		writeManifest(directory() + listWrapperManifest, json.toString());
+	}
+
+	private static String jsonArray(Collection<String> values) {
+		StringBuilder json = new StringBuilder("[");
+		for (String value : values) {
+			json.append(json.length() > 1 ? ", " : "").append(jsonString(value));
+		}
+		return json.append("]").toString();
+	}
+
+	private static String jsonString(String value) {
+		StringBuilder json = new StringBuilder("\"");
+		for (char c : value.toCharArray()) {
+			if (c == '"' || c == '\\') {
+				json.append('\\').append(c);
+			} else if (c < 0x20) {
+				json.append(String.format("\\u%04x", (int) c));
+			} else {
+				json.append(c);
+			}
+		}
+		return json.append('"').toString();
+	}
+
+	/**
+	 * Replaces the intermediate text of all generated files by the output of a binary marshaller. Shards are encoded after merging.
+	 */
+	private void encodeFiles() throws IOException {
+		if (!marshaller.isBinary() || shardOutput != null) {
+			return;
+		}
+		for (String path : writtenFiles) {
+			byte[] content = marshaller.encodeFile(new File(path).getName(), readFile(path));
+			if (memoryFiles != null) {
+				openFile(path).write(content);
+			} else {
+				Files.write(new File(path).toPath(), content);
+			}
+		}
+	}
+
+	private void writeOptimizedLayout() throws IOException, InvalidXSDException {
+		if (definitions == null) {
+			return;
+		}
+
+		Set<String> generatedNamespaces = new HashSet<>();
+		for (Definition definition : definitions) {
+			generatedNamespaces.add(definition.getNamespace());
+		}
+
+		List<OutputFile> files = new LayoutOptimizer(maxDefinitionsPerFile, maxFileSize).layout(definitions);
+		for (OutputFile file : files) {
+			Set<String> imports = new TreeSet<>();
+			for (OutputFile dependency : file.getDependencies()) {
+				imports.add(layoutFileName(dependency));
+			}
+			for (Definition definition : file.getDefinitions()) {
+				for (String inclusion : definition.getInclusions()) {
+					// Imports of other generated namespaces are replaced by imports of the files containing the referenced definitions
+					if (!generatedNamespaces.contains(inclusion)) {
+						imports.add(inclusion.replace(".", "_"));
+					}
+				}
+			}
+
+			ByteArrayOutputStream content = new ByteArrayOutputStream();
+			content.write(marshaller.writeHeader(file.getNamespace()).getBytes(StandardCharsets.UTF_8));
+			for (Definition definition : file.getDefinitions()) {
+				definition.getContent().writeTo(content);
+			}
+
+			String path = layoutDirectory() + layoutFileName(file) + "." + defaultExtension;
+			fileImports.put(path, imports);
+			writeFile(path, insertIncludes(new String(content.toByteArray(), StandardCharsets.UTF_8), imports));
+			LOGGER.info("Wrote {} definitions ({} bytes) to {}", file.getDefinitions().size(), file.getSize(), path);
+		}
+	}
+
+	/**
+	 * @return the directory of the files of an optimized layout, which is that of the configured filename when writing a single file
+	 */
+	private String layoutDirectory() {
+		String parent = !splitBySchema && filename != null ? new File(filename).getParent() : null;
+		return parent != null ? directory() + parent + "/" : directory();
+	}
+
+	/**
+	 * @return the name of a file of an optimized layout without extension, as other files import it
+	 */
+	private String layoutFileName(OutputFile file) {
+		String base;
+		if (splitBySchema) {
+			base = file.getNamespace().replace(".", "_");
+		} else if (filename != null) {
+			String name = new File(filename).getName();
+			base = name.contains(".") ? name.substring(0, name.lastIndexOf('.')) : name;
+		} else {
+			base = defaultNamespace != null ? defaultNamespace.replace(".", "_") : "default";
+		}
+		return file.getPart() > 0 ? base + "_" + file.getPart() : base;
+	}
+
+	private void writeIncludes(String path, Collection<String> toInclude) throws IOException {
+		if (shardOutput != null) {
+			shardOutput.includes.computeIfAbsent(path, p -> new TreeSet<>()).addAll(toInclude);
+			return;
+		}
+		List<String> files = new ArrayList<>();
+		for (String include : toInclude) {
+			files.add(include.replace(".", "_"));
+		}
+		fileImports.computeIfAbsent(path, p -> new TreeSet<>()).addAll(files);
+		writeFile(path, insertIncludes(readFile(path), files));
+	}
+
+	/**
+	 * Collects the generated files in memory instead of writing them. Must be set before any output is written.
+	 */
+	public void setInMemory(boolean inMemory) {
+		memoryFiles = inMemory ? new TreeMap<String, ByteArrayOutputStream>() : null;
+	}
+
+	/**
+	 * @return the generated files by path, in path order, without manifests. Only available in memory mode, after
+	 *         {@link #postProcessNamespacedFilesForIncludes()}.
+	 */
+	public Map<String, byte[]> getFiles() {
+		if (memoryFiles == null) {
+			throw new IllegalStateException("Generated files are only kept in memory mode");
+		}
+		Map<String, byte[]> files = new TreeMap<>();
+		for (Map.Entry<String, ByteArrayOutputStream> file : memoryFiles.entrySet()) {
+			files.put(file.getKey(), file.getValue().toByteArray());
+		}
+		return files;
+	}
+
+	/**
+	 * @return the manifests describing the generated files by path, in path order. Only available in memory mode, after
+	 *         {@link #postProcessNamespacedFilesForIncludes()}.
+	 */
+	public Map<String, byte[]> getManifests() {
+		if (memoryFiles == null) {
+			throw new IllegalStateException("Generated files are only kept in memory mode");
+		}
+		return new TreeMap<>(memoryManifests);
+	}
+
+	/**
+	 * Renders in memory and keeps the imports of each file apart instead of inserting them. Must be set before any output is written, and can not be combined
+	 * with an optimized file layout.
+	 */
+	public void setShardMode(boolean shardMode) {
+		setInMemory(shardMode);
+		shardOutput = shardMode ? new ShardOutput() : null;
+	}
+
+	/**
+	 * @return the files of this shard without imports, with the length of each file header and the imports of each file. Only available in shard mode, after
+	 *         {@link #postProcessNamespacedFilesForIncludes()}.
+	 */
+	public ShardOutput getShardOutput() {
+		if (shardOutput == null) {
+			throw new IllegalStateException("Shard output is only kept in shard mode");
+		}
+		shardOutput.files.putAll(getFiles());
+		shardOutput.listWrappers.putAll(collapsedListWrappers);
+		return shardOutput;
+	}
+
+	/**
+	 * Combines shard outputs into the files of a single run, which are then available from {@link #getFiles()}. Each file starts with the header and body of
+	 * the first shard that wrote it, followed by the bodies of later shards in order. The imports of all shards are merged and inserted as in a single run.
+	 *
+	 * @param shards the outputs of all shards, in shard order
+	 */
+	public void mergeShards(List<ShardOutput> shards) throws IOException {
+		setInMemory(true);
+		Map<String, Set<String>> includes = new TreeMap<>();
+		for (ShardOutput shard : shards) {
+			for (Map.Entry<String, byte[]> file : shard.getFiles().entrySet()) {
+				ByteArrayOutputStream content = memoryFiles.get(file.getKey());
+				if (content == null) {
+					openFile(file.getKey()).write(file.getValue());
+				} else {
+					int header = shard.getHeaderLengths().get(file.getKey());
+					content.write(file.getValue(), header, file.getValue().length - header);
+				}
+			}
+			for (Map.Entry<String, Set<String>> include : shard.getIncludes().entrySet()) {
+				includes.computeIfAbsent(include.getKey(), p -> new TreeSet<>()).addAll(include.getValue());
+			}
+			collapsedListWrappers.putAll(shard.getListWrappers());
+		}
+		for (Map.Entry<String, Set<String>> include : includes.entrySet()) {
+			writeIncludes(include.getKey(), include.getValue());
+		}
+		encodeFiles();
+		writeImportManifest();
+		writeListWrapperManifest();
+	}
+
+	private OutputStream openFileWithHeader(String path, String namespace) throws IOException {
+		byte[] header = marshaller.writeHeader(namespace).getBytes(StandardCharsets.UTF_8);
+		OutputStream os = openFile(path);
+		os.write(header);
+		if (shardOutput != null) {
+			shardOutput.headerLengths.put(path, header.length);
+		}
+		return os;
+	}
+
+	private OutputStream openFile(String path) throws IOException {
+		writtenFiles.add(path);
+		if (memoryFiles != null) {
+			ByteArrayOutputStream content = new ByteArrayOutputStream();
+			memoryFiles.put(path, content);
+			return content;
+		}
+		return new FileOutputStream(path);
+	}
+
+	private boolean fileExists(String path) {
+		return memoryFiles != null ? memoryFiles.containsKey(path) : new File(path).exists();
+	}
+
+	private String readFile(String path) throws IOException {
+		if (memoryFiles != null) {
+			return new String(memoryFiles.get(path).toByteArray(), StandardCharsets.UTF_8);
+		}
+		return new String(Files.readAllBytes(new File(path).toPath()), StandardCharsets.UTF_8);
+	}
+
+	private void writeFile(String path, String content) throws IOException {
+		if (memoryFiles != null) {
+			openFile(path).write(content.getBytes(StandardCharsets.UTF_8));
+			return;
+		}
+		writtenFiles.add(path);
+		try (Writer writer = Files.newBufferedWriter(new File(path).toPath(), StandardCharsets.UTF_8)) {
+			writer.append(content);
+		}
+	}
+
+	/**
+	 * Writes a file that describes the generated files rather than being one of them, so it is not imported, encoded or validated.
+	 */
+	private void writeManifest(String path, String content) throws IOException {
+		if (memoryFiles != null) {
+			memoryManifests.put(path, content.getBytes(StandardCharsets.UTF_8));
+			return;
+		}
+		Files.write(new File(path).toPath(), content.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Inserts import statements after the syntax declaration.
+	 */
+	private String insertIncludes(String content, Collection<String> files) throws IOException {
+		Iterator<String> i = files.iterator();
+		BufferedReader reader = new BufferedReader(new StringReader(content));
 		String line = null;
 		StringBuffer output = new StringBuffer();
 		int count = 0;
@@ -178,16 +658,39 @@ public class OutputWriter {
 			output.append(line + "\n");
 			if (count == 1) {
 				while (i.hasNext()) {
-					output.append(marshaller.writeInclude(i.next().replace(".", "_")));
+					output.append(marshaller.writeInclude(i.next()));
 				}
 				output.append("\n");
 			}
 			count++;
 		}
-		reader.close();
-		FileWriter writer = new FileWriter(f);
-		writer.append(output.toString());
-		writer.flush();
-		writer.close();
+		return output.toString();
+	}
+
+	/**
+	 * The output of one shard of a sharded conversion: file contents by path without imports, the header length of each file, the imports of each file and the
+	 * collapsed list wrappers.
+	 */
+	public static class ShardOutput {
+		private final Map<String, byte[]> files = new TreeMap<>();
+		private final Map<String, Integer> headerLengths = new TreeMap<>();
+		private final Map<String, Set<String>> includes = new TreeMap<>();
+		private final Map<String, String> listWrappers = new TreeMap<>();
+
+		public Map<String, byte[]> getFiles() {
+			return files;
+		}
+
+		public Map<String, Integer> getHeaderLengths() {
+			return headerLengths;
+		}
+
+		public Map<String, Set<String>> getIncludes() {
+			return includes;
+		}
+
+		public Map<String, String> getListWrappers() {
+			return listWrappers;
+		}
 	}
 }
@@ -0,0 +1,166 @@
+package com.github.tranchis.xsd2thrift;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.EntityResolver;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Computes a SHA-256 digest over a schema and all schemas it includes, imports or redefines. Each document is hashed with its location relative to the root
+ * schema, so the same set of schemas gives the same digest wherever it is stored.
+ */
+class SchemaDigest {
+
+	private static final String XSD_NAMESPACE = "http://www.w3.org/2001/XMLSchema";
+
+	private final MessageDigest digest = sha256();
+	private final Set<String> visited = new HashSet<>();
+	private final EntityResolver entityResolver;
+	private URI root;
+
+	private SchemaDigest(EntityResolver entityResolver) {
+		this.entityResolver = entityResolver;
+	}
+
+	static byte[] digest(SchemaSource source) throws IOException {
+		SchemaDigest schemaDigest = new SchemaDigest(source.getEntityResolver());
+		String systemId = source.getSystemId();
+		if (systemId != null) {
+			schemaDigest.root = URI.create(systemId);
+			schemaDigest.visited.add(systemId);
+		}
+		schemaDigest.visit(systemId, read(source.toInputSource()));
+		return schemaDigest.digest.digest();
+	}
+
+	static MessageDigest sha256() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private void visit(String systemId, byte[] content) throws IOException {
+		update(relativeName(systemId).getBytes(StandardCharsets.UTF_8));
+		update(content);
+
+		for (String location : schemaLocations(content)) {
+			if (systemId == null) {
+				continue;
+			}
+			String resolved = new URL(new URL(systemId), location).toExternalForm();
+			if (visited.add(resolved)) {
+				visit(resolved, resolve(resolved));
+			}
+		}
+	}
+
+	private void update(byte[] bytes) {
+		digest.update(ByteBuffer.allocate(8).putLong(bytes.length).array());
+		digest.update(bytes);
+	}
+
+	private String relativeName(String systemId) {
+		if (systemId == null || root == null) {
+			return "";
+		}
+		try {
+			return root.resolve(".").relativize(new URI(systemId)).toString();
+		} catch (URISyntaxException e) {
+			return systemId;
+		}
+	}
+
+	private byte[] resolve(String systemId) throws IOException {
+		if (entityResolver != null) {
+			try {
+				InputSource source = entityResolver.resolveEntity(null, systemId);
+				if (source != null) {
+					return read(source);
+				}
+			} catch (SAXException e) {
+				throw new IOException("Unable to resolve " + systemId, e);
+			}
+		}
+		return read(new InputSource(systemId));
+	}
+
+	private static byte[] read(InputSource source) throws IOException {
+		ByteArrayOutputStream content = new ByteArrayOutputStream();
+		if (source.getByteStream() != null) {
+			copy(source.getByteStream(), content);
+		} else if (source.getCharacterStream() != null) {
+			try (Reader reader = source.getCharacterStream()) {
+				char[] buffer = new char[8192];
+				int read;
+				StringBuilder text = new StringBuilder();
+				while ((read = reader.read(buffer)) != -1) {
+					text.append(buffer, 0, read);
+				}
+				content.write(text.toString().getBytes(StandardCharsets.UTF_8));
+			}
+		} else {
+			copy(new URL(source.getSystemId()).openStream(), content);
+		}
+		return content.toByteArray();
+	}
+
+	private static void copy(InputStream in, ByteArrayOutputStream out) throws IOException {
+		try (InputStream stream = in) {
+			byte[] buffer = new byte[8192];
+			int read;
+			while ((read = stream.read(buffer)) != -1) {
+				out.write(buffer, 0, read);
+			}
+		}
+	}
+
+	/**
+	 * @return the schemaLocation of all include, import, redefine and override elements, in document order
+	 */
+	private static List<String> schemaLocations(byte[] content) throws IOException {
+		List<String> locations = new ArrayList<>();
+		try {
+			SAXParserFactory factory = SAXParserFactory.newInstance();
+			factory.setNamespaceAware(true);
+			factory.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
+			factory.newSAXParser().parse(new ByteArrayInputStream(content), new DefaultHandler() {
+				@Override
+				public void startElement(String uri, String localName, String qName, Attributes attributes) {
+					if (XSD_NAMESPACE.equals(uri)
+							&& ("include".equals(localName) || "import".equals(localName) || "redefine".equals(localName) || "override".equals(localName))) {
+						String location = attributes.getValue("schemaLocation");
+						if (location != null) {
+							locations.add(location);
+						}
+					}
+				}
+			});
+		} catch (ParserConfigurationException | SAXException e) {
+			throw new IOException("Unable to scan schema for references", e);
+		}
+		return locations;
+	}
+}
@@ -0,0 +1,90 @@
+package com.github.tranchis.xsd2thrift;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+import org.xml.sax.EntityResolver;
+import org.xml.sax.InputSource;
+
+/**
+ * The root schema of a conversion. Schemas read from a stream or a string are kept in memory, so a source can be converted any number of times and from several
+ * threads. Included and imported schemas are resolved relative to the system id, or through the entity resolver if one is set. The system id must be a URL with
+ * a protocol known to {@link java.net.URL}, even if all documents are supplied by the resolver.
+ */
+public final class SchemaSource {
+	private final String systemId;
+	private final byte[] content;
+	private final EntityResolver entityResolver;
+
+	private SchemaSource(String systemId, byte[] content, EntityResolver entityResolver) {
+		this.systemId = systemId;
+		this.content = content;
+		this.entityResolver = entityResolver;
+	}
+
+	public static SchemaSource of(Path path) {
+		return new SchemaSource(path.toAbsolutePath().toUri().toString(), null, null);
+	}
+
+	/**
+	 * Reads the schema from the stream. The stream is not closed.
+	 *
+	 * @param systemId location of the schema, used to resolve relative includes and imports and in error messages. May be null if the schema has no relative
+	 *                 references.
+	 */
+	public static SchemaSource of(InputStream in, String systemId) throws IOException {
+		ByteArrayOutputStream content = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int read;
+		while ((read = in.read(buffer)) != -1) {
+			content.write(buffer, 0, read);
+		}
+		return new SchemaSource(systemId, content.toByteArray(), null);
+	}
+
+	/**
+	 * @param systemId location of the schema, used to resolve relative includes and imports and in error messages. May be null if the schema has no relative
+	 *                 references.
+	 */
+	public static SchemaSource of(String schema, String systemId) {
+		return new SchemaSource(systemId, schema.getBytes(StandardCharsets.UTF_8), null);
+	}
+
+	/**
+	 * @return a source for the same schema that resolves includes and imports through the given resolver. The resolver is shared by all conversions of the
+	 *         source and must be thread-safe if they run concurrently.
+	 */
+	public SchemaSource withEntityResolver(EntityResolver entityResolver) {
+		return new SchemaSource(systemId, content, entityResolver);
+	}
+
+	public String getSystemId() {
+		return systemId;
+	}
+
+	/**
+	 * @return the schema document, or null if it is read from the system id
+	 */
+	byte[] getContent() {
+		return content;
+	}
+
+	EntityResolver getEntityResolver() {
+		return entityResolver;
+	}
+
+	/**
+	 * @return a new input source for one parse
+	 */
+	InputSource toInputSource() {
+		InputSource source = new InputSource(systemId);
+		if (content != null) {
+			source.setByteStream(new ByteArrayInputStream(content));
+		}
+		return source;
+	}
+}
@@ -0,0 +1,71 @@
+package com.github.tranchis.xsd2thrift;
+
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.yaml.snakeyaml.Yaml;
+
+/**
+ * Entry point of the worker processes of a sharded conversion, started by {@link ConversionEngine}.
+ *
+ * Usage: {@code ShardWorker CONFIG SYSTEMID SCHEMA|- INDEX COUNT OUTPUT}. Reads the configuration from the yaml file CONFIG, converts the schema at SYSTEMID,
+ * or the schema stored in the file SCHEMA with SYSTEMID as its location, renders shard INDEX of COUNT and writes the shard archive to OUTPUT.
+ *
+ * Every worker parses and interprets the whole schema set, as rendering a definition needs the model of all the types it refers to. Only rendering is split
+ * between the workers.
+ */
+public class ShardWorker {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(ShardWorker.class);
+
+	private ShardWorker() {
+	}
+
+	/**
+	 * Exits with the code returned by {@link #run(String[])}, which the engine checks before reading the archive.
+	 */
+	public static void main(String[] args) {
+		int exitCode = run(args);
+		if (exitCode != 0) {
+			System.exit(exitCode);
+		}
+	}
+
+	/**
+	 * Renders the shard given by the arguments.
+	 *
+	 * @return 0 if the shard archive was written, 1 if rendering failed and 2 for invalid arguments
+	 */
+	static int run(String[] args) {
+		if (args.length != 6) {
+			LOGGER.error("Usage: ShardWorker CONFIG SYSTEMID SCHEMA|- INDEX COUNT OUTPUT");
+			return 2;
+		}
+		try {
+			ConfigFile config;
+			try (InputStream in = Files.newInputStream(Paths.get(args[0]))) {
+				config = new Yaml().loadAs(in, ConfigFile.class);
+			}
+
+			SchemaSource source;
+			if ("-".equals(args[2])) {
+				source = SchemaSource.of(Paths.get(URI.create(args[1])));
+			} else {
+				try (InputStream in = Files.newInputStream(Paths.get(args[2]))) {
+					source = SchemaSource.of(in, "null".equals(args[1]) ? null : args[1]);
+				}
+			}
+
+			byte[] archive = new ConversionEngine(config, null).renderShard(source, Integer.parseInt(args[3]), Integer.parseInt(args[4]));
+			Files.write(Paths.get(args[5]), archive);
+			return 0;
+		} catch (Exception e) {
+			LOGGER.error("Error rendering shard " + args[3] + " of " + args[4], e);
+			return 1;
+		}
+	}
+}
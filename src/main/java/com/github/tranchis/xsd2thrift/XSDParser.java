@@ -26,7 +26,9 @@ package com.github.tranchis.xsd2thrift;
 import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.regex.Pattern;
 
 import javax.xml.parsers.SAXParserFactory;
 
@@ -37,7 +39,7 @@ import org.w3c.dom.NodeList;
 import org.w3c.dom.Text;
 import org.xml.sax.*;
 
-import com.github.tranchis.xsd2thrift.marshal.ProtobufMarshaller;
+import com.github.tranchis.xsd2thrift.marshal.IMarshaller;
 import com.sun.xml.xsom.*;
 import com.sun.xml.xsom.impl.ComplexTypeImpl;
 import com.sun.xml.xsom.parser.XSOMParser;
@@ -47,34 +49,19 @@ public class XSDParser implements ErrorHandler {
 
 	private static final Logger LOGGER = LoggerFactory.getLogger(XSDParser.class);
 
-	private File f;
-	private TreeMap<String, Message> map;
-	private Map<String, Enumeration> enums;
-	private Map<String, String> simpleTypes;
-	private Map<String, String> documentation;
-	private Set<String> keywords, basicTypes;
-	private HashMap<String, String> xsdMapping;
-	private ProtobufMarshaller marshaller;
-	private OutputWriter writer;
-	private boolean nestEnums = true;
-	private int enumOrderStart = 0;
-	private boolean typeInEnums = true;
-	private boolean includeMessageDocs = true;
-	private boolean includeFieldDocs = true;
-
-	public XSDParser(String stFile) {
-		this.xsdMapping = new HashMap<String, String>();
-		init(stFile);
-	}
+	/** Largest number of fraction digits of a fixed-point decimal, so that values up to 9 still fit in a 64 bit integer */
+	private static final int MAX_DECIMAL_SCALE = 18;
+	/** Names of the key field of a map entry, in order of preference */
+	private static final List<String> MAP_KEY_NAMES = Arrays.asList("key", "name", "id", "code");
+	/** Output types allowed as map keys */
+	private static final Set<String> MAP_KEY_TYPES = new HashSet<>(
+			Arrays.asList("string", "bool", "int32", "int64", "uint32", "uint64", "sint32", "sint64", "fixed32", "fixed64", "sfixed32", "sfixed64"));
 
-	private void init(String stFile) {
+	private static final Set<String> KEYWORDS;
+	private static final Set<String> BASIC_TYPES;
 
-		this.f = new File(stFile);
-		map = new TreeMap<String, Message>();
-		enums = new HashMap<String, Enumeration>();
-		simpleTypes = new HashMap<String, String>();
-		documentation = new HashMap<String, String>();
-		keywords = new TreeSet<String>();
+	static {
+		Set<String> keywords = new TreeSet<String>();
 		keywords.add("interface");
 		keywords.add("is");
 		keywords.add("class");
@@ -88,7 +75,7 @@ public class XSDParser implements ErrorHandler {
 		keywords.add("else");
 		keywords.add("descriptor");
 
-		basicTypes = new TreeSet<String>();
+		Set<String> basicTypes = new TreeSet<String>();
 		basicTypes.add("string");
 		basicTypes.add("normalizedString");
 		basicTypes.add("anyType");
@@ -129,11 +116,105 @@ public class XSDParser implements ErrorHandler {
 		basicTypes.add("Name");
 
 		// basicTypes.add("BaseObject");
+
+		KEYWORDS = Collections.unmodifiableSet(keywords);
+		BASIC_TYPES = Collections.unmodifiableSet(basicTypes);
+	}
+
+	private SchemaSource source;
+	private TreeMap<String, Message> map;
+	private Map<String, Enumeration> enums;
+	private Map<String, String> simpleTypes;
+	/** Ranges of integer simple types with range or digit facets, by type name, when integer types are picked by range */
+	private Map<String, IntegerRange> integerRanges;
+	/** Number of fraction digits of decimal simple types written as fixed-point integers, by type name */
+	private Map<String, Integer> decimalScales;
+	private Map<String, String> documentation;
+	private Map<String, String> xsdMapping;
+	private IMarshaller marshaller;
+	private OutputWriter writer;
+	/** Further marshallers and their writers, rendered from the same interpretation as the main marshaller */
+	private List<IMarshaller> targetMarshallers = new ArrayList<>();
+	private List<OutputWriter> targetWriters = new ArrayList<>();
+	private boolean nestEnums = true;
+	private int enumOrderStart = 0;
+	private boolean typeInEnums = true;
+	private boolean includeMessageDocs = true;
+	private boolean includeFieldDocs = true;
+	private boolean streaming;
+	/** Names of messages and enums that have been written and dropped in streaming mode */
+	private Set<String> releasedMessages = new HashSet<>();
+	private Set<String> releasedEnums = new HashSet<>();
+	/** The slice of the output order rendered by this parser, see {@link #setShard(int, int)} */
+	private int shardIndex = 0;
+	private int shardCount = 1;
+	private boolean compactFieldNumbers;
+	/** Field names, optionally qualified with their message name, that are numbered first with compact field numbers */
+	private Set<String> hotFields = Collections.emptySet();
+	/** Estimated tag bytes saved per encoded message by compact field numbers, by message name */
+	private Map<String, Integer> tagBytesSaved = new TreeMap<>();
+	private boolean rangeIntegerTypes;
+	private boolean fixedPointDecimals;
+	private boolean listsAsRepeated;
+	private boolean flattenSimpleContent;
+	/** Messages that only wrap a single value, with the type of the value, by message name */
+	private Map<String, String> simpleContentWrappers = new TreeMap<>();
+	/** Names of the messages of global elements, which are written even if they are flattened where they are referenced */
+	private Set<String> elementTypes = new HashSet<>();
+	/** Fields, as message.field, that refer to a flattened wrapper */
+	private Set<String> flattenedReferences = new TreeSet<>();
+	private boolean collapseListWrappers;
+	/** Messages that only hold one repeated element, with that element, by message name */
+	private Map<String, Field> listWrappers = new TreeMap<>();
+	/** Fields, as message.field, that were written as the repeated item of a list wrapper, with the XML element name of the items */
+	private Map<String, String> collapsedListWrappers = new TreeMap<>();
+	private boolean choiceAsOneof;
+	/** Number of choices written as oneofs, which identifies the next one */
+	private int choices;
+	private boolean deduplicateTypes;
+	/** Names of messages and enums named after the element or attribute they are declared at, rather than in the schema */
+	private Set<String> siteNamedTypes = new HashSet<>();
+	/** Messages and enums dropped as duplicates, with the definition that replaced them, by name */
+	private Map<String, String> duplicateTypes = new TreeMap<>();
+	/** Estimated size of the output of the dropped duplicates */
+	private int duplicateBytes;
+	private boolean hoistSharedEnums;
+	/** Enums written at the top level although enums are nested, as several messages refer to them */
+	private Set<String> sharedEnums = Collections.emptySet();
+	private List<Pattern> lazyFields = Collections.emptyList();
+	private int lazySubtreeSize;
+	/** Number of fields reachable from a message, up to the lazy subtree size, by message name */
+	private Map<String, Integer> subtreeSizes = new HashMap<>();
+	/** Fields, as message.field, marked to be parsed lazily */
+	private Set<String> markedLazyFields = new TreeSet<>();
+	private boolean keyValueMaps;
+	/** Messages that hold a key and a value, with the key field, by message name */
+	private Map<String, Field> mapKeys = new TreeMap<>();
+	/** Repeated fields, as message.field, written as maps */
+	private Set<String> mappedFields = new TreeSet<>();
+	private Set<String> compositionBases = Collections.emptySet();
+	/** Fields, as message.field of the written message, that embed the base type of a message derived by composition, with the name of the base type */
+	private Map<String, String> compositionFields = new TreeMap<>();
+	/** Number of fields each message would have if all derived messages copied the fields of their base types, by message name */
+	private Map<String, Integer> copiedFieldCounts = new HashMap<>();
+
+	public XSDParser(String stFile) {
+		this(stFile, new HashMap<String, String>());
 	}
 
 	public XSDParser(String stFile, HashMap<String, String> xsdMapping) {
+		this(SchemaSource.of(new File(stFile).toPath()), xsdMapping);
+	}
+
+	public XSDParser(SchemaSource source, Map<String, String> xsdMapping) {
+		this.source = source;
 		this.xsdMapping = xsdMapping;
-		init(stFile);
+		map = new TreeMap<String, Message>();
+		enums = new TreeMap<String, Enumeration>();
+		simpleTypes = new TreeMap<String, String>();
+		integerRanges = new TreeMap<String, IntegerRange>();
+		decimalScales = new TreeMap<String, Integer>();
+		documentation = new TreeMap<String, String>();
 	}
 
 	public void parse() throws Exception {
@@ -146,34 +227,244 @@ public class XSDParser implements ErrorHandler {
 
 		parser.setAnnotationParser(new DomAnnotationParserFactory());
 
-		parser.parse(f);
+		if (source.getEntityResolver() != null) {
+			parser.setEntityResolver(source.getEntityResolver());
+		}
+
+		parser.parse(source.toInputSource());
+		if (parser.getResult() == null) {
+			LOGGER.error("Schema {} could not be parsed", source.getSystemId());
+			throw new InvalidXSDException("Schema " + source.getSystemId() + " could not be parsed");
+		}
 
-		interpretResult(parser.getResult());
+		if (streaming && shardCount > 1) {
+			throw new IllegalStateException("Sharded rendering is not supported in streaming mode");
+		}
 
-		// TODO: Add optimizations/cleanup/check for duplicates/renaming etc.
+		List<IMarshaller> marshallers = new ArrayList<>();
+		List<OutputWriter> writers = new ArrayList<>();
+		marshallers.add(marshaller);
+		writers.add(writer);
+		marshallers.addAll(targetMarshallers);
+		writers.addAll(targetWriters);
 
-		writeMap();
+		try {
+			if (streaming) {
+				interpretAndWriteByNamespace(parser.getResult(), marshallers, writers);
+			} else {
+				interpretResult(parser.getResult());
+				retainCollapsibleListWrappers();
+				if (deduplicateTypes) {
+					deduplicateTypes();
+				}
+				if (keyValueMaps) {
+					findMapEntries();
+				}
+
+				for (int i = 0; i < marshallers.size(); i++) {
+					useTarget(marshallers.get(i), writers.get(i));
+					writeMap();
+				}
+			}
+
+			for (int i = 0; i < marshallers.size(); i++) {
+				useTarget(marshallers.get(i), writers.get(i));
+				writer.postProcessNamespacedFilesForIncludes();
+				LOGGER.debug("Mapping lookups - {}", marshaller.getMappingStatistics());
+			}
+			if (compactFieldNumbers) {
+				logTagBytesSaved();
+			}
+			if (flattenSimpleContent) {
+				logFlattenedWrappers();
+			}
+			if (!lazyFields.isEmpty() || lazySubtreeSize > 0) {
+				LOGGER.info("Marked {} message fields lazy: {}", markedLazyFields.size(), markedLazyFields);
+			}
+			if (!compositionBases.isEmpty()) {
+				int[] declarations = getFieldDeclarationCounts();
+				LOGGER.info("Composition inheritance at {} derived messages writes {} field declarations instead of {}", compositionFields.size(),
+						declarations[0], declarations[1]);
+			}
+			if (keyValueMaps) {
+				LOGGER.info("Found {} key/value types, written as maps at {} fields: {}", mapKeys.size(), mappedFields.size(), mappedFields);
+			}
+			if (deduplicateTypes) {
+				LOGGER.info("Merged {} duplicate messages and enums, saving an estimated {} bytes of output: {}", duplicateTypes.size(), duplicateBytes,
+						duplicateTypes);
+			}
+			if (collapseListWrappers) {
+				LOGGER.info("Collapsed {} list wrappers at {} fields: {}", listWrappers.size(), collapsedListWrappers.size(), collapsedListWrappers);
+			}
+		} finally {
+			useTarget(marshallers.get(0), writers.get(0));
+		}
+	}
 
-		writer.postProcessNamespacedFilesForIncludes();
+	/**
+	 * Selects the marshaller and writer that the write methods render to. Interpretation always uses the main marshaller.
+	 */
+	private void useTarget(IMarshaller marshaller, OutputWriter writer) {
+		this.marshaller = marshaller;
+		this.writer = writer;
 	}
 
+	/**
+	 * Interprets one schema at a time. As soon as all schemas of a namespace have been interpreted, the namespace is written and its messages and enums are
+	 * dropped. Messages used as base types are kept, as derived types copy their fields. Outputs stay open until the end, and types that later schemas still
+	 * declare in a written namespace are appended to it.
+	 * 
+	 * Enums are always written at the top level in this mode, since nesting them would require keeping each enum until its last user is written. Each namespace
+	 * is written to all targets before it is dropped.
+	 */
+	private void interpretAndWriteByNamespace(XSSchemaSet sset, List<IMarshaller> marshallers, List<OutputWriter> writers) throws Exception {
+		List<XSSchema> schemas = new ArrayList<>();
+		Map<String, Integer> remainingSchemas = new HashMap<>();
+		Iterator<XSSchema> it = sset.iterateSchema();
+		while (it.hasNext()) {
+			XSSchema xs = it.next();
+			if (!xs.getTargetNamespace().endsWith("/XMLSchema")) {
+				schemas.add(xs);
+				remainingSchemas.merge(NamespaceConverter.convertFromSchema(xs.getTargetNamespace()), 1, Integer::sum);
+			}
+		}
+
+		// Fields refer to named simple types by name only, so those of schemas interpreted later must be known before the first namespace is written. They
+		// are small and only enums of namespaces not written yet are retained.
+		for (XSSchema xs : schemas) {
+			Iterator<XSSimpleType> simpleTypes = xs.iterateSimpleTypes();
+			while (simpleTypes.hasNext()) {
+				processSimpleType(simpleTypes.next(), null);
+			}
+		}
+
+		Set<String> baseTypes = findBaseTypes(sset);
+		Set<String> declared = new TreeSet<String>(BASIC_TYPES);
+		int peakMessages = 0, peakFields = 0, peakEnums = 0;
+
+		for (XSSchema xs : schemas) {
+			interpretSchema(xs, sset);
+
+			int fields = 0;
+			for (Message message : map.values()) {
+				fields += message.getFields().size();
+			}
+			if (map.size() + fields + enums.size() > peakMessages + peakFields + peakEnums) {
+				peakMessages = map.size();
+				peakFields = fields;
+				peakEnums = enums.size();
+			}
+
+			String namespace = NamespaceConverter.convertFromSchema(xs.getTargetNamespace());
+			if (remainingSchemas.merge(namespace, -1, Integer::sum) == 0) {
+				writeNamespace(namespace, baseTypes, declared, marshallers, writers);
+			}
+		}
+
+		// Types that did not end up in the namespace of any schema
+		Set<String> remainingNamespaces = new TreeSet<>(Comparator.nullsFirst(Comparator.<String>naturalOrder()));
+		for (Enumeration en : enums.values()) {
+			remainingNamespaces.add(en.getNamespace());
+		}
+		for (Message message : map.values()) {
+			if (!releasedMessages.contains(message.getName())) {
+				remainingNamespaces.add(message.getNamespace());
+			}
+		}
+		for (String namespace : remainingNamespaces) {
+			writeNamespace(namespace, baseTypes, declared, marshallers, writers);
+		}
+
+		LOGGER.info("Peak retained model, sampled after each schema: {} messages with {} fields and {} enums", peakMessages, peakFields, peakEnums);
+	}
+
+	private void writeNamespace(String namespace, Set<String> baseTypes, Set<String> declared, List<IMarshaller> marshallers, List<OutputWriter> writers)
+			throws IOException {
+		List<String> namespaceEnums = new ArrayList<>();
+		for (Map.Entry<String, Enumeration> en : enums.entrySet()) {
+			if (Objects.equals(namespace, en.getValue().getNamespace())) {
+				namespaceEnums.add(en.getKey());
+			}
+		}
+		List<Message> namespaceMessages = new ArrayList<>();
+		for (Message message : map.values()) {
+			if (Objects.equals(namespace, message.getNamespace()) && !releasedMessages.contains(message.getName())) {
+				namespaceMessages.add(message);
+			}
+		}
+
+		for (int i = 0; i < marshallers.size(); i++) {
+			useTarget(marshallers.get(i), writers.get(i));
+			for (String enumName : namespaceEnums) {
+				writer.startDefinition(namespace, enumName, Collections.<String>emptySet());
+				writeEnum(enumName);
+				writer.endDefinition();
+				declared.add(enumName);
+			}
+			for (Message message : namespaceMessages) {
+				if (isFlattened(message)) {
+					declared.add(message.getName());
+					continue;
+				}
+				writeMessage(message, declared);
+			}
+			writer.flushNamespace(namespace);
+		}
+
+		for (String enumName : namespaceEnums) {
+			enums.remove(enumName);
+			releasedEnums.add(enumName);
+		}
+		for (Message message : namespaceMessages) {
+			releasedMessages.add(message.getName());
+			if (!baseTypes.contains(message.getName())) {
+				map.remove(message.getName());
+			}
+		}
+	}
+
+	private Set<String> findBaseTypes(XSSchemaSet sset) {
+		Set<String> baseTypes = new HashSet<>();
+		Iterator<XSComplexType> it = sset.iterateComplexTypes();
+		while (it.hasNext()) {
+			XSType base = it.next().getBaseType();
+			if (base != null && base != sset.getAnyType() && base.getName() != null) {
+				baseTypes.add(base.getName());
+			}
+		}
+		return baseTypes;
+	}
+
+	/**
+	 * Writes all enums and messages to the output. Enums are written in name order, followed by messages in name order, so identical input always produces
+	 * identical output bytes.
+	 */
 	private void writeMap() throws Exception {
 		Iterator<Message> messageIterator;
 		Message message;
 		Set<Message> messageSet;
 		Set<String> declared;
-		
+
 		boolean bModified;
 
-		if (!marshaller.isNestedEnums() || !isNestEnums()) {
-			Iterator<String> ite = enums.keySet().iterator();
+		sharedEnums = isWritingNestedEnums() && hoistSharedEnums ? findSharedEnums() : Collections.<String>emptySet();
+		int definitions = (isWritingNestedEnums() ? sharedEnums.size() : enums.size()) + map.size();
+		int position = 0;
+
+		if (!isWritingNestedEnums() || !sharedEnums.isEmpty()) {
+			Iterator<String> ite = (isWritingNestedEnums() ? sharedEnums : enums.keySet()).iterator();
 			while (ite.hasNext()) {
-				writeEnum(ite.next());
+				String enumName = ite.next();
+				if (isInShard(position++, definitions)) {
+					writer.startDefinition(enums.get(enumName).getNamespace(), enumName, Collections.<String>emptySet());
+					writeEnum(enumName);
+					writer.endDefinition();
+				}
 			}
 		}
 
 		messageSet = new TreeSet<Message>(map.values());
-		declared = new TreeSet<String>(basicTypes);
+		declared = new TreeSet<String>(BASIC_TYPES);
 		declared.addAll(enums.keySet());
 		declared.addAll(simpleTypes.keySet());
 
@@ -183,7 +474,13 @@ public class XSDParser implements ErrorHandler {
 			messageIterator = map.values().iterator();
 			while (messageIterator.hasNext()) {
 				message = messageIterator.next();
-				writeMessage(message, declared);
+				if (isFlattened(message)) {
+					declared.add(message.getName());
+				} else if (isInShard(position++, definitions)) {
+					writeMessage(message, declared);
+				} else {
+					declared.add(message.getName());
+				}
 				messageSet.remove(message);
 				bModified = true;
 			}
@@ -214,7 +511,7 @@ public class XSDParser implements ErrorHandler {
 						s.getTypes().removeAll(declared);
 						LOGGER.error(s.getName() + ": " + s.getTypes());
 					}
-					throw new InvalidXSDException();
+					throw new InvalidXSDException("Source schema contains circular dependencies and the target marshaller does not support them");
 				}
 			} else {
 				// Missing types have been detected
@@ -225,18 +522,20 @@ public class XSDParser implements ErrorHandler {
 						LOGGER.error(s.getName() + ": " + s.getTypes());
 					}
 				}
-				throw new InvalidXSDException();
+				throw new InvalidXSDException("Source schema contains references to missing types");
 			}
 		}
 	}
 
-	private void writeMessage(Message message, Set<String> declared) throws IOException {
-		Iterator<Field> itf;
-		Field field;
-		String fieldName, fieldType;
-		Set<String> usedInEnums;
-		int order;
+	/**
+	 * @return whether the definition at the given position of the output order belongs to the slice rendered by this parser
+	 */
+	private boolean isInShard(int position, int definitions) {
+		return shardCount <= 1 || (long) position * shardCount / definitions == shardIndex;
+	}
 
+	private void writeMessage(Message message, Set<String> declared) throws IOException {
+		writer.startDefinition(message.getNamespace(), message.getName(), dependencies(message));
 		writeMessageDocumentation(message.getDoc(), message.getNamespace());
 
 		String messageName = message.getName();
@@ -245,92 +544,291 @@ public class XSDParser implements ErrorHandler {
 			messageName = marshaller.getNameMapping(messageName);
 		}
 
-		os(message.getNamespace()).write(marshaller.writeStructHeader(escape(messageName)).getBytes());
-
-		itf = orderedIteratorForFields(message.getFields());
-		usedInEnums = new TreeSet<String>();
-		order = 1;
-		while (itf.hasNext()) {
-			field = itf.next();
-			fieldName = field.getName();
-			if (marshaller.getNameMapping(fieldName) != null) {
-				fieldName = marshaller.getNameMapping(fieldName);
+		os(message.getNamespace()).write(marshaller.writeStructHeader(escape(messageName)).getBytes(StandardCharsets.UTF_8));
+
+		List<Field> fields = orderedFields(message);
+		Map<String, String> oneofNames = oneofNames(fields);
+		Set<String> usedInEnums = new TreeSet<String>();
+		int order = 1;
+		for (Field field : fields) {
+			if (field.getOneof() == null) {
+				writeField(message, field, order++, usedInEnums);
+			} else if (oneofNames.containsKey(field.getOneof())) {
+				List<Field> members = new ArrayList<>();
+				for (Field member : fields) {
+					if (field.getOneof().equals(member.getOneof())) {
+						members.add(member);
+					}
+				}
+				// Enums cannot be declared within a oneof
+				for (Field member : members) {
+					String type = valueType(member);
+					if (isWritingNestedEnums() && enums.containsKey(type) && !sharedEnums.contains(type) && usedInEnums.add(type)) {
+						writeEnum(type);
+					}
+				}
+				os(message.getNamespace()).write(marshaller.writeOneofHeader(oneofNames.remove(field.getOneof())).getBytes(StandardCharsets.UTF_8));
+				for (Field member : members) {
+					writeField(message, member, order++, usedInEnums);
+				}
+				os(message.getNamespace()).write(marshaller.writeOneofFooter().getBytes(StandardCharsets.UTF_8));
 			}
+		}
+		os(message.getNamespace()).write(marshaller.writeStructFooter().getBytes(StandardCharsets.UTF_8));
+		writer.endDefinition();
+		declared.add(message.getName());
+	}
 
-			fieldType = field.getType();
-			if (fieldType == null) {
-				fieldType = field.getName();
-			}
-			if (isNestEnums() && marshaller.isNestedEnums() && enums.containsKey(fieldType) && !usedInEnums.contains(fieldType)) {
-				usedInEnums.add(fieldType);
-				writeEnum(fieldType);
+	/**
+	 * Names the oneofs of a message choice, choice2 and so on, in the order of their first field.
+	 * 
+	 * @return the names of the oneofs by the identifier of their choice
+	 */
+	private Map<String, String> oneofNames(List<Field> fields) {
+		Set<String> fieldNames = new HashSet<>();
+		for (Field field : fields) {
+			fieldNames.add(field.getName());
+		}
+		Map<String, String> names = new LinkedHashMap<>();
+		for (Field field : fields) {
+			if (field.getOneof() != null && !names.containsKey(field.getOneof())) {
+				String name = names.isEmpty() ? "choice" : "choice" + (names.size() + 1);
+				while (fieldNames.contains(name)) {
+					name = "_" + name;
+				}
+				names.put(field.getOneof(), name);
 			}
+		}
+		return names;
+	}
 
-			if (simpleTypes.containsKey(fieldType)) {
-				fieldType = simpleTypes.get(fieldType);
-			}
+	/**
+	 * @return the type of the values of the field, looking through flattened and collapsed wrappers
+	 */
+	private String valueType(Field field) {
+		String type = field.getType() != null ? field.getType() : field.getName();
+		if (listWrappers.containsKey(type)) {
+			type = listWrappers.get(type).getType();
+		}
+		if (simpleContentWrappers.containsKey(type)) {
+			type = simpleContentWrappers.get(type);
+		}
+		return type;
+	}
 
-			if (!map.keySet().contains(fieldType) && !basicTypes.contains(fieldType) && !enums.containsKey(fieldType)) {
-				fieldType = "binary";
-			}
-			if (fieldType.equals(fieldName)) {
-				fieldName = "_" + fieldName;
+	private void writeField(Message message, Field field, int order, Set<String> usedInEnums) throws IOException {
+		String fieldName, fieldType;
+
+		fieldName = field.getName();
+		if (marshaller.getNameMapping(fieldName) != null) {
+			fieldName = marshaller.getNameMapping(fieldName);
+		}
+
+		fieldType = field.getType();
+		if (fieldType == null) {
+			fieldType = field.getName();
+		}
+		boolean repeated = field.isRepeat();
+		String fieldTypeNamespace = field.getTypeNamespace();
+		String listItemName = null;
+		if (listWrappers.containsKey(fieldType)) {
+			Field item = listWrappers.get(fieldType);
+			fieldType = item.getType();
+			fieldTypeNamespace = item.getTypeNamespace();
+			repeated = true;
+			listItemName = item.getName();
+			collapsedListWrappers.put(message.getName() + "." + field.getName(), listItemName);
+			writer.addCollapsedListWrapper(message.getName() + "." + field.getName(), listItemName);
+		}
+		if (simpleContentWrappers.containsKey(fieldType)) {
+			fieldType = simpleContentWrappers.get(fieldType);
+			flattenedReferences.add(message.getName() + "." + field.getName());
+		}
+		if (sharedEnums.contains(fieldType)) {
+			// Declared at the top level of the namespace of the enum
+			fieldTypeNamespace = enums.get(fieldType).getNamespace();
+		} else if (isWritingNestedEnums() && enums.containsKey(fieldType) && !usedInEnums.contains(fieldType)) {
+			usedInEnums.add(fieldType);
+			writeEnum(fieldType);
+		}
+
+		if (localType(fieldType).equals(fieldName)) {
+			fieldName = "_" + fieldName;
+		}
+
+		Field key = repeated ? mapKeys.get(fieldType) : null;
+		if (key != null) {
+			Field value = mapValue(fieldType);
+			String valueType = valueType(value);
+			String valueTypeNamespace = value.getTypeNamespace();
+			if (sharedEnums.contains(valueType)) {
+				valueTypeNamespace = enums.get(valueType).getNamespace();
+			} else if (isWritingNestedEnums() && enums.containsKey(valueType) && usedInEnums.add(valueType)) {
+				writeEnum(valueType);
 			}
+			String doc = "Map of the " + (listItemName != null ? listItemName : field.getName()) + " elements by their " + key.getName()
+					+ ", the order of the elements is not kept";
+			mappedFields.add(message.getName() + "." + field.getName());
+			os(message.getNamespace()).write(marshaller.writeMapParameter(order, escape(fieldName), outputType(message, valueType(key), key.getTypeNamespace()),
+					outputType(message, valueType, valueTypeNamespace), outputType(message, fieldType, fieldTypeNamespace), doc, writer.isSplitBySchema())
+					.getBytes(StandardCharsets.UTF_8));
+			return;
+		}
 
-			String typeNameSpace = "";
-			if (marshaller.getTypeMapping(fieldType) != null) {
-				fieldType = marshaller.getTypeMapping(fieldType);
-				int qualifyingDot = fieldType.lastIndexOf('.');
-				if (qualifyingDot > -1) {
-					typeNameSpace = fieldType.substring(0, qualifyingDot + 1);
-					String inclusionPath;
-					if (marshaller.getImport(fieldType) != null) {
-						inclusionPath = marshaller.getImport(fieldType);
-					} else {
-						inclusionPath = fieldType.substring(0, qualifyingDot);
-					}
-					writer.addInclusion(message.getNamespace(), inclusionPath);
-					fieldType = fieldType.substring(qualifyingDot + 1);
+		// Map fields have no lazy option, so only plain message fields are marked
+		boolean lazy = map.containsKey(fieldType) && marshaller.getTypeMapping(fieldType) == null && isLazy(message, field, fieldType);
+		Integer scale = decimalScales.get(fieldType);
+		String typeDoc = documentation.get(fieldType);
+		fieldType = outputType(message, fieldType, fieldTypeNamespace);
+
+		String doc = null;
+		if (map.get(fieldType) != null) {
+			doc = map.get(fieldType).getDoc();
+		}
+		if (scale != null) {
+			// Keeps the documentation of the element or its type
+			doc = field.getDoc() != null ? field.getDoc() : typeDoc;
+			doc = (doc != null ? doc.trim() + " - " : "") + "Fixed-point decimal with " + scale + " fraction digits, holds the value times 10^" + scale;
+		}
+		if (listItemName != null) {
+			doc = "XML list wrapper, each item is a " + listItemName + " element within the " + field.getName() + " element";
+		}
+		if (compositionFields.containsKey(message.getName() + "." + field.getName())) {
+			doc = "Content inherited from the base type " + compositionFields.get(message.getName() + "." + field.getName());
+		}
+
+		os(message.getNamespace())
+				.write(marshaller.writeStructParameter(order, field.isRequired(), repeated, escape(fieldName), fieldType, doc, writer.isSplitBySchema(), lazy)
+						.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * @return the type of the field within the model, with simple types replaced by their built-in base type and unknown types by binary
+	 */
+	private String localType(String type) {
+		Integer scale = decimalScales.get(type);
+		if (simpleTypes.containsKey(type)) {
+			type = simpleTypes.get(type);
+		}
+		if (scale != null) {
+			// The value times 10^scale, in a 64 bit integer unless its range allows a smaller type
+			type = "long";
+		}
+
+		if (!map.keySet().contains(type) && !BASIC_TYPES.contains(type) && !enums.containsKey(type) && !releasedMessages.contains(type)
+				&& !releasedEnums.contains(type)) {
+			type = "binary";
+		}
+		return type;
+	}
+
+	/**
+	 * @param typeNamespace namespace the type is declared in
+	 * @return the type as written in the output for a field of the message, qualified if it is declared in another namespace. Adds the imports it needs.
+	 */
+	private String outputType(Message message, String type, String typeNamespace) {
+		IntegerRange range = integerRanges.get(type);
+		boolean scaled = decimalScales.containsKey(type);
+		type = localType(type);
+
+		String typeNameSpace = "";
+		if (marshaller.getTypeMapping(type) != null) {
+			type = marshaller.getTypeMapping(type);
+			int qualifyingDot = type.lastIndexOf('.');
+			if (qualifyingDot > -1) {
+				typeNameSpace = type.substring(0, qualifyingDot + 1);
+				String inclusionPath;
+				if (marshaller.getImport(type) != null) {
+					inclusionPath = marshaller.getImport(type);
+				} else {
+					inclusionPath = type.substring(0, qualifyingDot);
 				}
-			} else if (!basicTypes.contains(fieldType) && field.getTypeNamespace() != null && !field.getTypeNamespace().equals(message.getNamespace())) {
-				typeNameSpace = field.getTypeNamespace() + ".";
-				writer.addInclusion(message.getNamespace(), field.getTypeNamespace());
+				writer.addInclusion(message.getNamespace(), inclusionPath);
+				type = type.substring(qualifyingDot + 1);
 			}
+		} else if (!BASIC_TYPES.contains(type) && typeNamespace != null && !typeNamespace.equals(message.getNamespace())) {
+			typeNameSpace = typeNamespace + ".";
+			writer.addInclusion(message.getNamespace(), typeNamespace);
+		}
 
-			if (marshaller.getTypeMapping(fieldType) != null) {
-				// Message-type has been overridden, need to override all usage
-				fieldType = marshaller.getTypeMapping(fieldType);
-			}
+		if (marshaller.getTypeMapping(type) != null) {
+			// Message-type has been overridden, need to override all usage
+			type = marshaller.getTypeMapping(type);
+		}
 
-			fieldType = typeNameSpace + escapeType(fieldType);
+		String integerType = range != null && typeNameSpace.isEmpty() ? marshaller.getIntegerTypeMapping(range.getMin(), range.getMax()) : null;
+		if (integerType == null && scaled && typeNameSpace.isEmpty()) {
+			integerType = marshaller.getScaledDecimalTypeMapping();
+		}
+		if (integerType != null) {
+			type = integerType;
+		}
 
-			String doc = null;
-			if (map.get(fieldType) != null) {
-				doc = map.get(fieldType).getDoc();
+		return typeNameSpace + escapeType(type);
+	}
+
+	/**
+	 * @param type the message type of the field
+	 * @return whether the field matches a lazy field pattern or its type reaches at least the lazy subtree size
+	 */
+	private boolean isLazy(Message message, Field field, String type) {
+		boolean lazy = false;
+		for (Pattern pattern : lazyFields) {
+			if (pattern.matcher(field.getName()).matches() || pattern.matcher(message.getName() + "." + field.getName()).matches()) {
+				lazy = true;
 			}
+		}
+		if (!lazy && lazySubtreeSize > 0) {
+			lazy = subtreeSizes.computeIfAbsent(type, this::subtreeSize) >= lazySubtreeSize;
+		}
+		if (lazy) {
+			markedLazyFields.add(message.getName() + "." + field.getName());
+		}
+		return lazy;
+	}
 
-			os(message.getNamespace())
-					.write(marshaller.writeStructParameter(order, field.isRequired(), field.isRepeat(), escape(fieldName), fieldType, doc, writer.isSplitBySchema()).getBytes());
-			order = order + 1;
+	/**
+	 * @return the number of fields of the message and of all messages reachable from it, counting each message once, or the lazy subtree size if the count
+	 *         reaches it
+	 */
+	private int subtreeSize(String type) {
+		Deque<String> pending = new ArrayDeque<>();
+		Set<String> visited = new HashSet<>();
+		pending.push(type);
+		visited.add(type);
+		int size = 0;
+		while (!pending.isEmpty() && size < lazySubtreeSize) {
+			for (Field field : map.get(pending.pop()).getFields()) {
+				size++;
+				String fieldType = valueType(field);
+				if (map.containsKey(fieldType) && visited.add(fieldType)) {
+					pending.push(fieldType);
+				}
+			}
 		}
-		os(message.getNamespace()).write(marshaller.writeStructFooter().getBytes());
-		declared.add(message.getName());
+		return Math.min(size, lazySubtreeSize);
+	}
+
+	/**
+	 * @return the fields marked to be parsed lazily, as message.field
+	 */
+	public Set<String> getLazyFields() {
+		return Collections.unmodifiableSet(markedLazyFields);
 	}
 
 	private void writeMessageDocumentation(String doc, String namespace) throws IOException {
 		if (includeMessageDocs && doc != null) {
-			StringBuilder sb = new StringBuilder();
-			sb.append("\n/*\n");
-			// Handling possible multiline-comments
-			sb.append(" * ");
-			sb.append(doc.trim().replaceAll("\n", "\n * "));
-			sb.append("\n */\n");
-
-			os(namespace).write(sb.toString().getBytes());
+			os(namespace).write(marshaller.writeDocumentation(doc).getBytes(StandardCharsets.UTF_8));
 		}
 	}
 
-	private Iterator<Field> orderedIteratorForFields(List<Field> fields) {
+	/**
+	 * Orders the fields of a message by name. With compact field numbers, hot fields come first, then required fields, then fields of scalar and enum types and
+	 * then all other fields, each group ordered by name. This gives the fields most likely to be present in an encoded message the numbers 1 to 15, whose tags
+	 * take a single byte.
+	 */
+	private List<Field> orderedFields(Message message) {
+		List<Field> fields = message.getFields();
 		Collections.sort(fields, new Comparator<Field>() {
 			@Override
 			public int compare(Field o1, Field o2) {
@@ -342,7 +840,397 @@ public class XSDParser implements ErrorHandler {
 				return o1.getName().compareTo(o2.getName());
 			}
 		});
-		return fields.iterator();
+		if (compactFieldNumbers) {
+			List<Field> byName = fields;
+			fields = new ArrayList<>(byName);
+			fields.sort(Comparator.comparingInt(field -> numberingGroup(message, field)));
+			tagBytesSaved.put(message.getName(), tagBytesSaved(message, byName, fields));
+		}
+		return fields;
+	}
+
+	private int numberingGroup(Message message, Field field) {
+		if (hotFields.contains(field.getName()) || hotFields.contains(message.getName() + "." + field.getName())) {
+			return 0;
+		}
+		if (field.isRequired()) {
+			return 1;
+		}
+		String type = valueType(field);
+		if (simpleTypes.containsKey(type)) {
+			type = simpleTypes.get(type);
+		}
+		if (BASIC_TYPES.contains(type) || enums.containsKey(type) || releasedEnums.contains(type)) {
+			return 2;
+		}
+		return 3;
+	}
+
+	/**
+	 * Estimates the tag bytes saved per encoded message, assuming that hot, required and scalar fields occur once in every message and all other fields are
+	 * absent. Repeated fields that are not packed pay the tag once per element, so the actual saving can be higher.
+	 */
+	private int tagBytesSaved(Message message, List<Field> byName, List<Field> compact) {
+		int saved = 0;
+		for (int i = 0; i < compact.size(); i++) {
+			Field field = compact.get(i);
+			if (numberingGroup(message, field) < 3) {
+				saved += tagSize(byName.indexOf(field) + 1) - tagSize(i + 1);
+			}
+		}
+		return saved;
+	}
+
+	/**
+	 * @return the size of the varint encoded tag of a field number
+	 */
+	static int tagSize(int fieldNumber) {
+		long tag = (long) fieldNumber << 3;
+		int size = 1;
+		while (tag >= 0x80) {
+			tag >>>= 7;
+			size++;
+		}
+		return size;
+	}
+
+	private void logTagBytesSaved() {
+		int total = 0;
+		for (Map.Entry<String, Integer> saved : tagBytesSaved.entrySet()) {
+			if (saved.getValue() != 0) {
+				LOGGER.info("Compact field numbers save an estimated {} tag bytes per {} message", saved.getValue(), saved.getKey());
+				total += saved.getValue();
+			}
+		}
+		LOGGER.info("Compact field numbers save an estimated {} tag bytes in total over one message of each type", total);
+	}
+
+	/**
+	 * @return the enums referenced by more than one written message, in name order. Enums named like a message stay nested, as they would clash with it at the
+	 *         top level.
+	 */
+	private Set<String> findSharedEnums() {
+		Set<String> shared = new TreeSet<>();
+		int avoided = 0;
+		for (Map.Entry<String, Set<String>> owner : enumOwners().entrySet()) {
+			if (isShared(owner.getKey(), owner.getValue())) {
+				shared.add(owner.getKey());
+				avoided += owner.getValue().size() - 1;
+			}
+		}
+		LOGGER.info("Hoisted {} enums shared by several messages, avoiding {} nested declarations: {}", shared.size(), avoided, shared);
+		return shared;
+	}
+
+	/**
+	 * @return the written messages that reference each enum, by enum name
+	 */
+	private Map<String, Set<String>> enumOwners() {
+		Map<String, Set<String>> owners = new TreeMap<>();
+		for (Message message : map.values()) {
+			if (!isFlattened(message)) {
+				for (Field field : message.getFields()) {
+					String type = valueType(field);
+					if (enums.containsKey(type)) {
+						owners.computeIfAbsent(type, enumName -> new HashSet<>()).add(message.getName());
+					}
+				}
+			}
+		}
+		return owners;
+	}
+
+	private boolean isShared(String enumName, Set<String> owners) {
+		return owners.size() > 1 && !map.containsKey(enumName);
+	}
+
+	/**
+	 * @return whether the message is a simple content wrapper that is not written, as all references to it are replaced by its value
+	 */
+	private boolean isFlattened(Message message) {
+		return (simpleContentWrappers.containsKey(message.getName()) || listWrappers.containsKey(message.getName()))
+				&& !elementTypes.contains(message.getName());
+	}
+
+	/**
+	 * @return the types the message refers to, with collapsed list wrappers replaced by the type of their items and with the key and value types of map entries
+	 */
+	private Collection<String> dependencies(Message message) {
+		if (listWrappers.isEmpty() && mapKeys.isEmpty()) {
+			return message.getTypes();
+		}
+		Set<String> types = new TreeSet<>();
+		for (String type : message.getTypes()) {
+			type = listWrappers.containsKey(type) ? listWrappers.get(type).getType() : type;
+			types.add(type);
+			if (mapKeys.containsKey(type)) {
+				for (Field field : map.get(type).getFields()) {
+					types.add(valueType(field));
+				}
+			}
+		}
+		return types;
+	}
+
+	/**
+	 * Finds the messages that hold exactly a key and a value, such as the entries of a key/value list. The key is a field named key, name, id or code, in that
+	 * order of preference, of a string, integer or boolean type. Neither field may be repeated.
+	 */
+	private void findMapEntries() {
+		for (Message message : map.values()) {
+			List<Field> fields = message.getFields();
+			if (fields.size() != 2 || listWrappers.containsKey(message.getName()) || simpleContentWrappers.containsKey(message.getName())) {
+				continue;
+			}
+			boolean single = true;
+			for (Field field : fields) {
+				single &= !field.isRepeat() && field.getOneof() == null && !listWrappers.containsKey(field.getType());
+			}
+			Field key = null;
+			for (String keyName : MAP_KEY_NAMES) {
+				for (Field field : fields) {
+					if (single && key == null && field.getName().equalsIgnoreCase(keyName) && isMapKeyType(field)) {
+						key = field;
+					}
+				}
+			}
+			if (key != null) {
+				mapKeys.put(message.getName(), key);
+			}
+		}
+	}
+
+	private boolean isMapKeyType(Field field) {
+		String type = localType(valueType(field));
+		String outputType = marshaller.getTypeMapping(type) != null ? marshaller.getTypeMapping(type) : type;
+		return MAP_KEY_TYPES.contains(outputType);
+	}
+
+	/**
+	 * @return the field of the map entry that is not its key
+	 */
+	private Field mapValue(String entryType) {
+		for (Field field : map.get(entryType).getFields()) {
+			if (field != mapKeys.get(entryType)) {
+				return field;
+			}
+		}
+		throw new IllegalStateException(entryType + " is not a map entry");
+	}
+
+	/**
+	 * @return the repeated fields written as maps, as message.field
+	 */
+	public Set<String> getMapFields() {
+		return Collections.unmodifiableSet(mappedFields);
+	}
+
+	/**
+	 * Keeps the list wrappers that can be collapsed at every reference. A wrapper referenced by a repeated field, or whose items are list wrappers themselves,
+	 * stays a message, as protobuf has no repeated fields of repeated fields. So does a wrapper referenced by a oneof member, as a oneof cannot hold repeated
+	 * fields.
+	 */
+	private void retainCollapsibleListWrappers() {
+		Set<String> kept = new HashSet<>();
+		for (Message message : map.values()) {
+			for (Field field : message.getFields()) {
+				if ((field.isRepeat() || field.getOneof() != null) && listWrappers.containsKey(field.getType())) {
+					kept.add(field.getType());
+				}
+			}
+		}
+		for (Map.Entry<String, Field> wrapper : listWrappers.entrySet()) {
+			if (listWrappers.containsKey(wrapper.getValue().getType())) {
+				kept.add(wrapper.getValue().getType());
+			}
+		}
+		listWrappers.keySet().removeAll(kept);
+	}
+
+	/**
+	 * Merges structurally identical messages and enums of a namespace into one definition. Only definitions named after the element or attribute they are
+	 * declared at are dropped, in favour of an identical type named in the schema if there is one, otherwise of the first of them by name. Messages become
+	 * identical as the types of their fields are merged, so merging repeats until nothing changes. Wrappers that are flattened or collapsed are left alone.
+	 */
+	private void deduplicateTypes() {
+		int enumBytes = emittedEnumSize();
+		Map<String, String> enumsByStructure = new HashMap<>();
+		for (String name : definitionOrder(enums.keySet())) {
+			Enumeration en = enums.get(name);
+			StringBuilder key = new StringBuilder().append(en.getNamespace());
+			en.iterator().forEachRemaining(value -> key.append('\0').append(value));
+			String first = enumsByStructure.putIfAbsent(key.toString(), name);
+			if (first != null && siteNamedTypes.contains(name)) {
+				enums.remove(name);
+				replaceType(name, first);
+			}
+		}
+
+		boolean merged = true;
+		while (merged) {
+			merged = false;
+			Map<String, String> messagesByStructure = new HashMap<>();
+			for (String name : definitionOrder(map.keySet())) {
+				Message message = map.get(name);
+				if (message == null || listWrappers.containsKey(name) || simpleContentWrappers.containsKey(name)) {
+					continue;
+				}
+				String first = messagesByStructure.putIfAbsent(structureKey(message), name);
+				if (first != null && siteNamedTypes.contains(name)) {
+					duplicateBytes += renderedSize(message);
+					map.remove(name);
+					replaceType(name, first);
+					merged = true;
+				}
+			}
+		}
+		duplicateBytes += enumBytes - emittedEnumSize();
+	}
+
+	/**
+	 * @return estimated size of the enum declarations in the output, counting nested enums once for each message they are nested in
+	 */
+	private int emittedEnumSize() {
+		Map<String, Set<String>> owners = isWritingNestedEnums() ? enumOwners() : null;
+		int size = 0;
+		for (Enumeration en : enums.values()) {
+			int declarations = 1;
+			if (owners != null) {
+				Set<String> users = owners.getOrDefault(en.getName(), Collections.<String>emptySet());
+				declarations = hoistSharedEnums && isShared(en.getName(), users) ? 1 : users.size();
+			}
+			size += declarations * renderedSize(en);
+		}
+		return size;
+	}
+
+	/**
+	 * @return the names with those named in the schema first, each part ordered by name
+	 */
+	private List<String> definitionOrder(Collection<String> names) {
+		List<String> ordered = new ArrayList<>(names);
+		ordered.sort(Comparator.comparing((String name) -> siteNamedTypes.contains(name)).thenComparing(Comparator.naturalOrder()));
+		return ordered;
+	}
+
+	/**
+	 * @return a key that is equal for messages that are written the same apart from their name and documentation
+	 */
+	private String structureKey(Message message) {
+		List<Field> fields = new ArrayList<>(message.getFields());
+		fields.sort(Comparator.comparing(Field::getName));
+		List<String> oneofs = new ArrayList<>();
+		StringBuilder key = new StringBuilder().append(message.getNamespace()).append('\0').append(message.getParent());
+		for (Field field : fields) {
+			if (field.getOneof() != null && !oneofs.contains(field.getOneof())) {
+				oneofs.add(field.getOneof());
+			}
+			key.append('\0')
+					.append(field.getName())
+					.append(' ')
+					.append(field.getTypeNamespace())
+					.append(' ')
+					.append(field.getType())
+					.append(' ')
+					.append(field.isRepeat())
+					.append(' ')
+					.append(field.isRequired())
+					.append(' ')
+					.append(field.getDef() != null ? field.getDef().value : null)
+					.append(' ')
+					.append(oneofs.indexOf(field.getOneof()));
+		}
+		return key.toString();
+	}
+
+	private void replaceType(String type, String replacement) {
+		for (Message message : map.values()) {
+			message.replaceType(type, replacement);
+		}
+		simpleContentWrappers.replaceAll((name, valueType) -> type.equals(valueType) ? replacement : valueType);
+		duplicateTypes.replaceAll((name, kept) -> type.equals(kept) ? replacement : kept);
+		duplicateTypes.put(type, replacement);
+		// The embedded base field of a dropped message is the same field of the message that replaces it
+		Map<String, String> replacedFields = new TreeMap<>();
+		for (Iterator<Map.Entry<String, String>> fields = compositionFields.entrySet().iterator(); fields.hasNext();) {
+			Map.Entry<String, String> field = fields.next();
+			if (field.getKey().startsWith(type + ".")) {
+				replacedFields.put(replacement + field.getKey().substring(type.length()), field.getValue());
+				fields.remove();
+			}
+		}
+		replacedFields.forEach(compositionFields::putIfAbsent);
+		compositionFields.replaceAll((field, base) -> type.equals(base) ? replacement : base);
+	}
+
+	private int renderedSize(Message message) {
+		IMarshaller renderer = marshaller.copy();
+		StringBuilder text = new StringBuilder(renderer.writeStructHeader(message.getName()));
+		int order = 1;
+		for (Field field : message.getFields()) {
+			text.append(renderer.writeStructParameter(order++, field.isRequired(), field.isRepeat(), field.getName(), field.getType(), field.getDoc(), false));
+		}
+		text.append(renderer.writeStructFooter());
+		return text.toString().getBytes(StandardCharsets.UTF_8).length;
+	}
+
+	private int renderedSize(Enumeration en) {
+		IMarshaller renderer = marshaller.copy();
+		StringBuilder text = new StringBuilder(renderer.writeEnumHeader(en.getName()));
+		int order = enumOrderStart;
+		text.append(renderer.writeEnumValue(order++, "unspecified"));
+		for (Iterator<String> values = en.iterator(); values.hasNext();) {
+			text.append(renderer.writeEnumValue(order++, values.next()));
+		}
+		text.append(renderer.writeEnumFooter());
+		return text.toString().getBytes(StandardCharsets.UTF_8).length;
+	}
+
+	/**
+	 * @return the messages and enums dropped as duplicates, with the definition that replaced them
+	 */
+	public Map<String, String> getDuplicateTypes() {
+		return Collections.unmodifiableMap(duplicateTypes);
+	}
+
+	/**
+	 * @return estimated size of the output the dropped duplicates would have taken
+	 */
+	public int getDuplicateBytes() {
+		return duplicateBytes;
+	}
+
+	/**
+	 * @return the fields written as the repeated items of a collapsed list wrapper, as message.field, with the XML element name of the items, so the wrapper
+	 *         element can be restored when converting back to XML
+	 */
+	public Map<String, String> getCollapsedListWrappers() {
+		return Collections.unmodifiableMap(collapsedListWrappers);
+	}
+
+	private void logFlattenedWrappers() {
+		int eliminated = 0;
+		for (String wrapper : simpleContentWrappers.keySet()) {
+			if (!elementTypes.contains(wrapper)) {
+				eliminated++;
+			}
+		}
+		LOGGER.info("Flattened {} simple content wrappers at {} fields, {} wrappers eliminated: {}", simpleContentWrappers.size(), flattenedReferences.size(),
+				eliminated, simpleContentWrappers.keySet());
+	}
+
+	/**
+	 * @return the types of the values of the simple content wrappers flattened at all references, by wrapper name
+	 */
+	public Map<String, String> getSimpleContentWrappers() {
+		return Collections.unmodifiableMap(simpleContentWrappers);
+	}
+
+	/**
+	 * @return the estimated tag bytes saved per encoded message by compact field numbers, by message name, for all messages written so far
+	 */
+	public Map<String, Integer> getTagBytesSaved() {
+		return Collections.unmodifiableMap(tagBytesSaved);
 	}
 
 	private void writeEnum(String type) throws IOException {
@@ -354,7 +1242,7 @@ public class XSDParser implements ErrorHandler {
 
 		writeMessageDocumentation(en.getDoc(), en.getNamespace());
 
-		os(en.getNamespace()).write(marshaller.writeEnumHeader(enumValue).getBytes());
+		os(en.getNamespace()).write(marshaller.writeEnumHeader(enumValue).getBytes(StandardCharsets.UTF_8));
 		itg = en.iterator();
 		int enumOrder = this.enumOrderStart;
 		String typePrefix;
@@ -365,25 +1253,25 @@ public class XSDParser implements ErrorHandler {
 		}
 
 		// Adding a default-value as "UNSPECIFIED"
-		os(en.getNamespace()).write(marshaller.writeEnumValue(enumOrder, escape(typePrefix + "unspecified")).getBytes());
+		os(en.getNamespace()).write(marshaller.writeEnumValue(enumOrder, escape(typePrefix + "unspecified")).getBytes(StandardCharsets.UTF_8));
 		enumOrder++;
 
 		if (itg.hasNext()) {
 			while (itg.hasNext()) {
-				os(en.getNamespace()).write(marshaller.writeEnumValue(enumOrder, escape(typePrefix + itg.next())).getBytes());
+				os(en.getNamespace()).write(marshaller.writeEnumValue(enumOrder, escape(typePrefix + itg.next())).getBytes(StandardCharsets.UTF_8));
 				enumOrder++;
 			}
 		} else {
-			os(en.getNamespace()).write(marshaller.writeEnumValue(enumOrder, escape(typePrefix + "UnspecifiedValue")).getBytes());
+			os(en.getNamespace()).write(marshaller.writeEnumValue(enumOrder, escape(typePrefix + "UnspecifiedValue")).getBytes(StandardCharsets.UTF_8));
 		}
 
-		os(en.getNamespace()).write(marshaller.writeEnumFooter().getBytes());
+		os(en.getNamespace()).write(marshaller.writeEnumFooter().getBytes(StandardCharsets.UTF_8));
 	}
 
 	private String escape(String name) {
 		String res = escapeType(name);
 
-		if (basicTypes.contains(res)) {
+		if (BASIC_TYPES.contains(res)) {
 			res = "_" + res;
 		}
 
@@ -403,7 +1291,7 @@ public class XSDParser implements ErrorHandler {
 
 		res = String.valueOf(nameChars);
 
-		if (!Character.isJavaIdentifierStart(nameChars[0]) || keywords.contains(res)) {
+		if (!Character.isJavaIdentifierStart(nameChars[0]) || KEYWORDS.contains(res)) {
 			res = res + "Value";
 		}
 
@@ -411,38 +1299,36 @@ public class XSDParser implements ErrorHandler {
 	}
 
 	private void interpretResult(XSSchemaSet sset) {
-		XSSchema xs;
-		Iterator<XSSchema> it;
-		Iterator<XSElementDecl> itt;
-		XSElementDecl el;
-
-		it = sset.iterateSchema();
+		Iterator<XSSchema> it = sset.iterateSchema();
 		while (it.hasNext()) {
-			xs = it.next();
+			XSSchema xs = it.next();
 			if (!xs.getTargetNamespace().endsWith("/XMLSchema")) {
-				Iterator<XSModelGroupDecl> xsModelGroupDeclIterator = xs.iterateModelGroupDecls();
-				while (xsModelGroupDeclIterator.hasNext()) {
-					XSModelGroupDecl modelGroupDecl = xsModelGroupDeclIterator.next();
-					XSModelGroup modelGroup = modelGroupDecl.getModelGroup();
-					processModelGroup(modelGroup, xs.getRoot());
-				}
-				itt = xs.iterateElementDecls();
-				while (itt.hasNext()) {
-					el = itt.next();
-					interpretElement(el, sset);
-				}
-				final Iterator<XSComplexType> ict = xs.iterateComplexTypes();
-				while (ict.hasNext()) {
-					processComplexType(ict.next(), null, sset);
-				}
-				final Iterator<XSSimpleType> ist = xs.iterateSimpleTypes();
-				while (ist.hasNext()) {
-					processSimpleType(ist.next(), null);
-				}
+				interpretSchema(xs, sset);
 			}
 		}
 	}
 
+	private void interpretSchema(XSSchema xs, XSSchemaSet sset) {
+		Iterator<XSModelGroupDecl> xsModelGroupDeclIterator = xs.iterateModelGroupDecls();
+		while (xsModelGroupDeclIterator.hasNext()) {
+			XSModelGroupDecl modelGroupDecl = xsModelGroupDeclIterator.next();
+			XSModelGroup modelGroup = modelGroupDecl.getModelGroup();
+			processModelGroup(modelGroup, xs.getRoot());
+		}
+		Iterator<XSElementDecl> itt = xs.iterateElementDecls();
+		while (itt.hasNext()) {
+			interpretElement(itt.next(), sset);
+		}
+		final Iterator<XSComplexType> ict = xs.iterateComplexTypes();
+		while (ict.hasNext()) {
+			processComplexType(ict.next(), null, sset);
+		}
+		final Iterator<XSSimpleType> ist = xs.iterateSimpleTypes();
+		while (ist.hasNext()) {
+			processSimpleType(ist.next(), null);
+		}
+	}
+
 	private List<Field> processModelGroup(XSModelGroup modelGroup, XSSchemaSet xsset) {
 
 		List<Field> groupFields = new ArrayList<>();
@@ -450,17 +1336,15 @@ public class XSDParser implements ErrorHandler {
 		for (XSParticle child : modelGroup.getChildren()) {
 			if (child.getTerm().asModelGroupDecl() != null) {
 				XSModelGroupDecl xsModelGroupDecl = child.getTerm().asModelGroupDecl();
-				groupFields.addAll(processModelGroup(xsModelGroupDecl.getModelGroup(), xsset));
+				groupFields.addAll(processGroupParticle(xsModelGroupDecl.getModelGroup(), child.isRepeated(), xsset));
 			} else if (child.getTerm().asModelGroup() != null) {
 				XSModelGroup xsModelGroup = child.getTerm().asModelGroup();
-				if (xsModelGroup.getCompositor().toString().equals("choice")) {
-					// TODO: define oneof here?
-				}
-				groupFields.addAll(processModelGroup(xsModelGroup, xsset));
+				groupFields.addAll(processGroupParticle(xsModelGroup, child.isRepeated(), xsset));
 			} else {
 				XSElementDecl term = child.getTerm().asElementDecl();
 				if (term != null) {
 					Field f;
+					String itemType;
 					String doc = resolveDocumentationAnnotation(term);
 					if (term.getType() != null && term.getType().asComplexType() != null) {
 						XSComplexType xsComplexType = term.getType().asComplexType();
@@ -469,6 +1353,12 @@ public class XSDParser implements ErrorHandler {
 						f = new Field(term.getName(), xsComplexType.getTargetNamespace(), typeName, child.isRepeated(), null, doc,
 								child.getMinOccurs().intValue() > 0);
 
+					} else if (!child.isRepeated() && (itemType = listItemType(term.getType().asSimpleType())) != null) {
+						f = new Field(term.getName(), term.getTargetNamespace(), itemType, true, null, doc, child.getMinOccurs().intValue() > 0);
+					} else if (term.getType().getName() == null && term.getType().asSimpleType().getFacet("enumeration") == null) {
+						// Anonymous restriction, written as its base type and which may carry range facets
+						f = new Field(term.getName(), term.getTargetNamespace(), processSimpleType(term.getType().asSimpleType(), term.getName()),
+								child.isRepeated(), null, doc, child.getMinOccurs().intValue() > 0);
 					} else {
 						f = new Field(term.getName(), term.getTargetNamespace(), term.getType().getName(), child.isRepeated(), null, doc,
 								child.getMinOccurs().intValue() > 0);
@@ -483,13 +1373,59 @@ public class XSDParser implements ErrorHandler {
 		return groupFields;
 	}
 
+	/**
+	 * Processes a model group that occurs as a particle. With choices as oneofs, the alternatives of a choice of single elements become the members of a oneof,
+	 * and alternatives that are choices of single elements themselves join the same oneof. A choice that may repeat falls back to a repeated field per
+	 * alternative, as a oneof cannot hold repeated fields, which loses the order of the alternatives. A choice with a sequence or a repeated element as an
+	 * alternative, or an element written as a repeated field, falls back to independent optional fields.
+	 */
+	private List<Field> processGroupParticle(XSModelGroup modelGroup, boolean repeated, XSSchemaSet xsset) {
+		List<Field> fields = processModelGroup(modelGroup, xsset);
+		if (!choiceAsOneof || modelGroup.getCompositor() != XSModelGroup.Compositor.CHOICE) {
+			return fields;
+		}
+		if (repeated) {
+			for (Field field : fields) {
+				field.setRepeat(true);
+				field.setOneof(null);
+			}
+		} else if (fields.size() > 1 && isChoiceOfElements(modelGroup) && fields.stream().noneMatch(Field::isRepeat)) {
+			String oneof = "choice" + (++choices);
+			for (Field field : fields) {
+				field.setOneof(oneof);
+				field.setRequired(false);
+			}
+		}
+		return fields;
+	}
+
+	/**
+	 * @return whether every alternative of the choice is a single element or a choice of single elements
+	 */
+	private boolean isChoiceOfElements(XSModelGroup choice) {
+		for (XSParticle child : choice.getChildren()) {
+			if (child.isRepeated()) {
+				return false;
+			}
+			if (child.getTerm().asElementDecl() != null) {
+				continue;
+			}
+			XSModelGroup group = child.getTerm().asModelGroup() != null ? child.getTerm().asModelGroup()
+					: child.getTerm().asModelGroupDecl() != null ? child.getTerm().asModelGroupDecl().getModelGroup() : null;
+			if (group == null || group.getCompositor() != XSModelGroup.Compositor.CHOICE || !isChoiceOfElements(group)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
 	private void interpretElement(XSElementDecl el, XSSchemaSet sset) {
 		XSComplexType cType;
 		XSSimpleType xs;
 
 		if (el.getType() instanceof XSComplexType && el.getType() != sset.getAnyType()) {
 			cType = (XSComplexType) el.getType();
-			processComplexType(cType, el.getName(), sset);
+			elementTypes.add(processComplexType(cType, el.getName(), sset));
 		} else if (el.getType() instanceof XSSimpleType && el.getType() != sset.getAnySimpleType()) {
 			xs = el.getType().asSimpleType();
 			processSimpleType(xs, el.getName());
@@ -528,24 +1464,62 @@ public class XSDParser implements ErrorHandler {
 		}
 
 		if (xs.isRestriction() && xs.getFacet("enumeration") != null) {
-			createEnum(typeName, namespace, xs.asRestriction());
+			typeName = createEnum(typeName, namespace, xs.asRestriction());
 		} else {
 			// This is just a restriction on a basic type, find parent and map
 			// it to the type
+			XSSimpleType restriction = xs;
 			String baseTypeName = typeName;
-			while (xs != null && !basicTypes.contains(baseTypeName)) {
+			while (xs != null && !BASIC_TYPES.contains(baseTypeName)) {
 				xs = xs.getBaseType().asSimpleType();
 				if (xs != null) {
 					baseTypeName = xs.getName();
 				}
 			}
 			simpleTypes.put(typeName, xs != null ? xs.getName() : "string");
-			String doc = resolveDocumentationAnnotation(xs);
+			if (rangeIntegerTypes && xs != null && IntegerRange.of(restriction, xs.getName()) != null) {
+				integerRanges.put(typeName, IntegerRange.of(restriction, xs.getName()));
+			}
+			if (fixedPointDecimals && xs != null && "decimal".equals(xs.getName())) {
+				Integer scale = IntegerRange.fractionDigits(restriction);
+				IntegerRange range = scale != null ? IntegerRange.of(restriction, "decimal", scale) : null;
+				// Scaled values that may not fit in 64 bits keep the decimal mapping
+				if (scale != null && scale <= MAX_DECIMAL_SCALE && (range == null || range.isWithinLong())) {
+					decimalScales.put(typeName, scale);
+					if (range != null) {
+						integerRanges.put(typeName, range);
+					}
+				}
+			}
+			String doc = resolveDocumentationAnnotation(restriction);
 			addDocumentation(typeName, doc);
 		}
 		return typeName;
 	}
 
+	/**
+	 * @return the name of the item type if lists are written as repeated fields and the type is a list or a restriction of one, otherwise null. The item type
+	 *         is interpreted like any other simple type.
+	 */
+	private String listItemType(XSSimpleType type) {
+		if (!listsAsRepeated) {
+			return null;
+		}
+		XSSimpleType list = type;
+		while (list != null && !list.isList()) {
+			XSType base = list.getBaseType();
+			list = base != null && base != list ? base.asSimpleType() : null;
+		}
+		if (list == null) {
+			return null;
+		}
+		XSSimpleType itemType = list.asList().getItemType();
+		if (itemType.getName() != null && BASIC_TYPES.contains(itemType.getName()) && itemType.getTargetNamespace().endsWith("/XMLSchema")) {
+			return itemType.getName();
+		}
+		return processSimpleType(itemType, null);
+	}
+
 	private void addDocumentation(String typeName, String doc) {
 		if (doc != null) {
 			documentation.put(typeName, doc);
@@ -571,31 +1545,36 @@ public class XSDParser implements ErrorHandler {
 
 		if (typeName == null) {
 			typeName = elementName != null ? elementName + "Type" : generateAnonymousName();
+			siteNamedTypes.add(typeName);
 		}
 		String doc = resolveDocumentationAnnotation(cType);
 
 		st = map.get(typeName);
-		if (st == null && !basicTypes.contains(typeName)) {
+		if (st == null && !BASIC_TYPES.contains(typeName) && !releasedMessages.contains(typeName)) {
 
 			st = new Message(typeName, NamespaceConverter.convertFromSchema(nameSpace));
 			st.setDoc(doc);
 
 			map.put(typeName, st);
-			if (cType.asComplexType() != null) {
-				processComplexType(cType, elementName, sset);
-			} else if (cType.getContentType() != null) {
-				if (cType.getContentType().asParticle() != null) {
-					XSParticle particle = cType.getContentType().asParticle();
+			boolean composed = isComposed(cType, sset);
+			// A composed type only declares the content and attributes it adds to its base type
+			XSContentType content = composed ? cType.getExplicitContent() : cType.getContentType();
+			if (content != null) {
+				if (content.asParticle() != null) {
+					XSParticle particle = content.asParticle();
 					if (particle.getTerm() != null && particle.getTerm().asModelGroup() != null) {
-						List<Field> fields = processModelGroup(particle.getTerm().asModelGroup(), sset);
+						List<Field> fields = processGroupParticle(particle.getTerm().asModelGroup(), particle.isRepeated(), sset);
 						st.addFields(fields, xsdMapping);
 					} else if (particle.getTerm() != null && particle.getTerm().asModelGroupDecl() != null) {
-						List<Field> fields = processModelGroup(particle.getTerm().asModelGroupDecl().getModelGroup(), sset);
+						List<Field> fields = processGroupParticle(particle.getTerm().asModelGroupDecl().getModelGroup(), particle.isRepeated(), sset);
 						st.addFields(fields, xsdMapping);
 					}
-				} else if (cType.getContentType().asSimpleType() != null) {
-					XSSimpleType xsSimpleType = cType.getContentType().asSimpleType();
-					if (basicTypes.contains(xsSimpleType.getName())) {
+				} else if (content.asSimpleType() != null) {
+					XSSimpleType xsSimpleType = content.asSimpleType();
+					String itemType = listItemType(xsSimpleType);
+					if (itemType != null) {
+						st.addField(itemType, itemType, true, true, null, resolveDocumentationAnnotation(cType), xsdMapping);
+					} else if (BASIC_TYPES.contains(xsSimpleType.getName())) {
 						st.addField(xsSimpleType.getName(), xsSimpleType.getName(), true, false, null, resolveDocumentationAnnotation(cType), xsdMapping);
 					} else {
 						XSSimpleType primitiveType = xsSimpleType.getPrimitiveType();
@@ -609,25 +1588,42 @@ public class XSDParser implements ErrorHandler {
 			}
 
 			if (cType.getAttributeUses() != null) {
-				Collection attributes = cType.getAttributeUses();
+				Collection attributes = composed ? cType.getDeclaredAttributeUses() : cType.getAttributeUses();
 				Iterator<XSAttributeUse> iterator = attributes.iterator();
 				while (iterator.hasNext()) {
 					XSAttributeUse attr = iterator.next();
 					XSAttributeDecl decl = attr.getDecl();
 
-					if (decl.getType().getPrimitiveType() != null) {
+					String itemType = listItemType(decl.getType());
+					if (itemType != null) {
+						st.addField(decl.getName(), itemType, false, true, null, null, xsdMapping);
+					} else {
 						String fieldName = decl.getName();
 
 						if (decl.getType().isRestriction() && decl.getType().getFacet("enumeration") != null) {
 							st.addField(fieldName, createEnum(fieldName, decl.getTargetNamespace(), decl.getType().asRestriction()), false, false, null, null,
 									xsdMapping);
+						} else if (decl.getType().getName() != null && BASIC_TYPES.contains(decl.getType().getName())) {
+							// Resolved like element types, so restrictions keep their base type and facets
+							st.addField(fieldName, decl.getType().getName(), false, false, null, null, xsdMapping);
 						} else {
-							st.addField(fieldName, decl.getType().getPrimitiveType().getName(), false, false, null, null, xsdMapping);
+							st.addField(fieldName, processSimpleType(decl.getType(), null), false, false, null, null, xsdMapping);
 						}
 					}
 				}
 			}
-			parent = cType;
+			if (composed) {
+				String baseName = processComplexType(cType.getBaseType().asComplexType(), null, sset);
+				int ownFields = st.getFields().size();
+				String fieldName = "base";
+				while (hasField(st, fieldName)) {
+					fieldName = "_" + fieldName;
+				}
+				st.addField(fieldName, cType.getBaseType().getTargetNamespace(), baseName, false, false, null, null, xsdMapping);
+				compositionFields.put(typeName + "." + fieldName, baseName);
+				copiedFieldCounts.put(typeName, ownFields + copiedFieldCount(baseName));
+			}
+			parent = composed ? sset.getAnyType() : cType;
 			while (parent != sset.getAnyType()) {
 				if (parent.isComplexType()) {
 					Message parentMessage = null;
@@ -650,10 +1646,61 @@ public class XSDParser implements ErrorHandler {
 			}
 
 			st.setParent(cType.getBaseType().getName());
+
+			if (flattenSimpleContent && cType.getContentType() != null && cType.getContentType().asSimpleType() != null && cType.getAttributeUses().isEmpty()
+					&& st.getFields().size() == 1 && !st.getFields().get(0).isRepeat()) {
+				simpleContentWrappers.put(typeName, st.getFields().get(0).getType());
+			}
+			if (collapseListWrappers && !streaming && cType.getContentType() != null && cType.getContentType().asParticle() != null
+					&& cType.getAttributeUses().isEmpty() && st.getFields().size() == 1 && st.getFields().get(0).isRepeat()) {
+				listWrappers.put(typeName, st.getFields().get(0));
+			}
 		}
 		return typeName;
 	}
 
+	/**
+	 * @return whether the type extends a complex content type of a hierarchy written by composition, so it embeds its base type instead of copying its fields
+	 */
+	private boolean isComposed(XSComplexType cType, XSSchemaSet sset) {
+		XSType base = cType.getBaseType();
+		if (compositionBases.isEmpty() || base == null || base == sset.getAnyType() || !base.isComplexType() || base.getName() == null
+				|| cType.getDerivationMethod() != XSType.EXTENSION || base.asComplexType().getContentType().asSimpleType() != null) {
+			return false;
+		}
+		for (XSType ancestor = base; ancestor != null && ancestor != sset.getAnyType(); ancestor = ancestor.getBaseType()) {
+			if (compositionBases.contains("*") || compositionBases.contains(ancestor.getName())) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean hasField(Message message, String name) {
+		return message.getFields().stream().anyMatch(field -> field.getName().equals(name));
+	}
+
+	private int copiedFieldCount(String messageName) {
+		if (copiedFieldCounts.containsKey(messageName)) {
+			return copiedFieldCounts.get(messageName);
+		}
+		return map.containsKey(messageName) ? map.get(messageName).getFields().size() : 0;
+	}
+
+	/**
+	 * @return the number of field declarations written for all messages, and the number written if all derived messages copied the fields of their base types
+	 */
+	public int[] getFieldDeclarationCounts() {
+		int written = 0, copied = 0;
+		for (Message message : map.values()) {
+			if (!isFlattened(message)) {
+				written += message.getFields().size();
+				copied += copiedFieldCount(message.getName());
+			}
+		}
+		return new int[] { written, copied };
+	}
+
 	private String resolveDocumentationAnnotation(XSComponent xsComponent) {
 		String doc = null;
 		if (xsComponent.getAnnotation() != null && xsComponent.getAnnotation().getAnnotation() != null) {
@@ -692,6 +1739,11 @@ public class XSDParser implements ErrorHandler {
 		Enumeration en;
 		Iterator<? extends XSFacet> it;
 
+		String enumName = type.getName() == null ? typeName + "Type" : typeName;
+		if (releasedEnums.contains(enumName)) {
+			return enumName;
+		}
+
 		if (!enums.containsKey(typeName)) {
 			type = type.asRestriction();
 
@@ -708,6 +1760,9 @@ public class XSDParser implements ErrorHandler {
 			en.setDoc(doc);
 
 			enums.put(typeName, en);
+			if (!typeName.equals(type.getName())) {
+				siteNamedTypes.add(typeName);
+			}
 		}
 		return typeName;
 	}
@@ -730,10 +1785,178 @@ public class XSDParser implements ErrorHandler {
 		exception.printStackTrace();
 	}
 
-	public void addMarshaller(ProtobufMarshaller marshaller) {
+	public void addMarshaller(IMarshaller marshaller) {
 		this.marshaller = marshaller;
 	}
 
+	/**
+	 * Adds a further output target. Each target needs its own marshaller and writer instance, set up with the same type and name mappings as the main
+	 * marshaller.
+	 */
+	public void addTarget(IMarshaller marshaller, OutputWriter writer) {
+		targetMarshallers.add(marshaller);
+		targetWriters.add(writer);
+	}
+
+	/**
+	 * Applies all settings of the options, see the setters of each of them.
+	 */
+	public void setOptions(ModelOptions options) {
+		setNestEnums(options.nestEnums);
+		setTypeInEnums(options.typeInEnums);
+		setIncludeMessageDocs(options.includeMessageDocs);
+		setIncludeFieldDocs(options.includeFieldDocs);
+		setStreaming(options.streaming);
+		setCompactFieldNumbers(options.compactFieldNumbers);
+		setHotFields(options.hotFields != null ? new TreeSet<>(options.hotFields) : Collections.<String>emptySet());
+		setRangeIntegerTypes(options.rangeIntegerTypes);
+		setFixedPointDecimals(options.fixedPointDecimals);
+		setListsAsRepeated(options.listsAsRepeated);
+		setFlattenSimpleContent(options.flattenSimpleContent);
+		setCollapseListWrappers(options.collapseListWrappers);
+		setChoiceAsOneof(options.choiceAsOneof);
+		setDeduplicateTypes(options.deduplicateTypes);
+		setHoistSharedEnums(options.hoistSharedEnums);
+		setLazyFields(options.lazyFields != null ? options.lazyFields : Collections.<String>emptyList());
+		setLazySubtreeSize(options.lazySubtreeSize);
+		setKeyValueMaps(options.keyValueMaps);
+		setCompositionBases(options.compositionBases != null ? new TreeSet<>(options.compositionBases) : Collections.<String>emptySet());
+	}
+
+	/**
+	 * Renders only the index-th of count contiguous, equally sized slices of the enums and messages in output order. The whole schema set is still parsed and
+	 * interpreted. Not supported in streaming mode.
+	 */
+	public void setShard(int index, int count) {
+		this.shardIndex = index;
+		this.shardCount = count;
+	}
+
+	/**
+	 * Numbers hot, required and scalar fields before other fields instead of numbering all fields by name, see {@link #setHotFields(Set)}. Changing this
+	 * setting renumbers existing fields, so it breaks wire compatibility with earlier output.
+	 */
+	public void setCompactFieldNumbers(boolean compactFieldNumbers) {
+		this.compactFieldNumbers = compactFieldNumbers;
+	}
+
+	/**
+	 * @param hotFields names of frequently used fields, either plain or qualified with their message name as in {@code message.field}
+	 */
+	public void setHotFields(Set<String> hotFields) {
+		this.hotFields = hotFields;
+	}
+
+	/**
+	 * Picks the output type of integer fields restricted by range or digit facets from their range instead of their base type, see
+	 * {@link IMarshaller#getIntegerTypeMapping(java.math.BigInteger, java.math.BigInteger)}.
+	 */
+	public void setRangeIntegerTypes(boolean rangeIntegerTypes) {
+		this.rangeIntegerTypes = rangeIntegerTypes;
+	}
+
+	/**
+	 * Writes decimal fields with a fractionDigits facet as integers holding the value times 10^fractionDigits instead of floating point. The integer type is
+	 * picked from the range and totalDigits facets, or is a signed 64 bit type if they leave the range open, and the scale is noted in the field comment.
+	 */
+	public void setFixedPointDecimals(boolean fixedPointDecimals) {
+		this.fixedPointDecimals = fixedPointDecimals;
+	}
+
+	/**
+	 * Writes fields of xs:list types, such as NMTOKENS, as repeated fields of the item type instead of a single string. Fields that are repeated themselves
+	 * stay strings.
+	 */
+	public void setListsAsRepeated(boolean listsAsRepeated) {
+		this.listsAsRepeated = listsAsRepeated;
+	}
+
+	/**
+	 * Replaces every reference to a message that only wraps a single value, that is a complex type with simple content and no attributes, by the value itself.
+	 * Wrappers that are the type of a global element are still written, all others are dropped.
+	 */
+	public void setFlattenSimpleContent(boolean flattenSimpleContent) {
+		this.flattenSimpleContent = flattenSimpleContent;
+	}
+
+	/**
+	 * Writes fields whose type only holds one repeated element, such as {@code <stops><stop/><stop/></stops>}, as a repeated field of the element type. The
+	 * container message is dropped unless it is the type of a global element. Not supported in streaming mode, where not all references are known in time.
+	 */
+	public void setCollapseListWrappers(boolean collapseListWrappers) {
+		this.collapseListWrappers = collapseListWrappers;
+	}
+
+	/**
+	 * Writes the alternatives of an xs:choice of single elements as the members of a oneof, so at most one of them is set. Repeated choices and choices with
+	 * sequences as alternatives are still written as independent fields.
+	 */
+	public void setChoiceAsOneof(boolean choiceAsOneof) {
+		this.choiceAsOneof = choiceAsOneof;
+	}
+
+	/**
+	 * Merges messages and enums that are written the same, apart from their name, into one definition. Anonymous types and the enums of attributes are named
+	 * after the element or attribute they are declared at, so identical ones are otherwise written once per declaration. Not supported in streaming mode.
+	 */
+	public void setDeduplicateTypes(boolean deduplicateTypes) {
+		this.deduplicateTypes = deduplicateTypes;
+	}
+
+	/**
+	 * When nesting enums, nests each enum only in the one message that refers to it. Enums referred to by several messages are written once at the top level
+	 * instead of in each of them.
+	 */
+	public void setHoistSharedEnums(boolean hoistSharedEnums) {
+		this.hoistSharedEnums = hoistSharedEnums;
+	}
+
+	/**
+	 * Marks message fields whose name matches one of the patterns to be parsed lazily, so consumers only decode them when they are accessed.
+	 * 
+	 * @param lazyFields regular expressions matched against the plain field name and against the field name qualified as {@code message.field}
+	 */
+	public void setLazyFields(List<String> lazyFields) {
+		this.lazyFields = new ArrayList<>();
+		for (String lazyField : lazyFields) {
+			this.lazyFields.add(Pattern.compile(lazyField));
+		}
+	}
+
+	/**
+	 * Marks message fields to be parsed lazily if their message and the messages reachable from it have at least this many fields in total, counting each
+	 * message once. Zero, the default, disables the heuristic.
+	 */
+	public void setLazySubtreeSize(int lazySubtreeSize) {
+		this.lazySubtreeSize = lazySubtreeSize;
+	}
+
+	/**
+	 * Writes repeated fields of messages that only hold a key and a value as maps from the key to the value. The order of the elements and elements with
+	 * duplicate keys are not kept. Not supported in streaming mode.
+	 */
+	public void setKeyValueMaps(boolean keyValueMaps) {
+		this.keyValueMaps = keyValueMaps;
+	}
+
+	/**
+	 * Writes the hierarchies of the given base types by composition. A type that extends a type of such a hierarchy holds its base type in a field named base
+	 * instead of a copy of all inherited fields, so the inherited fields are declared once, in the message of the type that declares them.
+	 * 
+	 * @param compositionBases names of the base types whose descendants embed their base type, or * for all hierarchies
+	 */
+	public void setCompositionBases(Set<String> compositionBases) {
+		this.compositionBases = compositionBases;
+	}
+
+	public void setStreaming(boolean streaming) {
+		this.streaming = streaming;
+	}
+
+	private boolean isWritingNestedEnums() {
+		return isNestEnums() && marshaller.isNestedEnums() && !streaming;
+	}
+
 	public void setNestEnums(boolean nestEnums) {
 		this.nestEnums = nestEnums;
 	}
@@ -0,0 +1,95 @@
+package com.github.tranchis.xsd2thrift.cache;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A minimal server for the protocol of {@link HttpOutputCache}, storing entries in a {@link DirectoryOutputCache}. Meant as a local stand-in for a shared cache
+ * service.
+ *
+ * Usage: {@code java -cp xsd2proto-<VERSION>.jar com.github.tranchis.xsd2thrift.cache.CacheServer PORT DIRECTORY}
+ */
+public class CacheServer {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(CacheServer.class);
+
+	private final HttpServer server;
+	private final ExecutorService executor;
+	private final DirectoryOutputCache store;
+
+	/**
+	 * @param port the port to listen on, or 0 for any free port
+	 */
+	public CacheServer(int port, DirectoryOutputCache store) throws IOException {
+		this.store = store;
+		server = HttpServer.create(new InetSocketAddress(port), 0);
+		executor = Executors.newCachedThreadPool();
+		server.setExecutor(executor);
+		server.createContext("/", this::handle);
+	}
+
+	public void start() {
+		server.start();
+	}
+
+	public void stop() {
+		server.stop(0);
+		executor.shutdown();
+	}
+
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		try {
+			String key = exchange.getRequestURI().getPath().substring(1);
+			// The connection is only kept alive for the next request if the request body has been read completely
+			byte[] body = OutputArchive.readAll(exchange.getRequestBody());
+			if ("GET".equals(exchange.getRequestMethod())) {
+				byte[] archive = store.getArchive(key);
+				if (archive == null) {
+					exchange.sendResponseHeaders(404, -1);
+				} else {
+					exchange.getResponseHeaders().set("Content-Type", "application/zip");
+					exchange.sendResponseHeaders(200, archive.length);
+					try (OutputStream out = exchange.getResponseBody()) {
+						out.write(archive);
+					}
+				}
+			} else if ("PUT".equals(exchange.getRequestMethod())) {
+				store.putArchive(key, body);
+				exchange.sendResponseHeaders(204, -1);
+			} else {
+				exchange.sendResponseHeaders(405, -1);
+			}
+		} catch (IllegalArgumentException e) {
+			exchange.sendResponseHeaders(400, -1);
+		} catch (IOException e) {
+			LOGGER.error("Error handling " + exchange.getRequestMethod() + " " + exchange.getRequestURI(), e);
+			exchange.sendResponseHeaders(500, -1);
+		} finally {
+			exchange.close();
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length != 2) {
+			LOGGER.info("Usage: java -cp xsd2proto-<VERSION>.jar " + CacheServer.class.getName() + " PORT DIRECTORY");
+			return;
+		}
+		CacheServer server = new CacheServer(Integer.parseInt(args[0]), new DirectoryOutputCache(Paths.get(args[1])));
+		server.start();
+		LOGGER.info("Serving output cache from {} on port {}", args[1], server.getPort());
+	}
+}
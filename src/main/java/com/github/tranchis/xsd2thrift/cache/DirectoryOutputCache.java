@@ -0,0 +1,60 @@
+package com.github.tranchis.xsd2thrift.cache;
+
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+
+/**
+ * Keeps cache entries as archives in a directory, which may be shared by several machines. Entries are written to a temporary file and moved into place, so
+ * readers never see a partial entry and concurrent writers of the same key do not interfere.
+ */
+public class DirectoryOutputCache implements OutputCache {
+
+	private final Path directory;
+
+	public DirectoryOutputCache(Path directory) {
+		this.directory = directory;
+	}
+
+	public Map<String, byte[]> get(String key) throws IOException {
+		byte[] archive = getArchive(key);
+		return archive == null ? null : OutputArchive.read(archive);
+	}
+
+	public void put(String key, Map<String, byte[]> files) throws IOException {
+		putArchive(key, OutputArchive.write(files));
+	}
+
+	byte[] getArchive(String key) throws IOException {
+		try {
+			return Files.readAllBytes(entry(key));
+		} catch (NoSuchFileException e) {
+			return null;
+		}
+	}
+
+	void putArchive(String key, byte[] archive) throws IOException {
+		Path entry = entry(key);
+		Files.createDirectories(entry.getParent());
+		Path temp = Files.createTempFile(entry.getParent(), key, ".tmp");
+		try {
+			Files.write(temp, archive);
+			try {
+				Files.move(temp, entry, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temp, entry, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	private Path entry(String key) {
+		OutputArchive.checkKey(key);
+		return directory.resolve(key.substring(0, 2)).resolve(key + ".zip");
+	}
+}
@@ -0,0 +1,70 @@
+package com.github.tranchis.xsd2thrift.cache;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Map;
+
+/**
+ * A cache served over HTTP, for example by {@link CacheServer}. An entry is read with {@code GET <base>/<key>}, which answers 200 with the archive or 404, and
+ * written with {@code PUT <base>/<key>}.
+ */
+public class HttpOutputCache implements OutputCache {
+
+	private static final int CONNECT_TIMEOUT = 5000;
+	private static final int READ_TIMEOUT = 30000;
+
+	private final String baseUrl;
+
+	public HttpOutputCache(String baseUrl) {
+		this.baseUrl = baseUrl.endsWith("/") ? baseUrl : baseUrl + "/";
+	}
+
+	public Map<String, byte[]> get(String key) throws IOException {
+		HttpURLConnection connection = open(key, "GET");
+		try {
+			int status = connection.getResponseCode();
+			if (status == HttpURLConnection.HTTP_NOT_FOUND) {
+				return null;
+			}
+			if (status != HttpURLConnection.HTTP_OK) {
+				throw new IOException("Unexpected response " + status + " reading " + connection.getURL());
+			}
+			try (InputStream in = connection.getInputStream()) {
+				return OutputArchive.read(OutputArchive.readAll(in));
+			}
+		} finally {
+			connection.disconnect();
+		}
+	}
+
+	public void put(String key, Map<String, byte[]> files) throws IOException {
+		byte[] archive = OutputArchive.write(files);
+		HttpURLConnection connection = open(key, "PUT");
+		try {
+			connection.setDoOutput(true);
+			connection.setFixedLengthStreamingMode(archive.length);
+			connection.setRequestProperty("Content-Type", "application/zip");
+			try (OutputStream out = connection.getOutputStream()) {
+				out.write(archive);
+			}
+			int status = connection.getResponseCode();
+			if (status / 100 != 2) {
+				throw new IOException("Unexpected response " + status + " writing " + connection.getURL());
+			}
+		} finally {
+			connection.disconnect();
+		}
+	}
+
+	private HttpURLConnection open(String key, String method) throws IOException {
+		OutputArchive.checkKey(key);
+		HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + key).openConnection();
+		connection.setRequestMethod(method);
+		connection.setConnectTimeout(CONNECT_TIMEOUT);
+		connection.setReadTimeout(READ_TIMEOUT);
+		return connection;
+	}
+}
@@ -0,0 +1,65 @@
+package com.github.tranchis.xsd2thrift.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * The stored form of a cache entry: a zip archive with one entry per generated file, in path order.
+ */
+public class OutputArchive {
+
+	private static final Pattern KEY = Pattern.compile("^[0-9a-f]{64}$");
+
+	public static byte[] write(Map<String, byte[]> files) throws IOException {
+		ByteArrayOutputStream archive = new ByteArrayOutputStream();
+		try (ZipOutputStream zip = new ZipOutputStream(archive)) {
+			for (Entry<String, byte[]> file : new TreeMap<>(files).entrySet()) {
+				ZipEntry entry = new ZipEntry(file.getKey());
+				entry.setTime(0);
+				zip.putNextEntry(entry);
+				zip.write(file.getValue());
+				zip.closeEntry();
+			}
+		}
+		return archive.toByteArray();
+	}
+
+	public static Map<String, byte[]> read(byte[] archive) throws IOException {
+		Map<String, byte[]> files = new TreeMap<>();
+		try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(archive))) {
+			ZipEntry entry;
+			while ((entry = zip.getNextEntry()) != null) {
+				files.put(entry.getName(), readAll(zip));
+			}
+		}
+		return files;
+	}
+
+	static byte[] readAll(InputStream in) throws IOException {
+		ByteArrayOutputStream content = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int read;
+		while ((read = in.read(buffer)) != -1) {
+			content.write(buffer, 0, read);
+		}
+		return content.toByteArray();
+	}
+
+	/**
+	 * Rejects anything but a hex encoded SHA-256 digest, so keys can be used as file names and URL paths.
+	 */
+	static void checkKey(String key) {
+		if (key == null || !KEY.matcher(key).matches()) {
+			throw new IllegalArgumentException("Invalid cache key " + key);
+		}
+	}
+}
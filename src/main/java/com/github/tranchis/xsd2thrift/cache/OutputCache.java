@@ -0,0 +1,18 @@
+package com.github.tranchis.xsd2thrift.cache;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Stores the generated files of conversions by cache key. Keys are hex encoded SHA-256 digests of everything that determines the output, so an entry never
+ * changes once written and concurrent writers of the same key always write the same content.
+ */
+public interface OutputCache {
+
+	/**
+	 * @return the generated files by path, or null if the key is not cached
+	 */
+	Map<String, byte[]> get(String key) throws IOException;
+
+	void put(String key, Map<String, byte[]> files) throws IOException;
+}
@@ -0,0 +1,213 @@
+package com.github.tranchis.xsd2thrift.marshal;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * An ordered list of pattern to replacement mappings, compiled for fast lookup. The first pattern that matches a name decides the result, exactly like trying
+ * each pattern in order with {@link Matcher#find()} and {@link Matcher#replaceAll(String)}.
+ *
+ * Patterns that are plain literals avoid the regex engine: {@code ^name$} is looked up in a hash map, {@code ^prefix} is a prefix check and an unanchored
+ * literal is a substring replacement. Results are memoized per name, keeping the most recently used names up to a fixed number so that instances shared by many
+ * conversions do not grow without end. Instances are safe for concurrent use, and conversions count their lookups in their own {@link Statistics}.
+ */
+public class CompiledMappings {
+
+	private static final String NO_MAPPING = new String("<no mapping>");
+	/** Names memoized by default, far more than the type and element names of large schemas */
+	public static final int DEFAULT_MEMO_SIZE = 10000;
+
+	private enum Kind {
+		EXACT,
+		PREFIX,
+		CONTAINS,
+		REGEX
+	}
+
+	private final List<Rule> rules = new ArrayList<>();
+	private final Map<String, Integer> exactRules = new HashMap<>();
+	private final List<Rule> scannedRules = new ArrayList<>();
+	private final Map<String, String> memo;
+	/** Counts lookups that nobody reports */
+	private final Statistics uncounted = new Statistics();
+
+	/**
+	 * @param mappings patterns and replacements in precedence order
+	 */
+	public CompiledMappings(Map<Pattern, String> mappings) {
+		this(mappings, DEFAULT_MEMO_SIZE);
+	}
+
+	/**
+	 * @param mappings patterns and replacements in precedence order
+	 * @param memoSize the number of names whose results are kept, least recently used first out
+	 */
+	public CompiledMappings(Map<Pattern, String> mappings, final int memoSize) {
+		memo = Collections.synchronizedMap(new LinkedHashMap<String, String>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Entry<String, String> eldest) {
+				return size() > memoSize;
+			}
+		});
+		for (Entry<Pattern, String> mapping : mappings.entrySet()) {
+			Rule rule = new Rule(rules.size(), mapping.getKey(), mapping.getValue());
+			rules.add(rule);
+			if (rule.kind == Kind.EXACT) {
+				exactRules.putIfAbsent(rule.literal, rule.index);
+			} else {
+				scannedRules.add(rule);
+			}
+		}
+	}
+
+	/**
+	 * @return the mapped name, or null if no pattern matches
+	 */
+	public String map(String name) {
+		return map(name, uncounted);
+	}
+
+	/**
+	 * @param statistics counts the lookup and how it was resolved
+	 * @return the mapped name, or null if no pattern matches
+	 */
+	public String map(String name, Statistics statistics) {
+		statistics.lookups.increment();
+		String result = memo.get(name);
+		if (result != null) {
+			statistics.memoHits.increment();
+		} else {
+			result = compute(name, statistics);
+			memo.put(name, result);
+		}
+		return result == NO_MAPPING ? null : result;
+	}
+
+	private String compute(String name, Statistics statistics) {
+		Integer exact = exactRules.get(name);
+		int first = exact == null ? Integer.MAX_VALUE : exact;
+		for (Rule rule : scannedRules) {
+			if (rule.index > first) {
+				break;
+			}
+			if (rule.matches(name)) {
+				first = rule.index;
+				break;
+			}
+		}
+
+		if (first == Integer.MAX_VALUE) {
+			statistics.misses.increment();
+			return NO_MAPPING;
+		}
+
+		Rule rule = rules.get(first);
+		switch (rule.kind) {
+		case EXACT:
+			statistics.exactHits.increment();
+			break;
+		case REGEX:
+			statistics.regexHits.increment();
+			break;
+		default:
+			statistics.literalHits.increment();
+		}
+		return rule.apply(name);
+	}
+
+	/**
+	 * Lookup counts of one user of the mappings, for reporting.
+	 */
+	public static class Statistics {
+		private final LongAdder lookups = new LongAdder();
+		private final LongAdder memoHits = new LongAdder();
+		private final LongAdder exactHits = new LongAdder();
+		private final LongAdder literalHits = new LongAdder();
+		private final LongAdder regexHits = new LongAdder();
+		private final LongAdder misses = new LongAdder();
+
+		@Override
+		public String toString() {
+			return lookups.sum() + " lookups (" + memoHits.sum() + " memoized, " + exactHits.sum() + " exact, " + literalHits.sum() + " literal, "
+					+ regexHits.sum() + " regex, " + misses.sum() + " unmapped)";
+		}
+	}
+
+	private static class Rule {
+		private final int index;
+		private final Pattern pattern;
+		private final String replacement;
+		private final Kind kind;
+		private final String literal;
+
+		private Rule(int index, Pattern pattern, String replacement) {
+			this.index = index;
+			this.pattern = pattern;
+			this.replacement = replacement;
+
+			String p = pattern.pattern();
+			boolean start = p.startsWith("^");
+			boolean end = p.endsWith("$") && !p.endsWith("\\$");
+			String body = p.substring(start ? 1 : 0, p.length() - (end ? 1 : 0));
+
+			boolean literalReplacement = replacement.indexOf('$') < 0 && replacement.indexOf('\\') < 0;
+			if (pattern.flags() != 0 || !literalReplacement || !isLiteral(body) || body.isEmpty()) {
+				kind = Kind.REGEX;
+			} else if (start && end) {
+				kind = Kind.EXACT;
+			} else if (start) {
+				kind = Kind.PREFIX;
+			} else if (!end) {
+				kind = Kind.CONTAINS;
+			} else {
+				kind = Kind.REGEX;
+			}
+			literal = kind == Kind.REGEX ? null : body;
+		}
+
+		private boolean matches(String name) {
+			switch (kind) {
+			case EXACT:
+				return name.equals(literal);
+			case PREFIX:
+				return name.startsWith(literal);
+			case CONTAINS:
+				return name.contains(literal);
+			default:
+				return pattern.matcher(name).find();
+			}
+		}
+
+		private String apply(String name) {
+			switch (kind) {
+			case EXACT:
+				return replacement;
+			case PREFIX:
+				return replacement + name.substring(literal.length());
+			case CONTAINS:
+				return name.replace(literal, replacement);
+			default:
+				return pattern.matcher(name).replaceAll(replacement);
+			}
+		}
+
+		private static boolean isLiteral(String s) {
+			for (int i = 0; i < s.length(); i++) {
+				if ("\\^$.|?*+()[]{}".indexOf(s.charAt(i)) >= 0) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+}
@@ -0,0 +1,293 @@
+package com.github.tranchis.xsd2thrift.marshal;
+
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.google.common.base.CaseFormat;
+import com.google.protobuf.AnyProto;
+import com.google.protobuf.DescriptorProtos.DescriptorProto;
+import com.google.protobuf.DescriptorProtos.EnumDescriptorProto;
+import com.google.protobuf.DescriptorProtos.EnumValueDescriptorProto;
+import com.google.protobuf.DescriptorProtos.FieldDescriptorProto;
+import com.google.protobuf.DescriptorProtos.FieldOptions;
+import com.google.protobuf.DescriptorProtos.FileDescriptorProto;
+import com.google.protobuf.DescriptorProtos.FileDescriptorSet;
+import com.google.protobuf.DescriptorProtos.FileOptions;
+import com.google.protobuf.DescriptorProtos.MessageOptions;
+import com.google.protobuf.DescriptorProtos.OneofDescriptorProto;
+import com.google.protobuf.Descriptors.EnumValueDescriptor;
+import com.google.protobuf.Descriptors.FieldDescriptor;
+import com.google.protobuf.Descriptors.FileDescriptor;
+import com.google.protobuf.DurationProto;
+import com.google.protobuf.EmptyProto;
+import com.google.protobuf.FieldMaskProto;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.StructProto;
+import com.google.protobuf.TimestampProto;
+import com.google.protobuf.WrappersProto;
+
+/**
+ * Renders the interpreted model as binary {@code FileDescriptorSet}s, which runtime consumers and code generators can use without parsing .proto text. Each
+ * generated file holds a set with the file's {@code FileDescriptorProto}, preceded by the well-known types it imports.
+ *
+ * Type and name mappings, imports and options are those of {@link ProtobufMarshaller}, and the descriptors describe the same types as its output. References to
+ * generated types keep the relative names of the .proto output; they are resolved when the descriptors are built.
+ *
+ * The intermediate text holds one base64 encoded {@code FileDescriptorProto} fragment per line. Fragments are complete fields of the file descriptor, so the
+ * fragments of a file merge into its descriptor in any order.
+ */
+public class DescriptorMarshaller extends ProtobufMarshaller {
+
+	/** Well-known type files by name */
+	private static final Map<String, FileDescriptor> WELL_KNOWN_TYPES;
+	private static final Map<String, FieldDescriptorProto.Type> SCALAR_TYPES;
+
+	static {
+		Map<String, FileDescriptor> wellKnownTypes = new HashMap<>();
+		for (FileDescriptor file : new FileDescriptor[] { AnyProto.getDescriptor(), DurationProto.getDescriptor(), EmptyProto.getDescriptor(),
+				FieldMaskProto.getDescriptor(), StructProto.getDescriptor(), TimestampProto.getDescriptor(), WrappersProto.getDescriptor() }) {
+			wellKnownTypes.put(file.getName(), file);
+		}
+		WELL_KNOWN_TYPES = Collections.unmodifiableMap(wellKnownTypes);
+
+		Map<String, FieldDescriptorProto.Type> scalarTypes = new HashMap<>();
+		for (FieldDescriptorProto.Type type : FieldDescriptorProto.Type.values()) {
+			if (type != FieldDescriptorProto.Type.TYPE_GROUP && type != FieldDescriptorProto.Type.TYPE_MESSAGE && type != FieldDescriptorProto.Type.TYPE_ENUM) {
+				scalarTypes.put(type.name().substring("TYPE_".length()).toLowerCase(), type);
+			}
+		}
+		SCALAR_TYPES = Collections.unmodifiableMap(scalarTypes);
+	}
+
+	private FileOptions fileOptions;
+	private DescriptorProto.Builder message;
+	private EnumDescriptorProto.Builder enumeration;
+	/** Index of the oneof the fields being written belong to, or -1 */
+	private int oneofIndex = -1;
+
+	public DescriptorMarshaller() {
+	}
+
+	private DescriptorMarshaller(DescriptorMarshaller prototype) {
+		super(prototype);
+		fileOptions = prototype.fileOptions;
+	}
+
+	/**
+	 * @return the well-known type file imported by the name, or null
+	 */
+	public static FileDescriptor getWellKnownType(String name) {
+		return WELL_KNOWN_TYPES.get(name);
+	}
+
+	@Override
+	public IMarshaller copy() {
+		return new DescriptorMarshaller(this);
+	}
+
+	@Override
+	public boolean isBinary() {
+		return true;
+	}
+
+	@Override
+	public String writeHeader(String namespace) {
+		FileDescriptorProto.Builder file = FileDescriptorProto.newBuilder();
+		file.setSyntax("proto3");
+		if (namespace != null) {
+			file.setPackage(escapeNamespace(namespace));
+		}
+		if (fileOptions != null) {
+			file.setOptions(fileOptions);
+		}
+		return fragment(file) + "\n";
+	}
+
+	@Override
+	public String writeDocumentation(String documentation) {
+		return "";
+	}
+
+	@Override
+	public String writeInclude(String namespace) {
+		if (namespace == null || namespace.isEmpty()) {
+			return "";
+		}
+		return fragment(FileDescriptorProto.newBuilder().addDependency(namespace + ".proto"));
+	}
+
+	@Override
+	public String writeEnumHeader(String name) {
+		enumeration = EnumDescriptorProto.newBuilder().setName(name);
+		return "";
+	}
+
+	@Override
+	public String writeEnumValue(int order, String value) {
+		enumeration.addValue(EnumValueDescriptorProto.newBuilder().setName(enumValueName(value)).setNumber(order));
+		return "";
+	}
+
+	@Override
+	public String writeEnumFooter() {
+		EnumDescriptorProto enumType = enumeration.build();
+		enumeration = null;
+		if (message != null) {
+			message.addEnumType(enumType);
+			return "";
+		}
+		return fragment(FileDescriptorProto.newBuilder().addEnumType(enumType));
+	}
+
+	@Override
+	public String writeStructHeader(String name) {
+		message = DescriptorProto.newBuilder().setName(name);
+		return "";
+	}
+
+	@Override
+	public String writeStructParameter(int order, boolean required, boolean repeated, String name, String type, String fieldDocumentation,
+			boolean splitByNamespace) {
+		return writeStructParameter(order, required, repeated, name, type, fieldDocumentation, splitByNamespace, false);
+	}
+
+	@Override
+	public String writeStructParameter(int order, boolean required, boolean repeated, String name, String type, String fieldDocumentation,
+			boolean splitByNamespace, boolean lazy) {
+		FieldDescriptorProto.Builder field = field(CaseFormat.UPPER_CAMEL.to(CaseFormat.LOWER_UNDERSCORE, name), order, repeated, type, splitByNamespace);
+		if (oneofIndex >= 0) {
+			field.setOneofIndex(oneofIndex);
+		}
+		if (lazy) {
+			field.setOptions(FieldOptions.newBuilder().setLazy(true));
+		}
+
+		message.addField(field);
+		return "";
+	}
+
+	/**
+	 * Writes the map as protoc does, as a repeated field of a nested entry message with the map_entry option.
+	 */
+	@Override
+	public String writeMapParameter(int order, String name, String keyType, String valueType, String entryType, String fieldDocumentation,
+			boolean splitByNamespace) {
+		String fieldName = CaseFormat.UPPER_CAMEL.to(CaseFormat.LOWER_UNDERSCORE, name);
+		String entryName = CaseFormat.LOWER_UNDERSCORE.to(CaseFormat.UPPER_CAMEL, fieldName) + "Entry";
+		DescriptorProto.Builder entry = DescriptorProto.newBuilder().setName(entryName).setOptions(MessageOptions.newBuilder().setMapEntry(true));
+		entry.addField(field("key", 1, false, keyType, splitByNamespace));
+		entry.addField(field("value", 2, false, valueType, splitByNamespace));
+		message.addNestedType(entry);
+		message.addField(FieldDescriptorProto.newBuilder()
+				.setName(fieldName)
+				.setNumber(order)
+				.setLabel(FieldDescriptorProto.Label.LABEL_REPEATED)
+				.setType(FieldDescriptorProto.Type.TYPE_MESSAGE)
+				.setTypeName(entryName));
+		return "";
+	}
+
+	private FieldDescriptorProto.Builder field(String name, int order, boolean repeated, String type, boolean splitByNamespace) {
+		FieldDescriptorProto.Builder field = FieldDescriptorProto.newBuilder();
+		field.setName(name);
+		field.setNumber(order);
+		field.setLabel(repeated ? FieldDescriptorProto.Label.LABEL_REPEATED : FieldDescriptorProto.Label.LABEL_OPTIONAL);
+
+		String convertedType = convertType(type, splitByNamespace);
+		FieldDescriptorProto.Type scalarType = SCALAR_TYPES.get(convertedType);
+		if (scalarType != null) {
+			field.setType(scalarType);
+		} else {
+			// Message or enum, decided when the descriptor is built
+			field.setTypeName(convertedType);
+		}
+		return field;
+	}
+
+	@Override
+	public String writeOneofHeader(String name) {
+		oneofIndex = message.getOneofDeclCount();
+		message.addOneofDecl(OneofDescriptorProto.newBuilder().setName(name));
+		return "";
+	}
+
+	@Override
+	public String writeOneofFooter() {
+		oneofIndex = -1;
+		return "";
+	}
+
+	@Override
+	public String writeStructFooter() {
+		DescriptorProto messageType = message.build();
+		message = null;
+		return fragment(FileDescriptorProto.newBuilder().addMessageType(messageType));
+	}
+
+	@Override
+	public void setOptions(Map<String, Object> options) {
+		super.setOptions(options);
+		fileOptions = options != null ? toFileOptions(options) : null;
+	}
+
+	private static FileOptions toFileOptions(Map<String, Object> options) {
+		FileOptions.Builder fileOptions = FileOptions.newBuilder();
+		for (Map.Entry<String, Object> option : options.entrySet()) {
+			FieldDescriptor field = FileOptions.getDescriptor().findFieldByName(option.getKey());
+			if (field == null) {
+				throw new IllegalArgumentException("Unknown file option " + option.getKey());
+			}
+			String text = String.valueOf(option.getValue());
+			switch (field.getJavaType()) {
+			case BOOLEAN:
+				fileOptions.setField(field, option.getValue() instanceof Boolean ? option.getValue() : Boolean.parseBoolean(text));
+				break;
+			case STRING:
+				fileOptions.setField(field, text);
+				break;
+			case ENUM:
+				EnumValueDescriptor value = field.getEnumType().findValueByName(text);
+				if (value == null) {
+					throw new IllegalArgumentException("Invalid value " + text + " for file option " + option.getKey());
+				}
+				fileOptions.setField(field, value);
+				break;
+			default:
+				throw new IllegalArgumentException("Unsupported file option " + option.getKey());
+			}
+		}
+		return fileOptions.build();
+	}
+
+	/**
+	 * @return a {@code FileDescriptorSet} with the file and the well-known types it imports. The file is named like the .proto file other files import it by.
+	 */
+	@Override
+	public byte[] encodeFile(String fileName, String content) {
+		FileDescriptorProto.Builder file = FileDescriptorProto.newBuilder();
+		file.setName((fileName.contains(".") ? fileName.substring(0, fileName.lastIndexOf('.')) : fileName) + ".proto");
+		try {
+			for (String line : content.split("\n")) {
+				if (!line.isEmpty()) {
+					file.mergeFrom(Base64.getDecoder().decode(line));
+				}
+			}
+		} catch (InvalidProtocolBufferException e) {
+			throw new IllegalStateException("Corrupt descriptor output", e);
+		}
+
+		FileDescriptorSet.Builder set = FileDescriptorSet.newBuilder();
+		for (String dependency : file.getDependencyList()) {
+			if (WELL_KNOWN_TYPES.containsKey(dependency)) {
+				set.addFile(WELL_KNOWN_TYPES.get(dependency).toProto());
+			}
+		}
+		return set.addFile(file).build().toByteArray();
+	}
+
+	private static String fragment(FileDescriptorProto.Builder file) {
+		return Base64.getEncoder().encodeToString(file.build().toByteArray()) + "\n";
+	}
+}
@@ -0,0 +1,135 @@
+package com.github.tranchis.xsd2thrift.marshal;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Renders the interpreted model in an output format. The parser calls the write methods in output order and writes the returned text to the
+ * {@link com.github.tranchis.xsd2thrift.OutputWriter} of the marshaller's target.
+ */
+public interface IMarshaller {
+
+	String writeHeader(String namespace);
+
+	/**
+	 * @return the documentation of the message or enum that follows
+	 */
+	String writeDocumentation(String documentation);
+
+	String writeInclude(String namespace);
+
+	String writeEnumHeader(String name);
+
+	String writeEnumValue(int order, String value);
+
+	String writeEnumFooter();
+
+	String writeStructHeader(String name);
+
+	String writeStructParameter(int order, boolean required, boolean repeated, String name, String type, String fieldDocumentation, boolean splitByNamespace);
+
+	/**
+	 * @param lazy whether the field holds a message that consumers should only decode when it is accessed. Formats without lazy parsing ignore it.
+	 */
+	default String writeStructParameter(int order, boolean required, boolean repeated, String name, String type, String fieldDocumentation,
+			boolean splitByNamespace, boolean lazy) {
+		return writeStructParameter(order, required, repeated, name, type, fieldDocumentation, splitByNamespace);
+	}
+
+	String writeStructFooter();
+
+	/**
+	 * Writes a field that maps keys to values. Formats without maps write a repeated field of the entry type instead.
+	 * 
+	 * @param entryType the type of the entries of the map as a list, holding a key and a value
+	 */
+	default String writeMapParameter(int order, String name, String keyType, String valueType, String entryType, String fieldDocumentation,
+			boolean splitByNamespace) {
+		return writeStructParameter(order, false, true, name, entryType, fieldDocumentation, splitByNamespace);
+	}
+
+	/**
+	 * Starts a oneof within the current struct. The fields written until {@link #writeOneofFooter()} are its members. Formats without oneofs write them as
+	 * plain fields.
+	 */
+	default String writeOneofHeader(String name) {
+		return "";
+	}
+
+	default String writeOneofFooter() {
+		return "";
+	}
+
+	/**
+	 * @return the output type for a schema type, or null if the type is not mapped
+	 */
+	String getTypeMapping(String type);
+
+	/**
+	 * @param min smallest value of the field, or null if unbounded
+	 * @param max largest value of the field, or null if unbounded
+	 * @return the output type best suited to an integer field restricted to the range, or null to use the type mapping of its base type
+	 */
+	default String getIntegerTypeMapping(BigInteger min, BigInteger max) {
+		return null;
+	}
+
+	/**
+	 * @return the output type for a decimal written as a scaled integer whose range is not known, or null to use the type mapping of long
+	 */
+	default String getScaledDecimalTypeMapping() {
+		return null;
+	}
+
+	/**
+	 * @return the output name for a schema name, or null if the name is not mapped
+	 */
+	String getNameMapping(String name);
+
+	String getMappingStatistics();
+
+	/**
+	 * @return the import path of a fully qualified output type that is defined outside the generated files, or null
+	 */
+	String getImport(String fullTypeName);
+
+	/**
+	 * @return import paths of all output types defined outside the generated files, keyed by fully qualified type name
+	 */
+	Map<String, String> getImports();
+
+	boolean isNestedEnums();
+
+	boolean isCircularDependencySupported();
+
+	void setCustomTypeMappings(Map<Pattern, String> customTypeMappings);
+
+	void setCustomNameMappings(Map<Pattern, String> customNameMappings);
+
+	void setOptions(Map<String, Object> options);
+
+	/**
+	 * @return a marshaller with the same mappings and options and no output state, for use in another conversion. The compiled mappings and their memoized
+	 *         results are shared, the mapping statistics start from zero.
+	 */
+	IMarshaller copy();
+
+	/**
+	 * @return whether the output is binary. The write methods of a binary marshaller return an intermediate text, which {@link #encodeFile(String)} turns into
+	 *         the content of each generated file once the file is complete.
+	 */
+	default boolean isBinary() {
+		return false;
+	}
+
+	/**
+	 * @param fileName name of the file without directory
+	 * @param content  the intermediate text of a complete file, including its imports
+	 * @return the content of the file. Only called for binary marshallers.
+	 */
+	default byte[] encodeFile(String fileName, String content) {
+		return content.getBytes(StandardCharsets.UTF_8);
+	}
+}
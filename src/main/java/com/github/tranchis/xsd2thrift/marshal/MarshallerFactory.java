@@ -0,0 +1,27 @@
+package com.github.tranchis.xsd2thrift.marshal;
+
+/**
+ * Creates marshallers by the name used for output targets in the configuration file.
+ */
+public class MarshallerFactory {
+
+	public static final String PROTOBUF = "protobuf";
+	public static final String DESCRIPTOR = "descriptor";
+
+	public static IMarshaller create(String name) {
+		if (name == null || PROTOBUF.equals(name)) {
+			return new ProtobufMarshaller();
+		}
+		if (DESCRIPTOR.equals(name)) {
+			return new DescriptorMarshaller();
+		}
+		throw new IllegalArgumentException("Unknown marshaller " + name + ", supported marshallers are: " + PROTOBUF + ", " + DESCRIPTOR);
+	}
+
+	/**
+	 * @return the default file extension of the marshaller's output
+	 */
+	public static String extension(String name) {
+		return DESCRIPTOR.equals(name) ? "pb" : "proto";
+	}
+}
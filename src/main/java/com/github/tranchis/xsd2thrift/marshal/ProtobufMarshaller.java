@@ -23,70 +23,106 @@
  */
 package com.github.tranchis.xsd2thrift.marshal;
 
-import java.util.HashMap;
+import java.math.BigInteger;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.Map.Entry;
-import java.util.regex.Matcher;
+import java.util.TreeMap;
 import java.util.regex.Pattern;
 
 import com.github.tranchis.xsd2thrift.Field;
 import com.github.tranchis.xsd2thrift.NamespaceConverter;
 import com.google.common.base.CaseFormat;
 
-public class ProtobufMarshaller {
-	private HashMap<Pattern, String> typeMapping;
-	private HashMap<Pattern, String> nameMapping;
-	private String indent = "";
-	public HashMap<String, String> imports;
-	private Map<String, Object> options;
-
-	public ProtobufMarshaller() {
-		typeMapping = new HashMap<>();
-		typeMapping.put(Pattern.compile("^positiveInteger$"), "int64");
-		typeMapping.put(Pattern.compile("^nonPositiveInteger$"), "sint64");
-		typeMapping.put(Pattern.compile("^negativeInteger$"), "sint64");
-		typeMapping.put(Pattern.compile("^nonNegativeInteger$"), "int64");
-		typeMapping.put(Pattern.compile("^int$"), "int32");
-		typeMapping.put(Pattern.compile("^integer$"), "int64");
-
-		typeMapping.put(Pattern.compile("^unsignedLong$"), "uint64");
-		typeMapping.put(Pattern.compile("^unsignedInt$"), "uint32");
-		typeMapping.put(Pattern.compile("^unsignedShort$"), "uint32"); // No 16-bit int in protobuf
-		typeMapping.put(Pattern.compile("^unsignedByte$"), "uint32"); // No 8-bit int in protobuf
-
-		typeMapping.put(Pattern.compile("^short$"), "int32"); // No 16-bit int in protobuf
-		typeMapping.put(Pattern.compile("^long$"), "int64");
-		typeMapping.put(Pattern.compile("^decimal$"), "double");
-		typeMapping.put(Pattern.compile("^ID$"), "string");
-		typeMapping.put(Pattern.compile("^Name$"), "string");
-		typeMapping.put(Pattern.compile("^IDREF$"), "string");
-		typeMapping.put(Pattern.compile("^NMTOKEN$"), "string");
-		typeMapping.put(Pattern.compile("^NMTOKENS$"), "string"); // TODO: Fix this
-		typeMapping.put(Pattern.compile("^anySimpleType$"), "string");
-		typeMapping.put(Pattern.compile("^anyType$"), "string");
-		typeMapping.put(Pattern.compile("^anyURI$"), "string");
-		typeMapping.put(Pattern.compile("^normalizedString$"), "string");
-		typeMapping.put(Pattern.compile("^boolean$"), "bool");
-		typeMapping.put(Pattern.compile("^binary$"), "bytes"); // UnspecifiedType.object is
+/**
+ * Renders the interpreted model as proto3 text.
+ * 
+ * Type and name mappings are matched in a fixed order: custom mappings first, in the order they were declared, then the built-in defaults in declaration order.
+ * The first matching pattern wins. Mappings are compiled once per marshaller, see {@link CompiledMappings}. Imports are kept sorted by type name.
+ */
+public class ProtobufMarshaller implements IMarshaller {
+	private static final LinkedHashMap<Pattern, String> DEFAULT_TYPE_MAPPINGS = new LinkedHashMap<>();
+
+	static {
+		DEFAULT_TYPE_MAPPINGS.put(Pattern.compile("^positiveInteger$"), "int64");
+		DEFAULT_TYPE_MAPPINGS.put(Pattern.compile("^nonPositiveInteger$"), "sint64");
+		DEFAULT_TYPE_MAPPINGS.put(Pattern.compile("^negativeInteger$"), "sint64");
+		DEFAULT_TYPE_MAPPINGS.put(Pattern.compile("^nonNegativeInteger$"), "int64");
+		DEFAULT_TYPE_MAPPINGS.put(Pattern.compile("^int$"), "int32");
+		DEFAULT_TYPE_MAPPINGS.put(Pattern.compile("^integer$"), "int64");
+
+		DEFAULT_TYPE_MAPPINGS.put(Pattern.compile("^unsignedLong$"), "uint64");
+		DEFAULT_TYPE_MAPPINGS.put(Pattern.compile("^unsignedInt$"), "uint32");
+		DEFAULT_TYPE_MAPPINGS.put(Pattern.compile("^unsignedShort$"), "uint32"); // No 16-bit int in protobuf
+		DEFAULT_TYPE_MAPPINGS.put(Pattern.compile("^unsignedByte$"), "uint32"); // No 8-bit int in protobuf
+
+		DEFAULT_TYPE_MAPPINGS.put(Pattern.compile("^short$"), "int32"); // No 16-bit int in protobuf
+		DEFAULT_TYPE_MAPPINGS.put(Pattern.compile("^long$"), "int64");
+		DEFAULT_TYPE_MAPPINGS.put(Pattern.compile("^decimal$"), "double");
+		DEFAULT_TYPE_MAPPINGS.put(Pattern.compile("^ID$"), "string");
+		DEFAULT_TYPE_MAPPINGS.put(Pattern.compile("^Name$"), "string");
+		DEFAULT_TYPE_MAPPINGS.put(Pattern.compile("^IDREF$"), "string");
+		DEFAULT_TYPE_MAPPINGS.put(Pattern.compile("^NMTOKEN$"), "string");
+		DEFAULT_TYPE_MAPPINGS.put(Pattern.compile("^NMTOKENS$"), "string"); // Written as repeated NMTOKEN with listsAsRepeated
+		DEFAULT_TYPE_MAPPINGS.put(Pattern.compile("^anySimpleType$"), "string");
+		DEFAULT_TYPE_MAPPINGS.put(Pattern.compile("^anyType$"), "string");
+		DEFAULT_TYPE_MAPPINGS.put(Pattern.compile("^anyURI$"), "string");
+		DEFAULT_TYPE_MAPPINGS.put(Pattern.compile("^normalizedString$"), "string");
+		DEFAULT_TYPE_MAPPINGS.put(Pattern.compile("^boolean$"), "bool");
+		DEFAULT_TYPE_MAPPINGS.put(Pattern.compile("^binary$"), "bytes"); // UnspecifiedType.object is
 		// declared binary
-		typeMapping.put(Pattern.compile("^hexBinary$"), "bytes");
-		typeMapping.put(Pattern.compile("^base64Binary$"), "bytes");
-		typeMapping.put(Pattern.compile("^byte$"), "bytes");
-		typeMapping.put(Pattern.compile("^date$"), "int32"); // Number of days since January 1st),
+		DEFAULT_TYPE_MAPPINGS.put(Pattern.compile("^hexBinary$"), "bytes");
+		DEFAULT_TYPE_MAPPINGS.put(Pattern.compile("^base64Binary$"), "bytes");
+		DEFAULT_TYPE_MAPPINGS.put(Pattern.compile("^byte$"), "bytes");
+		DEFAULT_TYPE_MAPPINGS.put(Pattern.compile("^date$"), "int32"); // Number of days since January 1st),
 		// 1970
-		typeMapping.put(Pattern.compile("^dateTime$"), "int64"); // Number of milliseconds since
+		DEFAULT_TYPE_MAPPINGS.put(Pattern.compile("^dateTime$"), "int64"); // Number of milliseconds since
 		// January 1st), 1970
 
-		typeMapping.put(Pattern.compile("^time$"), "google.protobuf.Timestamp");
-		typeMapping.put(Pattern.compile("^duration$"), "google.protobuf.Duration");
+		DEFAULT_TYPE_MAPPINGS.put(Pattern.compile("^time$"), "google.protobuf.Timestamp");
+		DEFAULT_TYPE_MAPPINGS.put(Pattern.compile("^duration$"), "google.protobuf.Duration");
+	}
 
-		nameMapping = new HashMap<>();
+	private static final BigInteger TWO_POW_27 = BigInteger.ONE.shiftLeft(27);
+	private static final BigInteger TWO_POW_28 = BigInteger.ONE.shiftLeft(28);
+	private static final BigInteger TWO_POW_31 = BigInteger.ONE.shiftLeft(31);
+	private static final BigInteger TWO_POW_32 = BigInteger.ONE.shiftLeft(32);
+	private static final BigInteger TWO_POW_55 = BigInteger.ONE.shiftLeft(55);
+	private static final BigInteger TWO_POW_56 = BigInteger.ONE.shiftLeft(56);
+	private static final BigInteger TWO_POW_63 = BigInteger.ONE.shiftLeft(63);
+	private static final BigInteger TWO_POW_64 = BigInteger.ONE.shiftLeft(64);
+
+	private CompiledMappings typeMapping;
+	private CompiledMappings nameMapping;
+	/** Lookups of this marshaller only, the compiled mappings are shared with its copies */
+	private final CompiledMappings.Statistics typeStatistics = new CompiledMappings.Statistics();
+	private final CompiledMappings.Statistics nameStatistics = new CompiledMappings.Statistics();
+	private String indent = "";
+	private TreeMap<String, String> imports;
+	private Map<String, Object> options;
 
-		imports = new HashMap<String, String>();
+	/**
+	 * The mappings are compiled on first use, as they are usually replaced by {@link #setCustomTypeMappings(Map)} and {@link #setCustomNameMappings(Map)}
+	 * before that.
+	 */
+	public ProtobufMarshaller() {
+
+		imports = new TreeMap<String, String>();
 		imports.put("google.protobuf.Timestamp", "google/protobuf/timestamp");
 		imports.put("google.protobuf.Duration", "google/protobuf/duration");
 	}
 
+	protected ProtobufMarshaller(ProtobufMarshaller prototype) {
+		typeMapping = prototype.typeMappings();
+		nameMapping = prototype.nameMappings();
+		imports = prototype.imports;
+		options = prototype.options;
+	}
+
+	public IMarshaller copy() {
+		return new ProtobufMarshaller(this);
+	}
+
 	public String writeHeader(String namespace) {
 
 		StringBuilder b = new StringBuilder();
@@ -120,6 +156,16 @@ public class ProtobufMarshaller {
 		return b.toString();
 	}
 
+	public String writeDocumentation(String documentation) {
+		StringBuilder sb = new StringBuilder();
+		sb.append("\n/*\n");
+		// Handling possible multiline-comments
+		sb.append(" * ");
+		sb.append(documentation.trim().replaceAll("\n", "\n * "));
+		sb.append("\n */\n");
+		return sb.toString();
+	}
+
 	public String escapeNamespace(String namespace) {
 		if (namespace == null) {
 			return null;
@@ -134,7 +180,14 @@ public class ProtobufMarshaller {
 	}
 
 	public String writeEnumValue(int order, String value) {
-		return (writeIndent() + CaseFormat.UPPER_CAMEL.to(CaseFormat.UPPER_UNDERSCORE, value) + " = " + order + ";\n");
+		return (writeIndent() + enumValueName(value) + " = " + order + ";\n");
+	}
+
+	/**
+	 * @return the name of the enum constant for a value, which already carries the prefix of its enum
+	 */
+	protected String enumValueName(String value) {
+		return CaseFormat.UPPER_CAMEL.to(CaseFormat.UPPER_UNDERSCORE, value);
 	}
 
 	public String writeEnumFooter() {
@@ -150,6 +203,11 @@ public class ProtobufMarshaller {
 
 	public String writeStructParameter(int order, boolean required, boolean repeated, String name, String type, String fieldDocumentation,
 			boolean splitByNamespace) {
+		return writeStructParameter(order, required, repeated, name, type, fieldDocumentation, splitByNamespace, false);
+	}
+
+	public String writeStructParameter(int order, boolean required, boolean repeated, String name, String type, String fieldDocumentation,
+			boolean splitByNamespace, boolean lazy) {
 		String sRequired = "";
 
 		if (fieldDocumentation != null) {
@@ -161,6 +219,27 @@ public class ProtobufMarshaller {
 		}
 		String fieldName = CaseFormat.UPPER_CAMEL.to(CaseFormat.LOWER_UNDERSCORE, name);
 
+		String convertedType = convertType(type, splitByNamespace);
+
+		return writeIndent() + sRequired + convertedType + " " + fieldName + " = " + order + (lazy ? " [lazy = true]" : "") + ";"
+				+ (fieldDocumentation != null ? " // " + fieldDocumentation : "") + "\n";
+	}
+
+	public String writeMapParameter(int order, String name, String keyType, String valueType, String entryType, String fieldDocumentation,
+			boolean splitByNamespace) {
+		if (fieldDocumentation != null) {
+			fieldDocumentation = fieldDocumentation.replaceAll("\n", " ").replaceAll("\t", " ");
+		}
+		String fieldName = CaseFormat.UPPER_CAMEL.to(CaseFormat.LOWER_UNDERSCORE, name);
+
+		return writeIndent() + "map<" + convertType(keyType, splitByNamespace) + ", " + convertType(valueType, splitByNamespace) + "> " + fieldName + " = "
+				+ order + ";" + (fieldDocumentation != null ? " // " + fieldDocumentation : "") + "\n";
+	}
+
+	/**
+	 * @return the type as written in a field declaration, qualified only if it is imported or the output is split by namespace
+	 */
+	protected String convertType(String type, boolean splitByNamespace) {
 		String convertedType = NamespaceConverter.convertFromSchema(type);
 
 		if (imports.containsKey(type)) {
@@ -168,9 +247,7 @@ public class ProtobufMarshaller {
 		} else if (!splitByNamespace) {
 			convertedType = convertedType.substring(convertedType.lastIndexOf(".") + 1);
 		}
-
-		return writeIndent() + sRequired + convertedType + " " + fieldName + " = " + order + ";"
-				+ (fieldDocumentation != null ? " // " + fieldDocumentation : "") + "\n";
+		return convertedType;
 	}
 
 	public String writeStructFooter() {
@@ -178,26 +255,91 @@ public class ProtobufMarshaller {
 		return writeIndent() + "}\n\n";
 	}
 
+	public String writeOneofHeader(String name) {
+		final String result = writeIndent() + "oneof " + name + "\n" + writeIndent() + "{\n";
+		increaseIndent();
+		return result;
+	}
+
+	public String writeOneofFooter() {
+		decreaseIndent();
+		return writeIndent() + "}\n";
+	}
+
 	public String getTypeMapping(String type) {
-		for (Pattern p : typeMapping.keySet()) {
-			Matcher m = p.matcher(type);
-			if (m.find()) {
-				return m.replaceAll(typeMapping.get(p));
+		return typeMappings().map(type, typeStatistics);
+	}
+
+	/**
+	 * Picks the type with the smallest encoding for values spread evenly over the range. Ranges with negative values use the zigzag encoded sint types, so
+	 * small negative values stay small. Ranges so wide that most values need more varint bytes than a fixed width value use fixed32, fixed64, sfixed32 or
+	 * sfixed64. Ranges open on either side keep the type of their base type.
+	 */
+	public String getIntegerTypeMapping(BigInteger min, BigInteger max) {
+		if (min == null || max == null || min.compareTo(max) > 0) {
+			return null;
+		}
+		if (min.signum() >= 0) {
+			if (max.compareTo(TWO_POW_28) < 0) {
+				return "int32";
+			} else if (max.compareTo(TWO_POW_32) < 0) {
+				return "fixed32";
+			} else if (max.compareTo(TWO_POW_56) < 0) {
+				return "int64";
+			} else if (max.compareTo(TWO_POW_64) < 0) {
+				return "fixed64";
+			}
+		} else {
+			if (within(min, max, TWO_POW_27)) {
+				return "sint32";
+			} else if (within(min, max, TWO_POW_31)) {
+				return "sfixed32";
+			} else if (within(min, max, TWO_POW_55)) {
+				return "sint64";
+			} else if (within(min, max, TWO_POW_63)) {
+				return "sfixed64";
 			}
 		}
-
 		return null;
 	}
 
+	/**
+	 * Scaled decimals of unknown range may well be negative, which take ten bytes as int64 and are kept short by the zigzag encoding of sint64.
+	 */
+	public String getScaledDecimalTypeMapping() {
+		return "sint64";
+	}
+
+	/**
+	 * @return whether the range lies within [-limit, limit)
+	 */
+	private static boolean within(BigInteger min, BigInteger max, BigInteger limit) {
+		return min.compareTo(limit.negate()) >= 0 && max.compareTo(limit) < 0;
+	}
+
 	public String getNameMapping(String type) {
-		for (Pattern p : nameMapping.keySet()) {
-			Matcher m = p.matcher(type);
-			if (m.find()) {
-				return m.replaceAll(nameMapping.get(p));
-			}
+		return nameMappings().map(type, nameStatistics);
+	}
+
+	private CompiledMappings typeMappings() {
+		if (typeMapping == null) {
+			typeMapping = new CompiledMappings(DEFAULT_TYPE_MAPPINGS);
+		}
+		return typeMapping;
+	}
+
+	private CompiledMappings nameMappings() {
+		if (nameMapping == null) {
+			nameMapping = new CompiledMappings(Collections.<Pattern, String>emptyMap());
 		}
+		return nameMapping;
+	}
 
-		return null;
+	/**
+	 * @return lookup counts of the type and name mappings by this marshaller, for reporting
+	 */
+	public String getMappingStatistics() {
+		return "type mappings: " + typeStatistics + ", name mappings: " + nameStatistics;
 	}
 
 	public boolean isNestedEnums() {
@@ -234,17 +376,15 @@ public class ProtobufMarshaller {
 
 	public void setCustomTypeMappings(Map<Pattern, String> customTypeMappings) {
 		if (customTypeMappings != null) {
-			for (Entry<Pattern, String> entry : customTypeMappings.entrySet()) {
-				typeMapping.put(entry.getKey(), entry.getValue());
-			}
+			LinkedHashMap<Pattern, String> mappings = new LinkedHashMap<>(customTypeMappings);
+			mappings.putAll(DEFAULT_TYPE_MAPPINGS);
+			typeMapping = new CompiledMappings(mappings);
 		}
 	}
 
 	public void setCustomNameMappings(Map<Pattern, String> customNameMappings) {
 		if (customNameMappings != null) {
-			for (Entry<Pattern, String> entry : customNameMappings.entrySet()) {
-				nameMapping.put(entry.getKey(), entry.getValue());
-			}
+			nameMapping = new CompiledMappings(customNameMappings);
 		}
 	}
 
@@ -255,6 +395,10 @@ public class ProtobufMarshaller {
 		return null;
 	}
 
+	public Map<String, String> getImports() {
+		return imports;
+	}
+
 	public String getImport(Field field) {
 		if (imports != null) {
 			String nsPrefix = "";
@@ -0,0 +1,117 @@
+package com.github.tranchis.xsd2thrift;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import com.squareup.wire.schema.ProtoFile;
+import com.squareup.wire.schema.Schema;
+import com.squareup.wire.schema.SchemaLoader;
+import com.squareup.wire.schema.Type;
+
+public class BalancedLayoutTest {
+
+	@Test
+	public void singleFileIsSplitByDefinitionCount() throws IOException {
+		File directory = cleanDirectory("target/generated-proto/layout-count");
+		Main.main(new String[] { "--directory=" + directory.getPath(), "--filename=recipeml.proto", "--package=default", "--maxDefinitionsPerFile=10",
+				"src/test/resources/xsd/recipeml.xsd" });
+
+		File[] files = directory.listFiles((dir, name) -> name.endsWith(".proto"));
+		assertTrue(files.length > 1, "Expected output to be split into several files");
+
+		Schema schema = load(directory);
+		Set<String> types = new HashSet<>();
+		for (File file : files) {
+			ProtoFile protoFile = schema.protoFile(file.getName());
+			assertTrue(protoFile.types().size() <= 10, file.getName() + " has " + protoFile.types().size() + " definitions");
+			for (Type type : protoFile.types()) {
+				assertTrue(types.add(type.type().simpleName()), type.type() + " defined twice");
+			}
+		}
+
+		assertEquals(typesIn(TestHelper.generateProtobuf("recipeml")), types);
+	}
+
+	@Test
+	public void namespaceFilesAreSplitBySize() throws IOException {
+		File directory = cleanDirectory("target/generated-proto/layout-size");
+		Main.main(new String[] { "--splitBySchema=true", "--directory=" + directory.getPath(), "--package=schemas.com.domain.common", "--maxFileSize=1",
+				"src/test/resources/xsd/ns-person.xsd" });
+
+		Set<String> names = new HashSet<>(Arrays.asList(directory.list()));
+		assertTrue(names.contains("schemas_com_domain_address_1.proto"), "Files: " + names);
+		assertTrue(names.contains("schemas_com_domain_address_2.proto"), "Files: " + names);
+
+		// Loading links all field types, so this fails unless imports between the files are correct
+		Schema schema = load(directory);
+		for (String name : names) {
+			assertTrue(schema.protoFile(name).types().size() <= 1, name + " should only hold a single definition");
+		}
+	}
+
+	@Test
+	public void filesStayInTheDirectoryOfTheFilename() throws Exception {
+		ConfigFile config = new ConfigFile();
+		config.filename = "target/generated-proto/layout-path/recipeml.proto";
+		config.maxDefinitionsPerFile = 10;
+		Map<String, byte[]> files = new ConversionEngine(config, null).convert(SchemaSource.of(Paths.get("src/test/resources/xsd/recipeml.xsd")));
+
+		assertTrue(files.size() > 1, "Files: " + files.keySet());
+		for (String path : files.keySet()) {
+			assertTrue(path.startsWith("target/generated-proto/layout-path/recipeml"), path);
+		}
+	}
+
+	@Test
+	public void cyclesAcrossNamespacesAreRejected() {
+		ConfigFile config = new ConfigFile();
+		config.splitBySchema = true;
+		config.maxDefinitionsPerFile = 10;
+		InvalidXSDException e = assertThrows(InvalidXSDException.class,
+				() -> new ConversionEngine(config, null).convert(SchemaSource.of(Paths.get("src/test/resources/xsd/ns-cycle-order.xsd"))));
+		assertTrue(e.getMessage().contains("depend on each other across namespaces"), e.getMessage());
+	}
+
+	private static Set<String> typesIn(String filename) throws IOException {
+		File file = new File(filename);
+		SchemaLoader loader = new SchemaLoader();
+		loader.addSource(file.getParentFile());
+		loader.addProto(file.getName());
+		Set<String> types = new HashSet<>();
+		for (Type type : loader.load().protoFile(file.getName()).types()) {
+			types.add(type.type().simpleName());
+		}
+		return types;
+	}
+
+	private static Schema load(File directory) throws IOException {
+		SchemaLoader loader = new SchemaLoader();
+		loader.addSource(directory);
+		for (String name : directory.list((dir, name) -> name.endsWith(".proto"))) {
+			loader.addProto(name);
+		}
+		return loader.load();
+	}
+
+	private static File cleanDirectory(String path) {
+		File directory = new File(path);
+		if (directory.exists()) {
+			for (File file : directory.listFiles()) {
+				file.delete();
+			}
+		}
+		directory.mkdirs();
+		return directory;
+	}
+}
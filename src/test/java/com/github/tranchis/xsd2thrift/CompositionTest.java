@@ -0,0 +1,62 @@
+package com.github.tranchis.xsd2thrift;
+
+import static com.github.tranchis.xsd2thrift.TestHelper.compareExpectedAndGenerated;
+import static com.github.tranchis.xsd2thrift.TestHelper.generateProtobufWithOptions;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.HashMap;
+
+import org.junit.jupiter.api.Test;
+
+import com.github.tranchis.xsd2thrift.marshal.ProtobufMarshaller;
+
+public class CompositionTest {
+
+	@Test
+	public void derivedTypesEmbedTheirBase() throws IOException {
+		// The note and alert hierarchy still copies its fields
+		compareExpectedAndGenerated("src/test/resources/expectedproto/test-composition-embedded.proto",
+				generateProtobufWithOptions("test-composition", "test-composition-embedded", "--compositionBases=entity", "--validate=true"), true);
+	}
+
+	@Test
+	public void derivedTypesCopyFieldsByDefault() throws IOException {
+		compareExpectedAndGenerated("src/test/resources/expectedproto/test-composition.proto",
+				generateProtobufWithOptions("test-composition", "test-composition", "--validate=true"), true);
+	}
+
+	@Test
+	public void baseFieldAvoidsDeclaredNames() throws IOException {
+		compareExpectedAndGenerated("src/test/resources/expectedproto/test-composition-names.proto",
+				generateProtobufWithOptions("test-composition-names", "test-composition-names", "--compositionBases=*", "--validate=true"), true);
+	}
+
+	@Test
+	public void mergedDerivedMessagesKeepTheirBaseDocumentation() throws IOException {
+		// siteType is merged into place
+		compareExpectedAndGenerated("src/test/resources/expectedproto/test-composition-site.proto", generateProtobufWithOptions("test-composition-site",
+				"test-composition-site", "--compositionBases=entity", "--deduplicateTypes=true", "--validate=true"), true);
+	}
+
+	@Test
+	public void countsDeclarationsOfBothModes() throws Exception {
+		ProtobufMarshaller marshaller = new ProtobufMarshaller();
+		OutputWriter writer = new OutputWriter();
+		writer.setInMemory(true);
+		writer.setMarshaller(marshaller);
+		writer.setDefaultExtension("proto");
+		writer.setFilename("network.proto");
+
+		XSDParser xp = new XSDParser(SchemaSource.of(Paths.get("src/test/resources/xsd/test-composition.xsd")), new HashMap<String, String>());
+		xp.setCompositionBases(Collections.singleton("*"));
+		xp.addMarshaller(marshaller);
+		xp.setWriter(writer);
+		xp.parse();
+
+		// entity 2, place 2 instead of 3, stop 2 instead of 4, note 1, alert 2
+		assertArrayEquals(new int[] { 9, 12 }, xp.getFieldDeclarationCounts());
+	}
+}
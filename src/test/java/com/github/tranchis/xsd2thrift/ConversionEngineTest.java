@@ -0,0 +1,92 @@
+package com.github.tranchis.xsd2thrift;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+import org.xml.sax.InputSource;
+
+public class ConversionEngineTest {
+
+	private static ConfigFile splitConfig() {
+		ConfigFile config = new ConfigFile();
+		config.splitBySchema = true;
+		config.namespace = "schemas.com.domain.common";
+		return config;
+	}
+
+	@Test
+	public void inMemoryOutputMatchesFileOutput() throws Exception {
+		File directory = new File("target/generated-proto/engine");
+		directory.mkdirs();
+		Main.main(new String[] { "--splitBySchema=true", "--nestEnums=false", "--directory=" + directory.getPath(), "--package=schemas.com.domain.common",
+				"src/test/resources/xsd/ns-person.xsd" });
+
+		Map<String, byte[]> files = new ConversionEngine(splitConfig()).convert(SchemaSource.of(Paths.get("src/test/resources/xsd/ns-person.xsd")));
+
+		String[] expected = directory.list();
+		assertEquals(expected.length, files.size());
+		for (String file : expected) {
+			assertEquals(new String(Files.readAllBytes(new File(directory, file).toPath()), StandardCharsets.UTF_8),
+					new String(files.get(file), StandardCharsets.UTF_8), file);
+		}
+	}
+
+	@Test
+	public void concurrentConversionsShareOneEngine() throws Exception {
+		ConversionEngine engine = new ConversionEngine(splitConfig());
+		SchemaSource source = SchemaSource.of(Paths.get("src/test/resources/xsd/ns-person.xsd"));
+		Map<String, byte[]> expected = engine.convert(source);
+
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<Map<String, byte[]>>> results = new ArrayList<>();
+			for (int i = 0; i < 32; i++) {
+				results.add(executor.submit(() -> engine.convert(source)));
+			}
+			for (Future<Map<String, byte[]>> result : results) {
+				Map<String, byte[]> files = result.get();
+				assertEquals(expected.keySet(), files.keySet());
+				for (String file : expected.keySet()) {
+					assertArrayEquals(expected.get(file), files.get(file), file);
+				}
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void convertsSchemasFromMemory() throws Exception {
+		ConversionEngine engine = new ConversionEngine(splitConfig());
+		Map<String, byte[]> expected = engine.convert(SchemaSource.of(Paths.get("src/test/resources/xsd/ns-person.xsd")));
+
+		SchemaSource source;
+		try (InputStream in = Files.newInputStream(Paths.get("src/test/resources/xsd/ns-person.xsd"))) {
+			source = SchemaSource.of(in, "http://schemas.example.com/ns-person.xsd").withEntityResolver((publicId, systemId) -> {
+				String name = systemId.substring(systemId.lastIndexOf('/') + 1);
+				InputSource imported = new InputSource(systemId);
+				imported.setByteStream(Files.newInputStream(Paths.get("src/test/resources/xsd", name)));
+				return imported;
+			});
+		}
+
+		Map<String, byte[]> files = engine.convert(source);
+		assertEquals(expected.keySet(), files.keySet());
+		for (String file : expected.keySet()) {
+			assertArrayEquals(expected.get(file), files.get(file), file);
+		}
+	}
+}
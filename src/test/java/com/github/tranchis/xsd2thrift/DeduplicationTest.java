@@ -0,0 +1,69 @@
+package com.github.tranchis.xsd2thrift;
+
+import static com.github.tranchis.xsd2thrift.TestHelper.compareExpectedAndGenerated;
+import static com.github.tranchis.xsd2thrift.TestHelper.generateProtobufWithOptions;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.Test;
+
+import com.github.tranchis.xsd2thrift.marshal.ProtobufMarshaller;
+
+public class DeduplicationTest {
+
+	@Test
+	public void duplicatesShareOneDefinition() throws IOException {
+		compareExpectedAndGenerated("src/test/resources/expectedproto/test-deduplication-merged.proto",
+				generateProtobufWithOptions("test-deduplication", "test-deduplication-merged", "--deduplicateTypes=true", "--validate=true"), true);
+	}
+
+	@Test
+	public void duplicatesAreKeptByDefault() throws IOException {
+		compareExpectedAndGenerated("src/test/resources/expectedproto/test-deduplication.proto",
+				generateProtobufWithOptions("test-deduplication", "test-deduplication", "--validate=true"), true);
+	}
+
+	private static XSDParser parse(boolean nestEnums) throws Exception {
+		ProtobufMarshaller marshaller = new ProtobufMarshaller();
+		OutputWriter writer = new OutputWriter();
+		writer.setInMemory(true);
+		writer.setMarshaller(marshaller);
+		writer.setDefaultExtension("proto");
+		writer.setFilename("order.proto");
+
+		XSDParser xp = new XSDParser(SchemaSource.of(Paths.get("src/test/resources/xsd/test-deduplication.xsd")), new HashMap<String, String>());
+		xp.setDeduplicateTypes(true);
+		xp.setNestEnums(nestEnums);
+		xp.addMarshaller(marshaller);
+		xp.setWriter(writer);
+		xp.parse();
+		return xp;
+	}
+
+	@Test
+	public void reportsMergedTypes() throws Exception {
+		XSDParser xp = parse(true);
+
+		Map<String, String> expected = new TreeMap<>();
+		expected.put("billingType", "address");
+		expected.put("shippingType", "address");
+		expected.put("phaseType", "status");
+		expected.put("state", "status");
+		assertEquals(expected, xp.getDuplicateTypes());
+		assertTrue(xp.getDuplicateBytes() > 100, String.valueOf(xp.getDuplicateBytes()));
+	}
+
+	@Test
+	public void nestedEnumsSaveOnlyTheDeclarationsNoLongerWritten() throws Exception {
+		// Nested, orderType declared phaseType and state and now declares status once; at the top level both are dropped and status stays
+		int nested = parse(true).getDuplicateBytes();
+		int topLevel = parse(false).getDuplicateBytes();
+		assertTrue(nested < topLevel, nested + " < " + topLevel);
+	}
+}
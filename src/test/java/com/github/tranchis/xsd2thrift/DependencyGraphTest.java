@@ -0,0 +1,40 @@
+package com.github.tranchis.xsd2thrift;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+public class DependencyGraphTest {
+
+	@Test
+	public void componentsFollowTheirDependencies() {
+		DependencyGraph<String> graph = new DependencyGraph<>();
+		graph.addEdge("a", "b");
+		graph.addEdge("b", "c");
+		graph.addEdge("c", "b");
+		graph.addEdge("c", "d");
+		graph.addEdge("a", "e");
+
+		assertEquals(Arrays.asList(Arrays.asList("d"), Arrays.asList("b", "c"), Arrays.asList("e"), Arrays.asList("a")),
+				graph.getStronglyConnectedComponents());
+	}
+
+	@Test
+	public void longChainsDoNotOverflowTheStack() {
+		DependencyGraph<Integer> graph = new DependencyGraph<>();
+		int length = 200000;
+		for (int i = 0; i < length; i++) {
+			graph.addEdge(i, i + 1);
+		}
+		// Closes one cycle over the whole chain
+		graph.addEdge(length, 0);
+
+		List<List<Integer>> cycles = graph.getCycles();
+		assertEquals(1, cycles.size());
+		assertEquals(length + 1, cycles.get(0).size());
+		assertEquals(1, graph.getTopologicalLevels().size());
+	}
+}
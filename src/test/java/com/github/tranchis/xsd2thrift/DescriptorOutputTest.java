@@ -0,0 +1,210 @@
+package com.github.tranchis.xsd2thrift;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.jupiter.api.Test;
+
+import com.google.protobuf.DescriptorProtos.DescriptorProto;
+import com.google.protobuf.DescriptorProtos.EnumDescriptorProto;
+import com.google.protobuf.DescriptorProtos.EnumValueDescriptorProto;
+import com.google.protobuf.DescriptorProtos.FileDescriptorProto;
+import com.google.protobuf.DescriptorProtos.FileDescriptorSet;
+import com.google.protobuf.Descriptors.Descriptor;
+import com.google.protobuf.Descriptors.FieldDescriptor;
+import com.google.protobuf.Descriptors.FileDescriptor;
+import com.google.protobuf.DynamicMessage;
+import com.squareup.wire.schema.EnumType;
+import com.squareup.wire.schema.Field;
+import com.squareup.wire.schema.Location;
+import com.squareup.wire.schema.MessageType;
+import com.squareup.wire.schema.ProtoFile;
+import com.squareup.wire.schema.Schema;
+import com.squareup.wire.schema.SchemaLoader;
+import com.squareup.wire.schema.Type;
+import com.squareup.wire.schema.internal.parser.EnumConstantElement;
+import com.squareup.wire.schema.internal.parser.EnumElement;
+import com.squareup.wire.schema.internal.parser.MessageElement;
+import com.squareup.wire.schema.internal.parser.ProtoParser;
+import com.squareup.wire.schema.internal.parser.TypeElement;
+
+public class DescriptorOutputTest {
+
+	@Test
+	public void descriptorsDescribeTheProtoOutput() throws Exception {
+		File text = new File("target/generated-proto/descriptor/text");
+		File binary = new File("target/generated-proto/descriptor/binary");
+		text.mkdirs();
+		binary.mkdirs();
+
+		ConfigFile config = new ConfigFile();
+		config.splitBySchema = true;
+		config.directory = text.getPath();
+		config.namespace = "schemas.com.domain.common";
+		OutputConfig descriptor = new OutputConfig();
+		descriptor.marshaller = "descriptor";
+		descriptor.splitBySchema = true;
+		descriptor.directory = binary.getPath();
+		config.outputs = new ArrayList<>();
+		config.outputs.add(descriptor);
+		new ConversionEngine(config, null).convertToFiles(SchemaSource.of(Paths.get("src/test/resources/xsd/ns-person.xsd")));
+
+		Map<String, FileDescriptor> files = buildAll(binary.toPath());
+		Schema schema = new SchemaLoader().addSource(text).load();
+		int messages = 0;
+		for (ProtoFile protoFile : schema.protoFiles()) {
+			if (protoFile.packageName().startsWith("google.protobuf")) {
+				continue;
+			}
+			FileDescriptor file = files.get(protoFile.location().path());
+			assertNotNull(file, protoFile.location().path());
+			assertEquals(protoFile.packageName(), file.getPackage());
+			for (Type type : protoFile.types()) {
+				if (type instanceof MessageType) {
+					compareMessage((MessageType) type, file.findMessageTypeByName(type.type().simpleName()));
+					messages++;
+				} else {
+					assertEquals(((EnumType) type).constants().size(), file.findEnumTypeByName(type.type().simpleName()).getValues().size());
+				}
+			}
+		}
+		assertFalse(messages == 0);
+	}
+
+	private static void compareMessage(MessageType expected, Descriptor actual) {
+		assertNotNull(actual, expected.type().toString());
+		assertEquals(expected.fields().size(), actual.getFields().size(), expected.type().toString());
+		for (Field field : expected.fields()) {
+			FieldDescriptor actualField = actual.findFieldByNumber(field.tag());
+			assertEquals(field.name(), actualField.getName());
+			assertEquals(field.isRepeated(), actualField.isRepeated());
+			String actualType;
+			if (actualField.getType() == FieldDescriptor.Type.MESSAGE) {
+				actualType = actualField.getMessageType().getFullName();
+			} else if (actualField.getType() == FieldDescriptor.Type.ENUM) {
+				actualType = actualField.getEnumType().getFullName();
+			} else {
+				actualType = actualField.getType().name().toLowerCase();
+			}
+			assertEquals(field.type().toString(), actualType, field.name());
+		}
+		for (Type nested : expected.nestedTypes()) {
+			assertNotNull(actual.findEnumTypeByName(nested.type().simpleName()), nested.type().toString());
+		}
+	}
+
+	@Test
+	public void singleFileDescriptorSetIsUsableWithDynamicMessages() throws Exception {
+		ConfigFile config = new ConfigFile();
+		config.marshaller = "descriptor";
+		config.filename = "shiporder.pb";
+		config.namespace = "shiporder";
+		Map<String, byte[]> output = new ConversionEngine(config, null).convert(SchemaSource.of(Paths.get("src/test/resources/xsd/shiporder.xsd")));
+		assertEquals(1, output.size());
+
+		FileDescriptorSet set = FileDescriptorSet.parseFrom(output.get("shiporder.pb"));
+		FileDescriptor file = build(set.getFile(set.getFileCount() - 1).getName(), index(set), new HashMap<>());
+		assertFalse(file.getMessageTypes().isEmpty());
+		for (Descriptor message : file.getMessageTypes()) {
+			DynamicMessage empty = DynamicMessage.getDefaultInstance(message);
+			assertEquals(empty, DynamicMessage.parseFrom(message, empty.toByteArray()));
+		}
+	}
+
+	@Test
+	public void enumValuesAreNamedLikeTheProtoOutput() throws Exception {
+		Set<String> expected = new TreeSet<>();
+		for (TypeElement type : ProtoParser.parse(Location.get("recipeml.proto"), new String(convert(null, "recipeml.proto"), StandardCharsets.UTF_8))
+				.types()) {
+			collectConstants(type, expected);
+		}
+		Set<String> actual = new TreeSet<>();
+		FileDescriptorSet set = FileDescriptorSet.parseFrom(convert("descriptor", "recipeml.pb"));
+		FileDescriptorProto file = set.getFile(set.getFileCount() - 1);
+		for (EnumDescriptorProto enumType : file.getEnumTypeList()) {
+			collectValues(enumType, actual);
+		}
+		for (DescriptorProto message : file.getMessageTypeList()) {
+			for (EnumDescriptorProto enumType : message.getEnumTypeList()) {
+				collectValues(enumType, actual);
+			}
+		}
+		assertFalse(expected.isEmpty());
+		assertEquals(expected, actual);
+	}
+
+	private static byte[] convert(String marshaller, String filename) throws Exception {
+		ConfigFile config = new ConfigFile();
+		config.marshaller = marshaller;
+		config.filename = filename;
+		return new ConversionEngine(config, null).convert(SchemaSource.of(Paths.get("src/test/resources/xsd/recipeml.xsd"))).get(filename);
+	}
+
+	private static void collectConstants(TypeElement type, Set<String> names) {
+		if (type instanceof EnumElement) {
+			for (EnumConstantElement constant : ((EnumElement) type).constants()) {
+				names.add(constant.name());
+			}
+		} else if (type instanceof MessageElement) {
+			for (TypeElement nested : ((MessageElement) type).nestedTypes()) {
+				collectConstants(nested, names);
+			}
+		}
+	}
+
+	private static void collectValues(EnumDescriptorProto enumType, Set<String> names) {
+		for (EnumValueDescriptorProto value : enumType.getValueList()) {
+			names.add(value.getName());
+		}
+	}
+
+	private static Map<String, FileDescriptor> buildAll(Path directory) throws Exception {
+		Map<String, FileDescriptorProto> protos = new HashMap<>();
+		List<Path> sets = new ArrayList<>();
+		Files.list(directory).filter(p -> p.toString().endsWith(".pb")).forEach(sets::add);
+		for (Path path : sets) {
+			protos.putAll(index(FileDescriptorSet.parseFrom(Files.readAllBytes(path))));
+		}
+		Map<String, FileDescriptor> files = new HashMap<>();
+		for (String name : protos.keySet()) {
+			build(name, protos, files);
+		}
+		return files;
+	}
+
+	private static Map<String, FileDescriptorProto> index(FileDescriptorSet set) {
+		Map<String, FileDescriptorProto> protos = new HashMap<>();
+		for (FileDescriptorProto file : set.getFileList()) {
+			protos.put(file.getName(), file);
+		}
+		return protos;
+	}
+
+	private static FileDescriptor build(String name, Map<String, FileDescriptorProto> protos, Map<String, FileDescriptor> files) throws Exception {
+		FileDescriptor file = files.get(name);
+		if (file == null) {
+			FileDescriptorProto proto = protos.get(name);
+			assertNotNull(proto, "Missing dependency " + name);
+			List<FileDescriptor> dependencies = new ArrayList<>();
+			for (String dependency : proto.getDependencyList()) {
+				dependencies.add(build(dependency, protos, files));
+			}
+			file = FileDescriptor.buildFrom(proto, dependencies.toArray(new FileDescriptor[0]));
+			files.put(name, file);
+		}
+		return file;
+	}
+}
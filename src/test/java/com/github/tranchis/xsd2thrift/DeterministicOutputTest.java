@@ -0,0 +1,89 @@
+package com.github.tranchis.xsd2thrift;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Converts the same schemas repeatedly under different identity hash seeds and verifies that the output is byte-identical.
+ */
+public class DeterministicOutputTest {
+
+	private static final String[] SCHEMAS = { "recipeml", "test-datatypes", "test-extension-attributes", "complexTypeRenaming" };
+
+	private static final String TYPE_MAPPINGS = "^date$:string,^dateTime$:string,^Anonymous.*$:string";
+
+	@Test
+	public void outputIsStableWithinJvm() throws Exception {
+		for (String schema : SCHEMAS) {
+			byte[] reference = null;
+			for (int run = 0; run < 5; run++) {
+				File output = new File("target/generated-proto/determinism/inprocess-" + run + "/" + schema + ".proto");
+				convertOnFreshThread(schema, output, run * 1013);
+				byte[] bytes = Files.readAllBytes(output.toPath());
+				if (reference == null) {
+					reference = bytes;
+				} else {
+					assertArrayEquals(reference, bytes, "Output for " + schema + " differs between runs");
+				}
+			}
+		}
+	}
+
+	@Test
+	public void outputIsStableAcrossJvmHashSeeds() throws Exception {
+		for (String schema : SCHEMAS) {
+			File reference = new File("target/generated-proto/determinism/reference/" + schema + ".proto");
+			convertOnFreshThread(schema, reference, 0);
+
+			// hashCode=2 gives every object the same identity hash, hashCode=3 a global sequence and hashCode=4 the object address
+			for (int hashCodeMode : new int[] { 2, 3, 4 }) {
+				File forked = new File("target/generated-proto/determinism/forked-" + hashCodeMode + "/" + schema + ".proto");
+				convertInForkedJvm(schema, forked, hashCodeMode);
+				assertArrayEquals(Files.readAllBytes(reference.toPath()), Files.readAllBytes(forked.toPath()),
+						"Output for " + schema + " differs with -XX:hashCode=" + hashCodeMode);
+			}
+		}
+	}
+
+	private static void convertOnFreshThread(String schema, File output, int identityHashesToConsume) throws InterruptedException {
+		output.getParentFile().mkdirs();
+		Thread t = new Thread(() -> {
+			// Advance the thread-local identity hash generator so that hash-keyed collections are populated in a different order
+			for (int i = 0; i < identityHashesToConsume; i++) {
+				System.identityHashCode(new Object());
+			}
+			Main.main(arguments(schema, output));
+		});
+		t.start();
+		t.join();
+	}
+
+	private static void convertInForkedJvm(String schema, File output, int hashCodeMode) throws IOException, InterruptedException {
+		output.getParentFile().mkdirs();
+		List<String> command = new ArrayList<>();
+		command.add(new File(System.getProperty("java.home"), "bin/java").getPath());
+		command.add("-XX:+UnlockExperimentalVMOptions");
+		command.add("-XX:hashCode=" + hashCodeMode);
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add(Main.class.getName());
+		for (String arg : arguments(schema, output)) {
+			command.add(arg);
+		}
+		Process process = new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(new File(output.getPath() + ".log")).start();
+		assertEquals(0, process.waitFor(), "Forked conversion of " + schema + " failed");
+	}
+
+	private static String[] arguments(String schema, File output) {
+		return new String[] { "--filename=" + output.getPath(), "--package=default", "--customTypeMappings=" + TYPE_MAPPINGS,
+				"src/test/resources/xsd/" + schema + ".xsd" };
+	}
+}
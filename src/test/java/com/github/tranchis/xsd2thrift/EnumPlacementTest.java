@@ -0,0 +1,23 @@
+package com.github.tranchis.xsd2thrift;
+
+import static com.github.tranchis.xsd2thrift.TestHelper.compareExpectedAndGenerated;
+import static com.github.tranchis.xsd2thrift.TestHelper.generateProtobufWithOptions;
+
+import java.io.IOException;
+
+import org.junit.jupiter.api.Test;
+
+public class EnumPlacementTest {
+
+	@Test
+	public void sharedEnumsAreHoisted() throws IOException {
+		compareExpectedAndGenerated("src/test/resources/expectedproto/test-enum-placement-hoisted.proto", generateProtobufWithOptions("test-enum-placement",
+				"test-enum-placement-hoisted", "--nestEnums=true", "--hoistSharedEnums=true", "--validate=true"), true);
+	}
+
+	@Test
+	public void enumsAreNestedInEachUserByDefault() throws IOException {
+		compareExpectedAndGenerated("src/test/resources/expectedproto/test-enum-placement.proto",
+				generateProtobufWithOptions("test-enum-placement", "test-enum-placement", "--nestEnums=true", "--validate=true"), true);
+	}
+}
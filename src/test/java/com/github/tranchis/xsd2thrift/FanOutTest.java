@@ -0,0 +1,52 @@
+package com.github.tranchis.xsd2thrift;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+public class FanOutTest {
+
+	@Test
+	public void allOutputsMatchSeparateConversions() throws IOException {
+		File base = new File("target/generated-proto/fan-out");
+		File split = new File(base, "split");
+		File separateSplit = new File(base, "separate-split");
+		split.mkdirs();
+		separateSplit.mkdirs();
+
+		File config = new File(base, "config.yaml");
+		String yaml = "filename: " + base.getPath() + "/single.proto\n" //
+				+ "namespace: schemas.com.domain.common\n" //
+				+ "nestEnums: true\n" //
+				+ "outputs:\n" //
+				+ "  - directory: " + split.getPath() + "\n" //
+				+ "    splitBySchema: true\n" //
+				+ "xsd: src/test/resources/xsd/ns-person.xsd\n";
+		Files.write(config.toPath(), yaml.getBytes(StandardCharsets.UTF_8));
+
+		Main.main(new String[] { "--configFile=" + config.getPath(), "src/test/resources/xsd/ns-person.xsd" });
+		Main.main(new String[] { "--filename=" + base.getPath() + "/separate-single.proto", "--package=schemas.com.domain.common",
+				"src/test/resources/xsd/ns-person.xsd" });
+		Main.main(new String[] { "--splitBySchema=true", "--directory=" + separateSplit.getPath(), "--package=schemas.com.domain.common",
+				"src/test/resources/xsd/ns-person.xsd" });
+
+		assertArrayEquals(Files.readAllBytes(new File(base, "separate-single.proto").toPath()), Files.readAllBytes(new File(base, "single.proto").toPath()));
+
+		String[] files = separateSplit.list();
+		Arrays.sort(files);
+		String[] fanOutFiles = split.list();
+		Arrays.sort(fanOutFiles);
+		assertArrayEquals(files, fanOutFiles);
+		for (String file : files) {
+			assertEquals(new String(Files.readAllBytes(new File(separateSplit, file).toPath()), StandardCharsets.UTF_8),
+					new String(Files.readAllBytes(new File(split, file).toPath()), StandardCharsets.UTF_8), file);
+		}
+	}
+}
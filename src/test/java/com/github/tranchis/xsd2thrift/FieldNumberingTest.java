@@ -0,0 +1,52 @@
+package com.github.tranchis.xsd2thrift;
+
+import static com.github.tranchis.xsd2thrift.TestHelper.compareExpectedAndGenerated;
+import static com.github.tranchis.xsd2thrift.TestHelper.generateProtobuf;
+import static com.github.tranchis.xsd2thrift.TestHelper.generateProtobufWithOptions;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+
+import org.junit.jupiter.api.Test;
+
+import com.github.tranchis.xsd2thrift.marshal.ProtobufMarshaller;
+
+public class FieldNumberingTest {
+
+	@Test
+	public void fieldsAreNumberedByNameByDefault() throws IOException {
+		compareExpectedAndGenerated("src/test/resources/expectedproto/test-field-numbering.proto", generateProtobuf("test-field-numbering"), true);
+	}
+
+	@Test
+	public void hotRequiredAndScalarFieldsGetOneByteTags() throws IOException {
+		compareExpectedAndGenerated("src/test/resources/expectedproto/test-field-numbering-compact.proto",
+				generateProtobufWithOptions("test-field-numbering", "test-field-numbering-compact", "--compactFieldNumbers=true", "--hotFields=wideType.zhot"),
+				true);
+	}
+
+	@Test
+	public void estimatesTagBytesSaved() throws Exception {
+		ProtobufMarshaller marshaller = new ProtobufMarshaller();
+		OutputWriter writer = new OutputWriter();
+		writer.setInMemory(true);
+		writer.setMarshaller(marshaller);
+		writer.setDefaultExtension("proto");
+		writer.setFilename("wide.proto");
+
+		XSDParser xp = new XSDParser(SchemaSource.of(Paths.get("src/test/resources/xsd/test-field-numbering.xsd")), new HashMap<String, String>());
+		xp.setCompactFieldNumbers(true);
+		xp.setHotFields(Collections.singleton("zhot"));
+		xp.addMarshaller(marshaller);
+		xp.setWriter(writer);
+		xp.parse();
+		// zhot, zrequired and zscalar move from two byte tags to one byte tags
+		assertEquals(Integer.valueOf(3), xp.getTagBytesSaved().get("wideType"));
+		assertEquals(Arrays.asList(1, 1, 2, 2, 3),
+				Arrays.asList(XSDParser.tagSize(1), XSDParser.tagSize(15), XSDParser.tagSize(16), XSDParser.tagSize(2047), XSDParser.tagSize(2048)));
+	}
+}
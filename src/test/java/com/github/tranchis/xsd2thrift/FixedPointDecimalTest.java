@@ -0,0 +1,29 @@
+package com.github.tranchis.xsd2thrift;
+
+import static com.github.tranchis.xsd2thrift.TestHelper.compareExpectedAndGenerated;
+import static com.github.tranchis.xsd2thrift.TestHelper.generateProtobuf;
+import static com.github.tranchis.xsd2thrift.TestHelper.generateProtobufWithOptions;
+
+import java.io.IOException;
+
+import org.junit.jupiter.api.Test;
+
+public class FixedPointDecimalTest {
+
+	@Test
+	public void decimalsWithFractionDigitsBecomeScaledIntegers() throws IOException {
+		compareExpectedAndGenerated("src/test/resources/expectedproto/test-fixed-point-scaled.proto",
+				generateProtobufWithOptions("test-fixed-point", "test-fixed-point-scaled", "--fixedPointDecimals=true"), true);
+	}
+
+	@Test
+	public void attributesBecomeScaledIntegers() throws IOException {
+		compareExpectedAndGenerated("src/test/resources/expectedproto/test-fixed-point-attributes-scaled.proto",
+				generateProtobufWithOptions("test-fixed-point-attributes", "test-fixed-point-attributes-scaled", "--fixedPointDecimals=true"), true);
+	}
+
+	@Test
+	public void decimalsAreDoublesByDefault() throws IOException {
+		compareExpectedAndGenerated("src/test/resources/expectedproto/test-fixed-point.proto", generateProtobuf("test-fixed-point"), true);
+	}
+}
@@ -0,0 +1,71 @@
+package com.github.tranchis.xsd2thrift;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import com.github.tranchis.xsd2thrift.marshal.ProtobufMarshaller;
+
+public class ImportManifestTest {
+
+	@Test
+	public void manifestListsFilesByLevel() throws Exception {
+		ConfigFile config = new ConfigFile();
+		config.splitBySchema = true;
+		config.namespace = "schemas.com.domain.common";
+		config.importManifest = "imports.json";
+		Map<String, byte[]> files = new ConversionEngine(config).convert(SchemaSource.of(Paths.get("src/test/resources/xsd/ns-person.xsd")));
+
+		String manifest = new String(files.get("imports.json"), StandardCharsets.UTF_8);
+		assertTrue(manifest.contains("{\"name\": \"schemas_com_domain_common.proto\", \"level\": 0, \"imports\": []"), manifest);
+		assertTrue(manifest.contains("{\"name\": \"schemas_com_domain_person.proto\", \"level\": 2, "
+				+ "\"imports\": [\"schemas_com_domain_address.proto\", \"schemas_com_domain_common.proto\"]"), manifest);
+		assertTrue(manifest.contains("\"levels\": [\n    [\"schemas_com_domain_common.proto\"],\n    [\"schemas_com_domain_address.proto\"],\n"
+				+ "    [\"schemas_com_domain_person.proto\"]\n  ]"), manifest);
+	}
+
+	@Test
+	public void manifestIsKeptApartFromGeneratedFiles() throws Exception {
+		ProtobufMarshaller marshaller = new ProtobufMarshaller();
+		OutputWriter writer = new OutputWriter();
+		writer.setInMemory(true);
+		writer.setMarshaller(marshaller);
+		writer.setDefaultExtension("proto");
+		writer.setFilename("person.proto");
+		writer.setImportManifest("imports.json");
+
+		XSDParser xp = new XSDParser(SchemaSource.of(Paths.get("src/test/resources/xsd/ns-person.xsd")), new HashMap<String, String>());
+		xp.addMarshaller(marshaller);
+		xp.setWriter(writer);
+		xp.parse();
+
+		assertEquals(Collections.singleton("person.proto"), writer.getFiles().keySet());
+		assertEquals(Collections.singleton("imports.json"), writer.getManifests().keySet());
+	}
+
+	@Test
+	public void cycleMembersShareALevel() {
+		DependencyGraph<String> graph = new DependencyGraph<>();
+		graph.addEdge("a", "b");
+		graph.addEdge("b", "c");
+		graph.addEdge("c", "b");
+		graph.addNode("d");
+
+		assertEquals(1, graph.getCycles().size());
+		assertEquals(new HashSet<>(Arrays.asList("b", "c")), new HashSet<>(graph.getCycles().get(0)));
+		List<List<String>> levels = graph.getTopologicalLevels();
+		assertEquals(2, levels.size());
+		assertEquals(new HashSet<>(Arrays.asList("b", "c", "d")), new HashSet<>(levels.get(0)));
+		assertEquals(Collections.singletonList("a"), levels.get(1));
+	}
+}
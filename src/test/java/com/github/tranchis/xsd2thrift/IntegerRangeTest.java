@@ -0,0 +1,59 @@
+package com.github.tranchis.xsd2thrift;
+
+import static com.github.tranchis.xsd2thrift.TestHelper.compareExpectedAndGenerated;
+import static com.github.tranchis.xsd2thrift.TestHelper.generateProtobuf;
+import static com.github.tranchis.xsd2thrift.TestHelper.generateProtobufWithOptions;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.IOException;
+import java.math.BigInteger;
+
+import org.junit.jupiter.api.Test;
+
+import com.github.tranchis.xsd2thrift.marshal.ProtobufMarshaller;
+
+public class IntegerRangeTest {
+
+	@Test
+	public void typesFollowFacetRanges() throws IOException {
+		compareExpectedAndGenerated("src/test/resources/expectedproto/test-integer-range-types.proto",
+				generateProtobufWithOptions("test-integer-range", "test-integer-range-types", "--rangeIntegerTypes=true"), true);
+	}
+
+	@Test
+	public void baseTypesAreUsedByDefault() throws IOException {
+		compareExpectedAndGenerated("src/test/resources/expectedproto/test-integer-range.proto", generateProtobuf("test-integer-range"), true);
+	}
+
+	@Test
+	public void anonymousRestrictionsCarryTheirRange() throws IOException {
+		compareExpectedAndGenerated("src/test/resources/expectedproto/test-range-integer-types.proto",
+				generateProtobufWithOptions("test-range", "test-range-integer-types", "--rangeIntegerTypes=true"), true);
+	}
+
+	@Test
+	public void anonymousRestrictionsKeepTheirBaseTypeByDefault() throws IOException {
+		compareExpectedAndGenerated("src/test/resources/expectedproto/test-range.proto", generateProtobuf("test-range"), true);
+	}
+
+	@Test
+	public void attributesCarryTheirRange() throws IOException {
+		compareExpectedAndGenerated("src/test/resources/expectedproto/test-range-attributes-types.proto",
+				generateProtobufWithOptions("test-range-attributes", "test-range-attributes-types", "--rangeIntegerTypes=true"), true);
+		compareExpectedAndGenerated("src/test/resources/expectedproto/test-range-attributes.proto", generateProtobuf("test-range-attributes"), true);
+	}
+
+	@Test
+	public void protobufTypesByRange() {
+		ProtobufMarshaller marshaller = new ProtobufMarshaller();
+		assertEquals("int32", marshaller.getIntegerTypeMapping(BigInteger.ZERO, BigInteger.valueOf(268435455)));
+		assertEquals("fixed32", marshaller.getIntegerTypeMapping(BigInteger.ZERO, BigInteger.valueOf(268435456)));
+		assertEquals("int64", marshaller.getIntegerTypeMapping(BigInteger.ZERO, BigInteger.valueOf(1L << 40)));
+		assertEquals("fixed64", marshaller.getIntegerTypeMapping(BigInteger.ZERO, BigInteger.valueOf(Long.MAX_VALUE)));
+		assertEquals("sint32", marshaller.getIntegerTypeMapping(BigInteger.valueOf(-1), BigInteger.valueOf(1000)));
+		assertEquals("sfixed32", marshaller.getIntegerTypeMapping(BigInteger.valueOf(Integer.MIN_VALUE), BigInteger.valueOf(Integer.MAX_VALUE)));
+		assertEquals("sfixed64", marshaller.getIntegerTypeMapping(BigInteger.valueOf(Long.MIN_VALUE), BigInteger.valueOf(Long.MAX_VALUE)));
+		assertNull(marshaller.getIntegerTypeMapping(BigInteger.ZERO, null));
+	}
+}
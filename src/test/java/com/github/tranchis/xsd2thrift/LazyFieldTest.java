@@ -0,0 +1,76 @@
+package com.github.tranchis.xsd2thrift;
+
+import static com.github.tranchis.xsd2thrift.TestHelper.compareExpectedAndGenerated;
+import static com.github.tranchis.xsd2thrift.TestHelper.generateProtobufWithOptions;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.jupiter.api.Test;
+
+import com.github.tranchis.xsd2thrift.marshal.ProtobufMarshaller;
+import com.google.protobuf.DescriptorProtos.DescriptorProto;
+import com.google.protobuf.DescriptorProtos.FieldDescriptorProto;
+import com.google.protobuf.DescriptorProtos.FileDescriptorSet;
+
+public class LazyFieldTest {
+
+	@Test
+	public void patternsAndLargeSubtreesAreLazy() throws IOException {
+		compareExpectedAndGenerated("src/test/resources/expectedproto/test-lazy-fields.proto",
+				generateProtobufWithOptions("test-lazy", "test-lazy-fields", "--lazyFields=feature\\.ext.*", "--lazySubtreeSize=5", "--validate=true"), true);
+	}
+
+	@Test
+	public void fieldsAreEagerByDefault() throws IOException {
+		compareExpectedAndGenerated("src/test/resources/expectedproto/test-lazy.proto",
+				generateProtobufWithOptions("test-lazy", "test-lazy", "--validate=true"), true);
+	}
+
+	@Test
+	public void descriptorsSetTheLazyOption() throws Exception {
+		ConfigFile config = new ConfigFile();
+		config.marshaller = "descriptor";
+		config.filename = "feature.pb";
+		config.lazyFields = Collections.<String>emptyList();
+		config.lazySubtreeSize = 5;
+		config.validate = true;
+		FileDescriptorSet set = FileDescriptorSet
+				.parseFrom(new ConversionEngine(config).convert(SchemaSource.of(Paths.get("src/test/resources/xsd/test-lazy.xsd"))).get("feature.pb"));
+		Set<String> lazy = new TreeSet<>();
+		for (DescriptorProto message : set.getFile(set.getFileCount() - 1).getMessageTypeList()) {
+			for (FieldDescriptorProto field : message.getFieldList()) {
+				if (field.getOptions().getLazy()) {
+					lazy.add(message.getName() + "." + field.getName());
+				}
+			}
+		}
+		assertEquals(Collections.singleton("feature._geometry"), lazy);
+	}
+
+	@Test
+	public void mapFieldsAreNotLazy() throws Exception {
+		compareExpectedAndGenerated("src/test/resources/expectedproto/test-lazy-map-fields.proto", generateProtobufWithOptions("test-lazy-map",
+				"test-lazy-map-fields", "--keyValueMaps=true", "--lazyFields=documentType\\..*", "--validate=true"), true);
+
+		ProtobufMarshaller marshaller = new ProtobufMarshaller();
+		OutputWriter writer = new OutputWriter();
+		writer.setInMemory(true);
+		writer.setMarshaller(marshaller);
+		writer.setDefaultExtension("proto");
+		writer.setFilename("document.proto");
+
+		XSDParser xp = new XSDParser(SchemaSource.of(Paths.get("src/test/resources/xsd/test-lazy-map.xsd")), new HashMap<String, String>());
+		xp.setKeyValueMaps(true);
+		xp.setLazyFields(Collections.singletonList("documentType\\..*"));
+		xp.addMarshaller(marshaller);
+		xp.setWriter(writer);
+		xp.parse();
+		assertEquals(Collections.singleton("documentType.meta"), xp.getLazyFields());
+	}
+}
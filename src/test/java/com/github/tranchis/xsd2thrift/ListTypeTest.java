@@ -0,0 +1,31 @@
+package com.github.tranchis.xsd2thrift;
+
+import static com.github.tranchis.xsd2thrift.TestHelper.compareExpectedAndGenerated;
+import static com.github.tranchis.xsd2thrift.TestHelper.generateProtobuf;
+import static com.github.tranchis.xsd2thrift.TestHelper.generateProtobufWithOptions;
+
+import java.io.IOException;
+
+import org.junit.jupiter.api.Test;
+
+public class ListTypeTest {
+
+	@Test
+	public void listsBecomeRepeatedFields() throws IOException {
+		compareExpectedAndGenerated("src/test/resources/expectedproto/test-list-repeated.proto",
+				generateProtobufWithOptions("test-list", "test-list-repeated", "--listsAsRepeated=true", "--validate=true"), true);
+	}
+
+	@Test
+	public void listsAreStringsByDefault() throws IOException {
+		compareExpectedAndGenerated("src/test/resources/expectedproto/test-list.proto", generateProtobuf("test-list"), true);
+	}
+
+	@Test
+	public void anonymousItemTypesAreDeclaredOnce() throws IOException {
+		// One enum for the element and one for the attribute
+		compareExpectedAndGenerated("src/test/resources/expectedproto/test-list-anonymous-items-repeated.proto",
+				generateProtobufWithOptions("test-list-anonymous-items", "test-list-anonymous-items-repeated", "--listsAsRepeated=true", "--validate=true"),
+				true);
+	}
+}
@@ -0,0 +1,69 @@
+package com.github.tranchis.xsd2thrift;
+
+import static com.github.tranchis.xsd2thrift.TestHelper.compareExpectedAndGenerated;
+import static com.github.tranchis.xsd2thrift.TestHelper.generateProtobufWithOptions;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.Test;
+
+import com.github.tranchis.xsd2thrift.marshal.ProtobufMarshaller;
+
+public class ListWrapperTest {
+
+	private static final String SCHEMA = "src/test/resources/xsd/test-list-wrapper.xsd";
+
+	@Test
+	public void wrappersBecomeRepeatedFields() throws IOException {
+		compareExpectedAndGenerated("src/test/resources/expectedproto/test-list-wrapper-collapsed.proto",
+				generateProtobufWithOptions("test-list-wrapper", "test-list-wrapper-collapsed", "--collapseListWrappers=true", "--validate=true"), true);
+	}
+
+	@Test
+	public void wrappersAreKeptByDefault() throws IOException {
+		compareExpectedAndGenerated("src/test/resources/expectedproto/test-list-wrapper.proto",
+				generateProtobufWithOptions("test-list-wrapper", "test-list-wrapper", "--validate=true"), true);
+	}
+
+	@Test
+	public void manifestListsCollapsedFields() throws Exception {
+		ConfigFile config = new ConfigFile();
+		config.marshaller = "descriptor";
+		config.filename = "route.pb";
+		config.collapseListWrappers = true;
+		config.listWrapperManifest = "wrappers.json";
+		Map<String, byte[]> files = new ConversionEngine(config).convert(SchemaSource.of(Paths.get(SCHEMA)));
+		assertEquals("{\n  \"listWrappers\": [\n    {\"message\": \"routeType\", \"wrapper\": \"stops\", \"item\": \"stop\"}\n  ]\n}\n",
+				new String(files.get("wrappers.json"), StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void recordsCollapsedFields() throws Exception {
+		ProtobufMarshaller marshaller = new ProtobufMarshaller();
+		OutputWriter writer = new OutputWriter();
+		writer.setInMemory(true);
+		writer.setMarshaller(marshaller);
+		writer.setDefaultExtension("proto");
+		writer.setFilename("route.proto");
+		writer.setListWrapperManifest("wrappers.json");
+
+		XSDParser xp = new XSDParser(SchemaSource.of(Paths.get(SCHEMA)), new HashMap<String, String>());
+		xp.setCollapseListWrappers(true);
+		xp.addMarshaller(marshaller);
+		xp.setWriter(writer);
+		xp.parse();
+
+		Map<String, String> expected = new TreeMap<>();
+		expected.put("routeType.stops", "stop");
+		assertEquals(expected, xp.getCollapsedListWrappers());
+		assertEquals(Collections.singleton("route.proto"), writer.getFiles().keySet());
+		assertEquals(Collections.singleton("wrappers.json"), writer.getManifests().keySet());
+	}
+}
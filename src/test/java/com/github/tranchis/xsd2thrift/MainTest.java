@@ -2,7 +2,10 @@ package com.github.tranchis.xsd2thrift;
 
 import static com.github.tranchis.xsd2thrift.TestHelper.compareExpectedAndGenerated;
 import static com.github.tranchis.xsd2thrift.TestHelper.generateProtobuf;
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 
+import java.io.File;
 import java.io.IOException;
 
 import org.junit.jupiter.api.Test;
@@ -78,4 +81,11 @@ public class MainTest {
 				"org.myrecipies"));
 	}
 
+	@Test
+	public void invalidNumbersAreReported() {
+		String filename = "target/generated-proto/invalid-shards.proto";
+		assertDoesNotThrow(() -> Main.main(new String[] { "--filename=" + filename, "--shards=two", "src/test/resources/xsd/shiporder.xsd" }));
+		assertDoesNotThrow(() -> Main.main(new String[] { "--filename=" + filename, "--lazySubtreeSize=many", "src/test/resources/xsd/shiporder.xsd" }));
+		assertFalse(new File(filename).exists());
+	}
 }
@@ -0,0 +1,51 @@
+package com.github.tranchis.xsd2thrift;
+
+import static com.github.tranchis.xsd2thrift.TestHelper.compareExpectedAndGenerated;
+import static com.github.tranchis.xsd2thrift.TestHelper.generateProtobufWithOptions;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+import org.junit.jupiter.api.Test;
+
+import com.google.protobuf.DescriptorProtos.FileDescriptorSet;
+import com.google.protobuf.Descriptors.Descriptor;
+import com.google.protobuf.Descriptors.FieldDescriptor;
+import com.google.protobuf.Descriptors.FileDescriptor;
+
+public class MapFieldTest {
+
+	@Test
+	public void keyValueListsBecomeMaps() throws IOException {
+		// pairs has no key field and main is not repeated, both stay messages
+		compareExpectedAndGenerated("src/test/resources/expectedproto/test-map-key-value.proto",
+				generateProtobufWithOptions("test-map", "test-map-key-value", "--keyValueMaps=true", "--validate=true"), true);
+	}
+
+	@Test
+	public void keyValueListsAreRepeatedByDefault() throws IOException {
+		compareExpectedAndGenerated("src/test/resources/expectedproto/test-map.proto", generateProtobufWithOptions("test-map", "test-map", "--validate=true"),
+				true);
+	}
+
+	@Test
+	public void descriptorsDeclareMapEntries() throws Exception {
+		ConfigFile config = new ConfigFile();
+		config.marshaller = "descriptor";
+		config.filename = "document.pb";
+		config.keyValueMaps = true;
+		config.validate = true;
+		FileDescriptorSet set = FileDescriptorSet
+				.parseFrom(new ConversionEngine(config).convert(SchemaSource.of(Paths.get("src/test/resources/xsd/test-map.xsd"))).get("document.pb"));
+		FileDescriptor file = FileDescriptor.buildFrom(set.getFile(set.getFileCount() - 1), new FileDescriptor[0]);
+		Descriptor document = file.findMessageTypeByName("documentType");
+		FieldDescriptor prop = document.findFieldByName("prop");
+		assertTrue(prop.isMapField());
+		assertEquals(FieldDescriptor.Type.STRING, prop.getMessageType().findFieldByName("key").getType());
+		assertEquals(FieldDescriptor.Type.INT32, prop.getMessageType().findFieldByName("value").getType());
+		assertFalse(document.findFieldByName("pairs").isMapField());
+	}
+}
@@ -0,0 +1,51 @@
+package com.github.tranchis.xsd2thrift;
+
+import static com.github.tranchis.xsd2thrift.TestHelper.compareExpectedAndGenerated;
+import static com.github.tranchis.xsd2thrift.TestHelper.generateProtobufWithOptions;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+import org.junit.jupiter.api.Test;
+
+import com.google.protobuf.DescriptorProtos.DescriptorProto;
+import com.google.protobuf.DescriptorProtos.FileDescriptorProto;
+import com.google.protobuf.DescriptorProtos.FileDescriptorSet;
+
+public class OneofTest {
+
+	@Test
+	public void choicesBecomeOneofs() throws IOException {
+		compareExpectedAndGenerated("src/test/resources/expectedproto/test-oneof-choices.proto",
+				generateProtobufWithOptions("test-oneof", "test-oneof-choices", "--choiceAsOneof=true", "--validate=true"), true);
+	}
+
+	@Test
+	public void choicesAreFlatByDefault() throws IOException {
+		compareExpectedAndGenerated("src/test/resources/expectedproto/test-oneof.proto",
+				generateProtobufWithOptions("test-oneof", "test-oneof", "--validate=true"), true);
+	}
+
+	@Test
+	public void descriptorsDeclareOneofs() throws Exception {
+		ConfigFile config = new ConfigFile();
+		config.marshaller = "descriptor";
+		config.filename = "payment.pb";
+		config.choiceAsOneof = true;
+		config.validate = true;
+		FileDescriptorSet set = FileDescriptorSet
+				.parseFrom(new ConversionEngine(config).convert(SchemaSource.of(Paths.get("src/test/resources/xsd/test-oneof.xsd"))).get("payment.pb"));
+		FileDescriptorProto file = set.getFile(set.getFileCount() - 1);
+		DescriptorProto payment = file.getMessageType(0);
+		assertEquals(1, payment.getOneofDeclCount());
+		assertEquals("choice", payment.getOneofDecl(0).getName());
+		int members = 0;
+		for (int i = 0; i < payment.getFieldCount(); i++) {
+			if (payment.getField(i).hasOneofIndex()) {
+				members++;
+			}
+		}
+		assertEquals(4, members);
+	}
+}
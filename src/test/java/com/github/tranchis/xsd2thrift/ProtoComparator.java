@@ -13,6 +13,11 @@ import java.util.Map.Entry;
 import java.util.Set;
 
 import com.google.common.collect.ImmutableList;
+import com.squareup.wire.schema.EnumConstant;
+import com.squareup.wire.schema.EnumType;
+import com.squareup.wire.schema.Field;
+import com.squareup.wire.schema.MessageType;
+import com.squareup.wire.schema.OneOf;
 import com.squareup.wire.schema.Options;
 import com.squareup.wire.schema.ProtoFile;
 import com.squareup.wire.schema.ProtoMember;
@@ -25,6 +30,13 @@ import com.squareup.wire.schema.Type;
 public class ProtoComparator {
 
 	public static void compareProtoFiles(File expected, File actual) {
+		compareProtoFiles(expected, actual, false);
+	}
+
+	/**
+	 * @param members whether to compare the fields, oneofs and enum constants of the types as well
+	 */
+	public static void compareProtoFiles(File expected, File actual, boolean members) {
 		try {
 			ProtoFile expectedProto = load(expected.getParentFile(), expected.getName());
 			ProtoFile generatedProto = load(actual.getParentFile(), actual.getName());
@@ -35,7 +47,7 @@ public class ProtoComparator {
 
 			compareOptions(expectedProto.options(), generatedProto.options());
 			compareServices(expectedProto.services(), generatedProto.services());
-			compareTypes(expectedProto.types(), generatedProto.types());
+			compareTypes(expectedProto.types(), generatedProto.types(), members);
 		} catch (IOException e) {
 			fail("Error loading protos for comparison", e);
 		}
@@ -131,7 +143,7 @@ public class ProtoComparator {
 		}
 	}
 
-	private static void compareTypes(ImmutableList<Type> expected, ImmutableList<Type> generated) {
+	private static void compareTypes(ImmutableList<Type> expected, ImmutableList<Type> generated, boolean members) {
 		// Compare types
 		Map<String, Type> expectedTypes = new HashMap<>();
 		Map<String, Type> generatedTypes = new HashMap<>();
@@ -156,18 +168,99 @@ public class ProtoComparator {
 
 			Type generatedType = generatedTypes.get(expectedType.getKey());
 
-			compareType(expectedType.getValue(), generatedType);
+			compareType(expectedType.getValue(), generatedType, members);
 
 		}
 
 	}
 
-	private static void compareType(Type expectedType, Type generatedType) {
+	private static void compareType(Type expectedType, Type generatedType, boolean members) {
 
 		assertEquals(expectedType.documentation(), generatedType.documentation(), "Type documentation mismatch");
 		assertEquals(expectedType.type().toString(), generatedType.type().toString(), "Type information mismatch");
-		compareTypes(expectedType.nestedTypes(), generatedType.nestedTypes());
+		if (members && expectedType instanceof MessageType && generatedType instanceof MessageType) {
+			compareFields(((MessageType) expectedType).fields(), ((MessageType) generatedType).fields());
+			compareOneOfs(((MessageType) expectedType).oneOfs(), ((MessageType) generatedType).oneOfs());
+		} else if (members && expectedType instanceof EnumType && generatedType instanceof EnumType) {
+			compareConstants(((EnumType) expectedType).constants(), ((EnumType) generatedType).constants());
+		}
+		compareTypes(expectedType.nestedTypes(), generatedType.nestedTypes(), members);
+
+	}
+
+	private static void compareFields(ImmutableList<Field> expected, ImmutableList<Field> generated) {
+		Map<String, Field> expectedMap = new HashMap<>();
+		Map<String, Field> generatedMap = new HashMap<>();
+
+		for (Field f : expected) {
+			expectedMap.put(f.name(), f);
+		}
+
+		for (Field f : generated) {
+			generatedMap.put(f.name(), f);
+		}
+
+		Set<String> missing = new HashSet<>(expectedMap.keySet());
+		missing.removeAll(generatedMap.keySet());
+		assertTrue(missing.isEmpty(), "Fields not found in generated proto file: " + missing);
+
+		Set<String> unexpected = new HashSet<>(generatedMap.keySet());
+		unexpected.removeAll(expectedMap.keySet());
+		assertTrue(unexpected.isEmpty(), "Unexpected fields found in generated proto file: " + unexpected);
+
+		for (Entry<String, Field> expectedField : expectedMap.entrySet()) {
+			compareField(expectedField.getValue(), generatedMap.get(expectedField.getKey()));
+		}
+	}
+
+	private static void compareField(Field expected, Field generated) {
+		assertEquals(expected.documentation(), generated.documentation(), "Field documentation mismatch for " + expected.name());
+		assertEquals(expected.tag(), generated.tag(), "Field tag mismatch for " + expected.name());
+		assertEquals(expected.type().toString(), generated.type().toString(), "Field type mismatch for " + expected.name());
+		assertEquals(expected.label(), generated.label(), "Field label mismatch for " + expected.name());
 
+		compareOptions(expected.options(), generated.options());
+	}
+
+	private static void compareOneOfs(ImmutableList<OneOf> expected, ImmutableList<OneOf> generated) {
+		Map<String, OneOf> expectedMap = new HashMap<>();
+		Map<String, OneOf> generatedMap = new HashMap<>();
+
+		for (OneOf o : expected) {
+			expectedMap.put(o.name(), o);
+		}
+
+		for (OneOf o : generated) {
+			generatedMap.put(o.name(), o);
+		}
+
+		assertEquals(expectedMap.keySet(), generatedMap.keySet(), "Oneof mismatch");
+
+		for (Entry<String, OneOf> expectedOneOf : expectedMap.entrySet()) {
+			compareFields(expectedOneOf.getValue().fields(), generatedMap.get(expectedOneOf.getKey()).fields());
+		}
+	}
+
+	private static void compareConstants(ImmutableList<EnumConstant> expected, ImmutableList<EnumConstant> generated) {
+		Map<String, EnumConstant> expectedMap = new HashMap<>();
+		Map<String, EnumConstant> generatedMap = new HashMap<>();
+
+		for (EnumConstant c : expected) {
+			expectedMap.put(c.name(), c);
+		}
+
+		for (EnumConstant c : generated) {
+			generatedMap.put(c.name(), c);
+		}
+
+		assertEquals(expectedMap.keySet(), generatedMap.keySet(), "Enum constant mismatch");
+
+		for (Entry<String, EnumConstant> expectedConstant : expectedMap.entrySet()) {
+			EnumConstant generatedConstant = generatedMap.get(expectedConstant.getKey());
+			assertEquals(expectedConstant.getValue().tag(), generatedConstant.tag(), "Enum constant tag mismatch for " + expectedConstant.getKey());
+			assertEquals(expectedConstant.getValue().documentation(), generatedConstant.documentation(),
+					"Enum constant documentation mismatch for " + expectedConstant.getKey());
+		}
 	}
 
 	private static ProtoFile load(File folder, String protoFilename) throws IOException {
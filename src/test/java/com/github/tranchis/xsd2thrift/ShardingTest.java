@@ -0,0 +1,51 @@
+package com.github.tranchis.xsd2thrift;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+public class ShardingTest {
+
+	private static void assertShardedMatchesSingleProcess(ConfigFile config, String xsd) throws Exception {
+		SchemaSource source = SchemaSource.of(Paths.get("src/test/resources/xsd", xsd));
+		Map<String, byte[]> expected = new ConversionEngine(config, null).convert(source);
+		config.shards = 3;
+		Map<String, byte[]> files = new ConversionEngine(config, null).convert(source);
+
+		assertEquals(expected.keySet(), files.keySet());
+		for (String file : expected.keySet()) {
+			assertArrayEquals(expected.get(file), files.get(file), file);
+		}
+	}
+
+	@Test
+	public void splitOutputMatchesSingleProcess() throws Exception {
+		ConfigFile config = new ConfigFile();
+		config.splitBySchema = true;
+		config.namespace = "schemas.com.domain.common";
+		assertShardedMatchesSingleProcess(config, "ns-person.xsd");
+	}
+
+	@Test
+	public void singleFileAndFanOutMatchSingleProcess() throws Exception {
+		ConfigFile config = new ConfigFile();
+		config.filename = "recipeml.proto";
+		config.namespace = "recipeml";
+		OutputConfig nested = new OutputConfig();
+		nested.filename = "recipeml-split.proto";
+		config.outputs = new ArrayList<>();
+		config.outputs.add(nested);
+		assertShardedMatchesSingleProcess(config, "recipeml.xsd");
+	}
+
+	@Test
+	public void workerReportsFailuresByExitCode() {
+		assertEquals(2, ShardWorker.run(new String[] { "config.yaml" }));
+		assertEquals(1, ShardWorker.run(new String[] { "target/missing-config.yaml", "null", "-", "0", "2", "target/shard-0.zip" }));
+	}
+}
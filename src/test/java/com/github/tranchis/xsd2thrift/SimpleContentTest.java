@@ -0,0 +1,51 @@
+package com.github.tranchis.xsd2thrift;
+
+import static com.github.tranchis.xsd2thrift.TestHelper.compareExpectedAndGenerated;
+import static com.github.tranchis.xsd2thrift.TestHelper.generateProtobufWithOptions;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.Test;
+
+import com.github.tranchis.xsd2thrift.marshal.ProtobufMarshaller;
+
+public class SimpleContentTest {
+
+	@Test
+	public void wrappersAreReplacedByTheirValue() throws IOException {
+		compareExpectedAndGenerated("src/test/resources/expectedproto/test-simple-content-flattened.proto",
+				generateProtobufWithOptions("test-simple-content", "test-simple-content-flattened", "--flattenSimpleContent=true", "--validate=true"), true);
+	}
+
+	@Test
+	public void wrappersAreKeptByDefault() throws IOException {
+		compareExpectedAndGenerated("src/test/resources/expectedproto/test-simple-content.proto",
+				generateProtobufWithOptions("test-simple-content", "test-simple-content", "--validate=true"), true);
+	}
+
+	@Test
+	public void reportsFlattenedWrappers() throws Exception {
+		ProtobufMarshaller marshaller = new ProtobufMarshaller();
+		OutputWriter writer = new OutputWriter();
+		writer.setInMemory(true);
+		writer.setMarshaller(marshaller);
+		writer.setDefaultExtension("proto");
+		writer.setFilename("order.proto");
+
+		XSDParser xp = new XSDParser(SchemaSource.of(Paths.get("src/test/resources/xsd/test-simple-content.xsd")), new HashMap<String, String>());
+		xp.setFlattenSimpleContent(true);
+		xp.addMarshaller(marshaller);
+		xp.setWriter(writer);
+		xp.parse();
+
+		Map<String, String> expected = new TreeMap<>();
+		expected.put("code", "string");
+		expected.put("money", "decimal");
+		assertEquals(expected, xp.getSimpleContentWrappers());
+	}
+}
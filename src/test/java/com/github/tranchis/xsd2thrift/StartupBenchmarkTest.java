@@ -0,0 +1,85 @@
+package com.github.tranchis.xsd2thrift;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Measures the time from starting the command line tool in a new JVM until the first output is written, for a small schema. Excluded from the default build,
+ * run with {@code mvn test -Dgroups=benchmark -DexcludedGroups=none}.
+ *
+ * With {@code -Dxsd2proto.jar=target/xsd2proto-<VERSION>.jar} the shaded jar is measured as well, with and without the class-data sharing archive built by the
+ * fast-startup profile.
+ */
+@Tag("benchmark")
+public class StartupBenchmarkTest {
+
+	private static final int RUNS = Integer.getInteger("xsd2proto.benchmark.runs", 10);
+	private static final String XSD = "src/test/resources/xsd/shiporder.xsd";
+
+	@Test
+	public void timeToFirstOutput() throws Exception {
+		String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+		report("classpath", Arrays.asList(java, "-cp", System.getProperty("java.class.path"), Main.class.getName()));
+
+		String jar = System.getProperty("xsd2proto.jar");
+		if (jar != null) {
+			report("jar", Arrays.asList(java, "-jar", jar));
+			File archive = new File(new File(jar).getParentFile(), "xsd2proto.jsa");
+			if (archive.isFile()) {
+				report("jar with class-data sharing",
+						Arrays.asList(java, "-XX:SharedArchiveFile=" + archive.getPath(), "-XX:TieredStopAtLevel=1", "-XX:+UseSerialGC", "-jar", jar));
+			}
+		}
+	}
+
+	private static void report(String name, List<String> command) throws Exception {
+		List<Long> times = new ArrayList<>();
+		for (int i = 0; i < RUNS; i++) {
+			times.add(timeToFirstOutput(command));
+		}
+		Collections.sort(times);
+		System.out.printf("Time to first output, %s: median %d ms, min %d ms, max %d ms%n", name, times.get(times.size() / 2), times.get(0),
+				times.get(times.size() - 1));
+	}
+
+	/**
+	 * @return milliseconds from starting the process until the output file has content
+	 */
+	private static long timeToFirstOutput(List<String> command) throws Exception {
+		File output = new File("target/startup-benchmark/shiporder.proto");
+		output.getParentFile().mkdirs();
+		output.delete();
+
+		List<String> arguments = new ArrayList<>(command);
+		arguments.add("--filename=" + output.getPath());
+		arguments.add(XSD);
+		long start = System.nanoTime();
+		Process process = new ProcessBuilder(arguments).redirectErrorStream(true).redirectOutput(new File("target/startup-benchmark/log.txt")).start();
+		long firstOutput = -1;
+		while (firstOutput < 0) {
+			if (output.length() > 0) {
+				firstOutput = System.nanoTime();
+			} else if (!process.isAlive()) {
+				break;
+			} else {
+				Thread.sleep(1);
+			}
+		}
+		assertEquals(0, process.waitFor());
+		assertTrue(output.length() > 0, "No output written");
+		if (firstOutput < 0) {
+			firstOutput = System.nanoTime();
+		}
+		return (firstOutput - start) / 1000000;
+	}
+}
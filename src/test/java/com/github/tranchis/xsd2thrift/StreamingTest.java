@@ -0,0 +1,82 @@
+package com.github.tranchis.xsd2thrift;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+public class StreamingTest {
+
+	@Test
+	public void streamedNamespaceFilesMatchRegularOutput() throws IOException {
+		File regular = new File("target/generated-proto/streaming/regular");
+		File streamed = new File("target/generated-proto/streaming/streamed");
+		regular.mkdirs();
+		streamed.mkdirs();
+
+		Main.main(new String[] { "--splitBySchema=true", "--nestEnums=false", "--directory=" + regular.getPath(), "--package=schemas.com.domain.common",
+				"src/test/resources/xsd/ns-person.xsd" });
+		Main.main(new String[] { "--splitBySchema=true", "--streaming=true", "--directory=" + streamed.getPath(), "--package=schemas.com.domain.common",
+				"src/test/resources/xsd/ns-person.xsd" });
+
+		String[] files = regular.list();
+		Arrays.sort(files);
+		String[] streamedFiles = streamed.list();
+		Arrays.sort(streamedFiles);
+		assertArrayEquals(files, streamedFiles);
+		for (String file : files) {
+			assertEquals(new String(Files.readAllBytes(new File(regular, file).toPath())), new String(Files.readAllBytes(new File(streamed, file).toPath())),
+					file);
+		}
+	}
+
+	@Test
+	public void streamedSingleFileMatchesRegularOutput() throws IOException {
+		new File("target/generated-proto/streaming").mkdirs();
+		Main.main(new String[] { "--filename=target/generated-proto/streaming/recipeml-regular.proto", "--nestEnums=false", "--package=default",
+				"src/test/resources/xsd/recipeml.xsd" });
+		Main.main(new String[] { "--filename=target/generated-proto/streaming/recipeml-streamed.proto", "--streaming=true", "--package=default",
+				"src/test/resources/xsd/recipeml.xsd" });
+
+		assertArrayEquals(Files.readAllBytes(new File("target/generated-proto/streaming/recipeml-regular.proto").toPath()),
+				Files.readAllBytes(new File("target/generated-proto/streaming/recipeml-streamed.proto").toPath()));
+	}
+
+	@Test
+	public void typesDeclaredAfterTheirNamespaceIsWrittenAreAppended() throws Exception {
+		ConfigFile config = new ConfigFile();
+		config.splitBySchema = true;
+		config.streaming = true;
+		// The enum of the global attribute in namespace a is only declared when the schema of namespace b uses it
+		Map<String, byte[]> files = new ConversionEngine(config, null).convert(SchemaSource.of(Paths.get("src/test/resources/xsd/ns-late-main.xsd")));
+		String a = new String(files.get("schemas_com_late_a.proto"), StandardCharsets.UTF_8);
+		assertTrue(a.contains("message note\n"), a);
+		assertTrue(a.contains("enum statusType\n"), a);
+	}
+
+	@Test
+	public void simpleTypesOfLaterSchemasMatchRegularOutput() throws Exception {
+		// ns-forward-a.xsd is interpreted and written before ns-forward-b.xsd, which declares the simple types it uses
+		SchemaSource source = SchemaSource.of(Paths.get("src/test/resources/xsd/ns-forward-a.xsd"));
+		ConfigFile config = new ConfigFile();
+		config.splitBySchema = true;
+		Map<String, byte[]> regular = new ConversionEngine(config, null).convert(source);
+		config.streaming = true;
+		Map<String, byte[]> streamed = new ConversionEngine(config, null).convert(source);
+
+		assertEquals(regular.keySet(), streamed.keySet());
+		for (String file : regular.keySet()) {
+			assertEquals(new String(regular.get(file), StandardCharsets.UTF_8), new String(streamed.get(file), StandardCharsets.UTF_8), file);
+		}
+		assertTrue(new String(regular.get("schemas_com_forward_a.proto"), StandardCharsets.UTF_8).contains("string code = 1;"));
+	}
+}
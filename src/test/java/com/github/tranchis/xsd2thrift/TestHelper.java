@@ -5,6 +5,7 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import org.apache.commons.lang3.StringUtils;
@@ -23,6 +24,13 @@ public class TestHelper {
 	private static final Logger FILECONTENTLOGGER = LoggerFactory.getLogger("FILECONTENT");
 
 	public static void compareExpectedAndGenerated(String expected, String generated) throws IOException {
+		compareExpectedAndGenerated(expected, generated, false);
+	}
+
+	/**
+	 * @param members whether to compare the fields, oneofs and enum constants of the types as well
+	 */
+	public static void compareExpectedAndGenerated(String expected, String generated, boolean members) throws IOException {
 
 		File e = new File(expected);
 		File g = new File(generated);
@@ -31,7 +39,7 @@ public class TestHelper {
 		List<String> genlines = linesFromFile(generated);
 
 		try {
-			ProtoComparator.compareProtoFiles(e, g);
+			ProtoComparator.compareProtoFiles(e, g, members);
 		} catch (AssertionFailedError e1) {
 			showDiff(expected, generated, exlines, genlines);
 
@@ -78,11 +86,25 @@ public class TestHelper {
 		return generate(name, "protobuf", "proto", null, null, "default");
 	}
 
+	/**
+	 * Converts the schema of the given name in src/test/resources/xsd with additional command line options, such as --rangeIntegerTypes=true.
+	 *
+	 * @param output name of the generated file, without extension, so one schema can be converted with different options
+	 */
+	public static String generateProtobufWithOptions(String name, String output, String... options) {
+		return generate(name, output, "protobuf", "proto", null, null, "default", options);
+	}
+
 	private static String generate(String name, String type, String extension, String typeMappings, String nameMappings, String packageName) {
+		return generate(name, name, type, extension, typeMappings, nameMappings, packageName);
+	}
+
+	private static String generate(String name, String output, String type, String extension, String typeMappings, String nameMappings, String packageName,
+			String... options) {
 		File dir = new File("target/generated-proto/");
 		if (!dir.exists())
 			dir.mkdir();
-		String filename = "target/generated-proto/" + name + "." + extension;
+		String filename = "target/generated-proto/" + output + "." + extension;
 
 		List<String> args = new ArrayList<>();
 		args.add("--filename=" + filename);
@@ -93,6 +115,7 @@ public class TestHelper {
 		if (nameMappings != null) {
 			args.add("--customNameMappings=" + nameMappings);
 		}
+		args.addAll(Arrays.asList(options));
 		args.add("src/test/resources/xsd/" + name + ".xsd");
 
 		Main.main(args.toArray(new String[0]));
@@ -0,0 +1,75 @@
+package com.github.tranchis.xsd2thrift;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.nio.file.Paths;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+public class ValidationTest {
+
+	@Test
+	public void validOutputIsUnchanged() throws Exception {
+		ConfigFile config = new ConfigFile();
+		config.splitBySchema = true;
+		config.namespace = "schemas.com.domain.common";
+		SchemaSource source = SchemaSource.of(Paths.get("src/test/resources/xsd/ns-person.xsd"));
+		Map<String, byte[]> expected = new ConversionEngine(config, null).convert(source);
+
+		config.validate = true;
+		Map<String, byte[]> files = new ConversionEngine(config, null).convert(source);
+		assertEquals(expected.keySet(), files.keySet());
+		for (String file : expected.keySet()) {
+			assertArrayEquals(expected.get(file), files.get(file), file);
+		}
+	}
+
+	@Test
+	public void manifestsAreNotValidated() throws Exception {
+		ConfigFile config = new ConfigFile();
+		config.splitBySchema = true;
+		config.namespace = "schemas.com.domain.common";
+		config.importManifest = "imports.json";
+		config.listWrapperManifest = "wrappers.json";
+		config.validate = true;
+		Map<String, byte[]> files = new ConversionEngine(config, null).convert(SchemaSource.of(Paths.get("src/test/resources/xsd/ns-person.xsd")));
+		assertTrue(files.containsKey("imports.json"), files.keySet().toString());
+		assertTrue(files.containsKey("wrappers.json"), files.keySet().toString());
+	}
+
+	@Test
+	public void nameClashFailsBeforeWriting() throws Exception {
+		File output = new File("target/generated-proto/validation/recipeml.proto");
+		output.getParentFile().mkdirs();
+		output.delete();
+
+		ConfigFile config = new ConfigFile();
+		config.filename = output.getPath();
+		config.namespace = "recipeml";
+		config.validate = true;
+		// Without nested enums, the enum unitType clashes with the message unitType
+		InvalidXSDException e = assertThrows(InvalidXSDException.class,
+				() -> new ConversionEngine(config, null).convertToFiles(SchemaSource.of(Paths.get("src/test/resources/xsd/recipeml.xsd"))));
+		assertTrue(e.getMessage().contains(output.getPath() + ": recipeml.unitType: \"unitType\" is already defined"), e.getMessage());
+		assertFalse(output.exists());
+	}
+
+	@Test
+	public void enumValuesAreScopedLikeProtoc() throws Exception {
+		ConfigFile config = new ConfigFile();
+		config.filename = "order.proto";
+		config.nestEnums = true;
+		config.typeInEnums = false;
+		config.validate = true;
+		// Without the type in the value names, the nested enums phaseType and stateType both declare UNSPECIFIED and OPEN in orderType
+		InvalidXSDException e = assertThrows(InvalidXSDException.class,
+				() -> new ConversionEngine(config, null).convert(SchemaSource.of(Paths.get("src/test/resources/xsd/test-enum-scope.xsd"))));
+		assertTrue(e.getMessage().contains("order.proto: orderType.stateType.OPEN: \"OPEN\" is already defined in \"orderType\""), e.getMessage());
+	}
+}
@@ -0,0 +1,129 @@
+package com.github.tranchis.xsd2thrift.cache;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+
+import com.github.tranchis.xsd2thrift.ConfigFile;
+import com.github.tranchis.xsd2thrift.ConversionEngine;
+import com.github.tranchis.xsd2thrift.SchemaSource;
+
+public class OutputCacheTest {
+
+	private static final String[] SCHEMAS = { "ns-person.xsd", "ns-address.xsd", "ns-common.xsd" };
+
+	private static ConfigFile splitConfig() {
+		ConfigFile config = new ConfigFile();
+		config.splitBySchema = true;
+		config.namespace = "schemas.com.domain.common";
+		return config;
+	}
+
+	private static Path copySchemas(String name) throws IOException {
+		Path directory = Paths.get("target/output-cache", name);
+		Files.createDirectories(directory);
+		for (String schema : SCHEMAS) {
+			Files.write(directory.resolve(schema), Files.readAllBytes(Paths.get("src/test/resources/xsd", schema)));
+		}
+		return directory;
+	}
+
+	private static void assertSameFiles(Map<String, byte[]> expected, Map<String, byte[]> actual) {
+		assertEquals(expected.keySet(), actual.keySet());
+		for (String file : expected.keySet()) {
+			assertArrayEquals(expected.get(file), actual.get(file), file);
+		}
+	}
+
+	@Test
+	public void directoryCacheReturnsStoredOutput() throws Exception {
+		Path cacheDirectory = Files.createTempDirectory(Paths.get("target"), "output-cache");
+		Map<String, byte[]> uncached = new ConversionEngine(splitConfig(), null).convert(SchemaSource.of(Paths.get("src/test/resources/xsd/ns-person.xsd")));
+
+		ConversionEngine engine = new ConversionEngine(splitConfig(), new DirectoryOutputCache(cacheDirectory));
+		// The same schemas in another location share the cache entry
+		assertSameFiles(uncached, engine.convert(SchemaSource.of(copySchemas("first").resolve("ns-person.xsd"))));
+		assertSameFiles(uncached, engine.convert(SchemaSource.of(copySchemas("second").resolve("ns-person.xsd"))));
+		assertEquals("1 hits, 1 misses", engine.getCacheStatistics());
+	}
+
+	@Test
+	public void keyCoversImportedSchemasAndConfig() throws Exception {
+		ConversionEngine engine = new ConversionEngine(splitConfig(), null);
+		Path schemas = copySchemas("changed");
+		String key = engine.cacheKey(SchemaSource.of(schemas.resolve("ns-person.xsd")));
+
+		String common = new String(Files.readAllBytes(schemas.resolve("ns-common.xsd")), StandardCharsets.UTF_8);
+		Files.write(schemas.resolve("ns-common.xsd"), (common + "\n<!-- changed -->\n").getBytes(StandardCharsets.UTF_8));
+		assertNotEquals(key, engine.cacheKey(SchemaSource.of(schemas.resolve("ns-person.xsd"))));
+
+		ConfigFile config = splitConfig();
+		config.typeInEnums = false;
+		assertNotEquals(engine.cacheKey(SchemaSource.of(schemas.resolve("ns-person.xsd"))),
+				new ConversionEngine(config, null).cacheKey(SchemaSource.of(schemas.resolve("ns-person.xsd"))));
+	}
+
+	@Test
+	public void keyCoversEveryModelOption() throws Exception {
+		SchemaSource source = SchemaSource.of(Paths.get("src/test/resources/xsd/ns-person.xsd"));
+		ConfigFile config = splitConfig();
+		ConversionEngine engine = new ConversionEngine(config, null);
+		String key = engine.cacheKey(source);
+		for (Map.Entry<String, Object> option : config.values().entrySet()) {
+			ConfigFile changed = splitConfig();
+			Object value = option.getValue();
+			assertTrue(changed.set(option.getKey(), value instanceof Boolean ? String.valueOf(!(Boolean) value) : value instanceof Integer ? "7" : "x"));
+			assertNotEquals(key, new ConversionEngine(changed, null).cacheKey(source), option.getKey());
+		}
+		// The engine keeps the options it was built with
+		config.set("compactFieldNumbers", "true");
+		assertEquals(key, engine.cacheKey(source));
+	}
+
+	@Test
+	public void httpCacheHandlesConcurrentWriters() throws Exception {
+		CacheServer server = new CacheServer(0, new DirectoryOutputCache(Files.createTempDirectory(Paths.get("target"), "output-cache-server")));
+		server.start();
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			HttpOutputCache cache = new HttpOutputCache("http://localhost:" + server.getPort() + "/");
+			String key = new ConversionEngine(splitConfig(), null).cacheKey(SchemaSource.of(Paths.get("src/test/resources/xsd/ns-person.xsd")));
+			assertNull(cache.get(key));
+
+			Map<String, byte[]> files = new TreeMap<>();
+			files.put("a.proto", "syntax = \"proto3\";\n".getBytes(StandardCharsets.UTF_8));
+			files.put("b/c.proto", new byte[100000]);
+			List<Future<?>> writes = new ArrayList<>();
+			for (int i = 0; i < 16; i++) {
+				writes.add(executor.submit(() -> {
+					cache.put(key, files);
+					return null;
+				}));
+			}
+			for (Future<?> write : writes) {
+				write.get();
+			}
+			assertSameFiles(files, cache.get(key));
+		} finally {
+			executor.shutdown();
+			server.stop();
+		}
+	}
+}
@@ -0,0 +1,83 @@
+package com.github.tranchis.xsd2thrift.marshal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.Test;
+
+public class CompiledMappingsTest {
+
+	@Test
+	public void matchesLikeOrderedRegexLookup() {
+		Map<Pattern, String> mappings = new LinkedHashMap<>();
+		mappings.put(Pattern.compile("^Vehicle.*Type$"), "Vehicle"); // regex before an exact match of the same name
+		mappings.put(Pattern.compile("^VehicleModeType$"), "Mode");
+		mappings.put(Pattern.compile("^date$"), "string");
+		mappings.put(Pattern.compile("^date$"), "int32"); // shadowed by the first ^date$
+		mappings.put(Pattern.compile("^Netex"), "Nx");
+		mappings.put(Pattern.compile("Structure"), "");
+		mappings.put(Pattern.compile("^(.*)_VersionStructure$"), "$1");
+		mappings.put(Pattern.compile("^id$", Pattern.CASE_INSENSITIVE), "identifier");
+
+		CompiledMappings compiled = new CompiledMappings(mappings);
+		String[] names = { "VehicleModeType", "VehicleType", "date", "dateTime", "NetexStructure", "Stop_VersionStructure", "ID", "id", "Unmapped",
+				"StructureStructure", "" };
+		for (int pass = 0; pass < 2; pass++) {
+			for (String name : names) {
+				assertEquals(naiveLookup(mappings, name), compiled.map(name), name);
+			}
+		}
+	}
+
+	@Test
+	public void returnsNullWithoutMatch() {
+		Map<Pattern, String> mappings = new LinkedHashMap<>();
+		mappings.put(Pattern.compile("^a$"), "b");
+		assertNull(new CompiledMappings(mappings).map("c"));
+	}
+
+	@Test
+	public void countsLookupsPerUser() {
+		Map<Pattern, String> mappings = new LinkedHashMap<>();
+		mappings.put(Pattern.compile("^a$"), "b");
+		CompiledMappings compiled = new CompiledMappings(mappings);
+		CompiledMappings.Statistics first = new CompiledMappings.Statistics();
+		compiled.map("a", first);
+		compiled.map("c", first);
+		CompiledMappings.Statistics second = new CompiledMappings.Statistics();
+		compiled.map("a", second);
+		assertEquals("2 lookups (0 memoized, 1 exact, 0 literal, 0 regex, 1 unmapped)", first.toString());
+		assertEquals("1 lookups (1 memoized, 0 exact, 0 literal, 0 regex, 0 unmapped)", second.toString());
+	}
+
+	@Test
+	public void memoKeepsRecentlyUsedNames() {
+		Map<Pattern, String> mappings = new LinkedHashMap<>();
+		mappings.put(Pattern.compile("^a$"), "b");
+		CompiledMappings compiled = new CompiledMappings(mappings, 2);
+		CompiledMappings.Statistics statistics = new CompiledMappings.Statistics();
+		compiled.map("a", statistics);
+		compiled.map("c", statistics);
+		compiled.map("a", statistics); // a is now more recent than c
+		compiled.map("d", statistics); // drops c
+		compiled.map("a", statistics);
+		compiled.map("c", statistics);
+		assertEquals("6 lookups (2 memoized, 1 exact, 0 literal, 0 regex, 3 unmapped)", statistics.toString());
+	}
+
+	private static String naiveLookup(Map<Pattern, String> mappings, String name) {
+		for (Entry<Pattern, String> entry : mappings.entrySet()) {
+			Matcher m = entry.getKey().matcher(name);
+			if (m.find()) {
+				return m.replaceAll(entry.getValue());
+			}
+		}
+		return null;
+	}
+}
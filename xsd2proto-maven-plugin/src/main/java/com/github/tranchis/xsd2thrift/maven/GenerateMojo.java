@@ -0,0 +1,202 @@
+package com.github.tranchis.xsd2thrift.maven;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecution;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.project.MavenProject;
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.error.YAMLException;
+
+import com.github.tranchis.xsd2thrift.ConfigFile;
+import com.github.tranchis.xsd2thrift.ConversionEngine;
+import com.github.tranchis.xsd2thrift.InvalidXSDException;
+import com.github.tranchis.xsd2thrift.SchemaSource;
+
+/**
+ * Converts a schema to proto files in the build, without forking a JVM.
+ *
+ * The conversion is skipped if the output of the last run is still in place and neither the schema, any schema it includes or imports, the configuration nor
+ * the converter version has changed since. The last run is recorded in a stamp file in the build directory, holding the conversion key and the generated files.
+ */
+@Mojo(name = "generate", defaultPhase = LifecyclePhase.GENERATE_SOURCES, threadSafe = true)
+public class GenerateMojo extends AbstractMojo {
+
+	/** The schema to convert */
+	@Parameter(required = true)
+	private File xsd;
+
+	/** Configuration file in the format used by {@code --configFile}. Parameters set in the pom override the file. */
+	@Parameter
+	private File configFile;
+
+	@Parameter(defaultValue = "${project.build.directory}/generated-sources/proto", required = true)
+	private File outputDirectory;
+
+	@Parameter
+	private String filename;
+
+	@Parameter
+	private String namespace;
+
+	@Parameter
+	private Boolean splitBySchema;
+
+	@Parameter
+	private Boolean nestEnums;
+
+	@Parameter
+	private Map<String, String> options;
+
+	@Parameter
+	private Map<String, String> customTypeMappings;
+
+	@Parameter
+	private Map<String, String> customNameMappings;
+
+	/** Register the output directory as a compile source root */
+	@Parameter(defaultValue = "true")
+	private boolean addCompileSourceRoot;
+
+	@Parameter(property = "xsd2proto.skip", defaultValue = "false")
+	private boolean skip;
+
+	@Parameter(defaultValue = "${project}", readonly = true, required = true)
+	private MavenProject project;
+
+	@Parameter(defaultValue = "${mojoExecution}", readonly = true, required = true)
+	private MojoExecution execution;
+
+	@Override
+	public void execute() throws MojoExecutionException, MojoFailureException {
+		if (skip) {
+			getLog().info("Skipping xsd2proto");
+			return;
+		}
+
+		ConfigFile config = readConfig();
+		ConversionEngine engine = new ConversionEngine(config);
+		SchemaSource source = SchemaSource.of(xsd.toPath());
+		Path stamp = Paths.get(project.getBuild().getDirectory(), "xsd2proto-" + execution.getExecutionId() + ".stamp");
+
+		try {
+			String key = engine.cacheKey(source);
+			if (isUpToDate(stamp, key)) {
+				getLog().info("Generated proto files are up to date");
+			} else {
+				generate(engine, source, stamp, key);
+			}
+		} catch (InvalidXSDException e) {
+			throw new MojoFailureException("Invalid schema " + xsd + ": " + e.getMessage(), e);
+		} catch (IllegalArgumentException e) {
+			throw new MojoFailureException("Invalid configuration: " + e.getMessage(), e);
+		} catch (Exception e) {
+			throw new MojoExecutionException("Error converting " + xsd, e);
+		}
+
+		if (addCompileSourceRoot) {
+			project.addCompileSourceRoot(outputDirectory.getPath());
+		}
+	}
+
+	private ConfigFile readConfig() throws MojoExecutionException {
+		ConfigFile config = new ConfigFile();
+		config.nestEnums = true;
+		if (configFile != null) {
+			try (InputStream in = Files.newInputStream(configFile.toPath())) {
+				config = new Yaml().loadAs(in, ConfigFile.class);
+			} catch (IOException | YAMLException e) {
+				throw new MojoExecutionException("Unable to read config file " + configFile, e);
+			}
+		}
+
+		config.directory = outputDirectory.getPath();
+		if (filename != null) {
+			config.filename = filename;
+		}
+		if (namespace != null) {
+			config.namespace = namespace;
+		}
+		if (splitBySchema != null) {
+			config.splitBySchema = splitBySchema;
+		}
+		if (nestEnums != null) {
+			config.nestEnums = nestEnums;
+		}
+		if (options != null) {
+			config.options = new LinkedHashMap<>(options);
+		}
+		if (customTypeMappings != null) {
+			config.customTypeMappings = customTypeMappings;
+		}
+		if (customNameMappings != null) {
+			config.customNameMappings = customNameMappings;
+		}
+		return config;
+	}
+
+	/**
+	 * @return whether the stamp records the given key and all files generated with it still exist
+	 */
+	private boolean isUpToDate(Path stamp, String key) throws IOException {
+		if (!Files.isRegularFile(stamp)) {
+			return false;
+		}
+		List<String> lines = Files.readAllLines(stamp, StandardCharsets.UTF_8);
+		if (lines.isEmpty() || !lines.get(0).equals(key)) {
+			return false;
+		}
+		for (String file : lines.subList(1, lines.size())) {
+			if (!Files.isRegularFile(Paths.get(file))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void generate(ConversionEngine engine, SchemaSource source, Path stamp, String key) throws Exception {
+		Set<String> previous = new LinkedHashSet<>();
+		if (Files.isRegularFile(stamp)) {
+			List<String> lines = Files.readAllLines(stamp, StandardCharsets.UTF_8);
+			previous.addAll(lines.subList(Math.min(1, lines.size()), lines.size()));
+		}
+
+		Map<String, byte[]> files = engine.convert(source);
+		List<String> lines = new ArrayList<>();
+		lines.add(key);
+		for (Map.Entry<String, byte[]> file : files.entrySet()) {
+			Path path = Paths.get(file.getKey());
+			if (path.getParent() != null) {
+				Files.createDirectories(path.getParent());
+			}
+			Files.write(path, file.getValue());
+			lines.add(file.getKey());
+			previous.remove(file.getKey());
+		}
+		// Files of earlier runs that are no longer generated
+		for (String file : previous) {
+			Files.deleteIfExists(Paths.get(file));
+		}
+
+		Files.createDirectories(stamp.getParent());
+		Files.write(stamp, lines, StandardCharsets.UTF_8);
+		getLog().info("Generated " + files.size() + " proto files in " + outputDirectory);
+	}
+}
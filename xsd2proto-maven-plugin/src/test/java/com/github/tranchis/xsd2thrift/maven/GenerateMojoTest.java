@@ -0,0 +1,83 @@
+package com.github.tranchis.xsd2thrift.maven;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.apache.maven.plugin.MojoExecution;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.descriptor.MojoDescriptor;
+import org.apache.maven.project.MavenProject;
+import org.junit.jupiter.api.Test;
+
+public class GenerateMojoTest {
+
+	private static final String SCHEMA = "<xs:schema xmlns:xs=\"http://www.w3.org/2001/XMLSchema\">\n"
+			+ "<xs:element name=\"person\"><xs:complexType><xs:sequence><xs:element name=\"name\" type=\"xs:string\"/></xs:sequence>"
+			+ "</xs:complexType></xs:element>\n</xs:schema>\n";
+
+	private static GenerateMojo mojo(Path work, String schema) throws Exception {
+		Path xsd = work.resolve("person.xsd");
+		Files.write(xsd, schema.getBytes(StandardCharsets.UTF_8));
+		MavenProject project = new MavenProject();
+		project.getBuild().setDirectory(work.toString());
+
+		GenerateMojo mojo = new GenerateMojo();
+		set(mojo, "xsd", xsd.toFile());
+		set(mojo, "outputDirectory", work.resolve("generated").toFile());
+		set(mojo, "filename", "person.proto");
+		set(mojo, "addCompileSourceRoot", true);
+		set(mojo, "project", project);
+		set(mojo, "execution", new MojoExecution(new MojoDescriptor(), "default"));
+		return mojo;
+	}
+
+	private static void set(GenerateMojo mojo, String name, Object value) throws Exception {
+		Field field = GenerateMojo.class.getDeclaredField(name);
+		field.setAccessible(true);
+		field.set(mojo, value);
+	}
+
+	private static MavenProject project(GenerateMojo mojo) throws Exception {
+		Field field = GenerateMojo.class.getDeclaredField("project");
+		field.setAccessible(true);
+		return (MavenProject) field.get(mojo);
+	}
+
+	@Test
+	public void generatesOnceUntilTheOutputIsGone() throws Exception {
+		Path work = Files.createTempDirectory(Paths.get("target").toAbsolutePath(), "generate");
+		GenerateMojo mojo = mojo(work, SCHEMA);
+		mojo.execute();
+
+		Path proto = work.resolve("generated").resolve("person.proto");
+		String generated = new String(Files.readAllBytes(proto), StandardCharsets.UTF_8);
+		assertTrue(generated.contains("message person"), generated);
+		assertTrue(project(mojo).getCompileSourceRoots().contains(work.resolve("generated").toFile().getPath()));
+		assertTrue(Files.isRegularFile(work.resolve("xsd2proto-default.stamp")));
+
+		// Up to date, so the file is left alone
+		Files.write(proto, "edited".getBytes(StandardCharsets.UTF_8));
+		mojo.execute();
+		assertEquals("edited", new String(Files.readAllBytes(proto), StandardCharsets.UTF_8));
+
+		Files.delete(proto);
+		mojo.execute();
+		assertEquals(generated, new String(Files.readAllBytes(proto), StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void invalidSchemasFailTheBuild() throws Exception {
+		Path work = Files.createTempDirectory(Paths.get("target").toAbsolutePath(), "generate");
+		GenerateMojo mojo = mojo(work, SCHEMA.replace("xs:string", "missing"));
+		assertThrows(MojoFailureException.class, mojo::execute);
+		assertFalse(Files.exists(work.resolve("xsd2proto-default.stamp")));
+	}
+}